@@ -11,7 +11,22 @@ import org.springframework.context.annotation.Configuration;
 @Setter
 public class AppConfig {
 
-    private String strategy = "both"; // redis, zookeeper, or both
+    private String strategy = "both"; // redis, zookeeper, both, or local
+    private boolean localQueue = true; // queue same-key callers in-JVM before hitting the backends
+    private long localWaitTime = 30000;
+    private int asyncThreads = 4; // threads driving non-blocking acquires, not one per waiter
+    private int blockingThreads = 16; // threads running backend calls that block, off the servlet and async threads
+    private int blockingQueue = 1000; // blocking calls waiting for one of those threads before new ones are refused
+    private boolean virtualThreads = false; // run blocking lock work on virtual threads (JDK 21+)
+    private boolean parallelBoth = false; // with strategy "both", acquire Redis and ZooKeeper concurrently
+    private long parallelYieldTime = 200; // how long a Redis grant is kept while still queued in ZooKeeper
+    private int semaphorePermits = 8; // number of permits per semaphore key, the same on every replica
+    private boolean binaryEnabled = false; // serve the binary lock protocol next to the HTTP API
+    private int binaryPort = 7070; // port of the binary lock protocol, 0 for any free port
+    private int binaryMaxInFlight = 10000; // requests a single binary connection may have outstanding
+    private long localTtl = 30000; // lease of a detached lock of the local strategy, 0 never expires
+    private long localWheelTick = 10; // tick of the timing wheel that expires local leases, in ms
+    private int localWheelSize = 512; // buckets of that timing wheel
 
     public boolean useRedis() {
         return "redis".equals(strategy) || "both".equals(strategy);
@@ -20,4 +35,8 @@ public class AppConfig {
     public boolean useZookeeper() {
         return "zookeeper".equals(strategy) || "both".equals(strategy);
     }
+
+    public boolean useLocal() {
+        return "local".equals(strategy);
+    }
 }
\ No newline at end of file
@@ -11,6 +11,9 @@ import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @ConfigurationProperties(prefix = "redis")
 @Getter
@@ -28,9 +31,24 @@ public class RedisConfig {
     private Lock lock = new Lock();
 
     public static class Lock {
-        private long ttl = 30000;
+        private long ttl = 30000; // lease TTL of the lock key, renewed by the watchdog while held in this JVM
+        private long waitTime = 30000;
         private long retryInterval = 500;
-        private int retryTimes = 3;
+        private int retryTimes = 3; // polls a waiter makes while the unlock subscription is down
+        private boolean watchdogEnabled = true;
+        private int watchdogBatchSize = 1000;
+        private boolean fair = false; // FIFO waiter queue with direct handoff on release, single node only
+        private long fairWaiterTtl = 5000; // a queued waiter that has not polled for this long is skipped
+        private boolean batchEnabled = false; // coalesce concurrent single-key commands into pipelines
+        private long batchWindowMicros = 50; // how long a pipeline waits for more commands once it has one
+        private int batchMaxSize = 128;
+        private int nearCacheSize = 0; // keys whose held/free state is cached for isLocked, 0 disables
+        private long nearCacheMaxAge = 5000; // upper bound on serving a cached state without a read
+        private boolean breakerEnabled = true;
+        private int breakerWindow = 20; // calls per failure-rate window of the circuit breaker
+        private int breakerFailureRate = 50; // percent of failed calls in a window that opens the breaker
+        private long breakerOpenTime = 5000; // how long acquires fail at once before trial calls
+        private int breakerHalfOpenTrials = 3; // successful trial calls that close the breaker again
 
         public long getTtl() {
             return ttl;
@@ -40,6 +58,14 @@ public class RedisConfig {
             this.ttl = ttl;
         }
 
+        public long getWaitTime() {
+            return waitTime;
+        }
+
+        public void setWaitTime(long waitTime) {
+            this.waitTime = waitTime;
+        }
+
         public long getRetryInterval() {
             return retryInterval;
         }
@@ -55,10 +81,197 @@ public class RedisConfig {
         public void setRetryTimes(int retryTimes) {
             this.retryTimes = retryTimes;
         }
+
+        public boolean isWatchdogEnabled() {
+            return watchdogEnabled;
+        }
+
+        public void setWatchdogEnabled(boolean watchdogEnabled) {
+            this.watchdogEnabled = watchdogEnabled;
+        }
+
+        public int getWatchdogBatchSize() {
+            return watchdogBatchSize;
+        }
+
+        public void setWatchdogBatchSize(int watchdogBatchSize) {
+            this.watchdogBatchSize = watchdogBatchSize;
+        }
+
+        public boolean isFair() {
+            return fair;
+        }
+
+        public void setFair(boolean fair) {
+            this.fair = fair;
+        }
+
+        public long getFairWaiterTtl() {
+            return fairWaiterTtl;
+        }
+
+        public void setFairWaiterTtl(long fairWaiterTtl) {
+            this.fairWaiterTtl = fairWaiterTtl;
+        }
+
+        public boolean isBatchEnabled() {
+            return batchEnabled;
+        }
+
+        public void setBatchEnabled(boolean batchEnabled) {
+            this.batchEnabled = batchEnabled;
+        }
+
+        public long getBatchWindowMicros() {
+            return batchWindowMicros;
+        }
+
+        public void setBatchWindowMicros(long batchWindowMicros) {
+            this.batchWindowMicros = batchWindowMicros;
+        }
+
+        public int getBatchMaxSize() {
+            return batchMaxSize;
+        }
+
+        public void setBatchMaxSize(int batchMaxSize) {
+            this.batchMaxSize = batchMaxSize;
+        }
+
+        public int getNearCacheSize() {
+            return nearCacheSize;
+        }
+
+        public void setNearCacheSize(int nearCacheSize) {
+            this.nearCacheSize = nearCacheSize;
+        }
+
+        public long getNearCacheMaxAge() {
+            return nearCacheMaxAge;
+        }
+
+        public void setNearCacheMaxAge(long nearCacheMaxAge) {
+            this.nearCacheMaxAge = nearCacheMaxAge;
+        }
+
+        public boolean isBreakerEnabled() {
+            return breakerEnabled;
+        }
+
+        public void setBreakerEnabled(boolean breakerEnabled) {
+            this.breakerEnabled = breakerEnabled;
+        }
+
+        public int getBreakerWindow() {
+            return breakerWindow;
+        }
+
+        public void setBreakerWindow(int breakerWindow) {
+            this.breakerWindow = breakerWindow;
+        }
+
+        public int getBreakerFailureRate() {
+            return breakerFailureRate;
+        }
+
+        public void setBreakerFailureRate(int breakerFailureRate) {
+            this.breakerFailureRate = breakerFailureRate;
+        }
+
+        public long getBreakerOpenTime() {
+            return breakerOpenTime;
+        }
+
+        public void setBreakerOpenTime(long breakerOpenTime) {
+            this.breakerOpenTime = breakerOpenTime;
+        }
+
+        public int getBreakerHalfOpenTrials() {
+            return breakerHalfOpenTrials;
+        }
+
+        public void setBreakerHalfOpenTrials(int breakerHalfOpenTrials) {
+            this.breakerHalfOpenTrials = breakerHalfOpenTrials;
+        }
+    }
+
+    @Getter
+    @Setter
+    private Quorum quorum = new Quorum();
+
+    public static class Quorum {
+        private List<String> nodes = new ArrayList<>(); // host:port of independent nodes, empty disables quorum mode
+        private long nodeTimeout = 50;
+        private double clockDriftFactor = 0.01;
+
+        public List<String> getNodes() {
+            return nodes;
+        }
+
+        public void setNodes(List<String> nodes) {
+            this.nodes = nodes;
+        }
+
+        public long getNodeTimeout() {
+            return nodeTimeout;
+        }
+
+        public void setNodeTimeout(long nodeTimeout) {
+            this.nodeTimeout = nodeTimeout;
+        }
+
+        public double getClockDriftFactor() {
+            return clockDriftFactor;
+        }
+
+        public void setClockDriftFactor(double clockDriftFactor) {
+            this.clockDriftFactor = clockDriftFactor;
+        }
+    }
+
+    @Getter
+    @Setter
+    private Shards shards = new Shards();
+
+    public static class Shards {
+        private List<String> nodes = new ArrayList<>(); // host:port of the shards for lock keys, empty disables sharding
+        private int virtualNodes = 160; // points per shard on the hash ring
+
+        public List<String> getNodes() {
+            return nodes;
+        }
+
+        public void setNodes(List<String> nodes) {
+            this.nodes = nodes;
+        }
+
+        public int getVirtualNodes() {
+            return virtualNodes;
+        }
+
+        public void setVirtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+        }
     }
 
     @Bean
     public JedisConnectionFactory redisConnectionFactory() {
+        return createConnectionFactory(host, port);
+    }
+
+    @Bean
+    public RedisTemplate<String, String> redisTemplate(RedisConnectionFactory connectionFactory) {
+        return createTemplate(connectionFactory);
+    }
+
+    /**
+     * Creates a connection factory for a Redis node, sharing password and database settings
+     *
+     * @param host the node host
+     * @param port the node port
+     * @return the connection factory, not yet initialized
+     */
+    public JedisConnectionFactory createConnectionFactory(String host, int port) {
         RedisStandaloneConfiguration config = new RedisStandaloneConfiguration();
         config.setHostName(host);
         config.setPort(port);
@@ -70,8 +283,13 @@ public class RedisConfig {
         return new JedisConnectionFactory(config);
     }
 
-    @Bean
-    public RedisTemplate<String, String> redisTemplate(RedisConnectionFactory connectionFactory) {
+    /**
+     * Creates a template with string serialization for keys and values
+     *
+     * @param connectionFactory the connection factory to use
+     * @return the initialized template
+     */
+    public static RedisTemplate<String, String> createTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, String> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
         template.setKeySerializer(new StringRedisSerializer());
@@ -29,6 +29,16 @@ public class ZookeeperConfig {
     public static class Lock {
         private String basePath = "/locks";
         private long waitTime = 30000;
+        private int mutexCacheSize = 10000;
+        private boolean mirrorEnabled = true;
+        private boolean reaperEnabled = true;
+        private long reaperIdleTime = 60000;
+        private int reaperBatchSize = 500;
+        private boolean breakerEnabled = true;
+        private int breakerWindow = 20;
+        private int breakerFailureRate = 50;
+        private long breakerOpenTime = 5000;
+        private int breakerHalfOpenTrials = 3;
 
         public String getBasePath() {
             return basePath;
@@ -45,6 +55,86 @@ public class ZookeeperConfig {
         public void setWaitTime(long waitTime) {
             this.waitTime = waitTime;
         }
+
+        public int getMutexCacheSize() {
+            return mutexCacheSize;
+        }
+
+        public void setMutexCacheSize(int mutexCacheSize) {
+            this.mutexCacheSize = mutexCacheSize;
+        }
+
+        public boolean isMirrorEnabled() {
+            return mirrorEnabled;
+        }
+
+        public void setMirrorEnabled(boolean mirrorEnabled) {
+            this.mirrorEnabled = mirrorEnabled;
+        }
+
+        public boolean isReaperEnabled() {
+            return reaperEnabled;
+        }
+
+        public void setReaperEnabled(boolean reaperEnabled) {
+            this.reaperEnabled = reaperEnabled;
+        }
+
+        public long getReaperIdleTime() {
+            return reaperIdleTime;
+        }
+
+        public void setReaperIdleTime(long reaperIdleTime) {
+            this.reaperIdleTime = reaperIdleTime;
+        }
+
+        public int getReaperBatchSize() {
+            return reaperBatchSize;
+        }
+
+        public void setReaperBatchSize(int reaperBatchSize) {
+            this.reaperBatchSize = reaperBatchSize;
+        }
+
+        public boolean isBreakerEnabled() {
+            return breakerEnabled;
+        }
+
+        public void setBreakerEnabled(boolean breakerEnabled) {
+            this.breakerEnabled = breakerEnabled;
+        }
+
+        public int getBreakerWindow() {
+            return breakerWindow;
+        }
+
+        public void setBreakerWindow(int breakerWindow) {
+            this.breakerWindow = breakerWindow;
+        }
+
+        public int getBreakerFailureRate() {
+            return breakerFailureRate;
+        }
+
+        public void setBreakerFailureRate(int breakerFailureRate) {
+            this.breakerFailureRate = breakerFailureRate;
+        }
+
+        public long getBreakerOpenTime() {
+            return breakerOpenTime;
+        }
+
+        public void setBreakerOpenTime(long breakerOpenTime) {
+            this.breakerOpenTime = breakerOpenTime;
+        }
+
+        public int getBreakerHalfOpenTrials() {
+            return breakerHalfOpenTrials;
+        }
+
+        public void setBreakerHalfOpenTrials(int breakerHalfOpenTrials) {
+            this.breakerHalfOpenTrials = breakerHalfOpenTrials;
+        }
     }
 
     @Bean(initMethod = "start", destroyMethod = "close")
@@ -1,53 +1,303 @@
 package com.distlock.controller;
 
+import com.distlock.lock.LockUnavailableException;
 import com.distlock.service.LockService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 @Slf4j
 @RestController
 @RequestMapping("/api/lock")
 public class LockController {
 
+    // Lets the lock timeout fire before the servlet async timeout does
+    private static final long ASYNC_TIMEOUT_MARGIN_MS = 5000;
+    // Upper bound of a listing page, each page is read in one go per backend call
+    private static final int MAX_LIST_LIMIT = 1000;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final LockService lockService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public LockController(LockService lockService) {
+    public LockController(LockService lockService, ObjectMapper objectMapper) {
         this.lockService = lockService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/acquire/{lockKey}")
-    public ResponseEntity<Map<String, Object>> acquireLock(
+    public DeferredResult<ResponseEntity<Map<String, Object>>> acquireLock(
             @PathVariable String lockKey,
             @RequestParam(required = false, defaultValue = "30000") Long timeoutMs) {
 
         log.info("Acquiring lock: {}, timeout: {}", lockKey, timeoutMs);
-        boolean acquired = lockService.acquireLock(lockKey, timeoutMs);
 
+        // The servlet thread is returned to Tomcat while the lock is being waited for. The lock is
+        // handed out as a token, so any replica can release it; its lease is not renewed
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(timeoutMs + ASYNC_TIMEOUT_MARGIN_MS);
+        lockService.acquireLockToken(lockKey, timeoutMs).whenComplete((token, e) -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof LockUnavailableException) {
+                result.setResult(unavailable((LockUnavailableException) cause));
+                return;
+            }
+            if (e != null) {
+                log.error("Error acquiring lock: {}", lockKey, e);
+            }
+            boolean acquired = e == null && token != null;
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("lockKey", lockKey);
+            response.put("acquired", acquired);
+            response.put("timestamp", System.currentTimeMillis());
+
+            if (acquired) {
+                response.put("token", token);
+                if (!result.setResult(ResponseEntity.ok(response))) {
+                    // Nobody is left to hear about the lock, so don't keep it
+                    log.warn("Request expired before lock was granted, releasing: {}", lockKey);
+                    lockService.releaseLockToken(lockKey, token);
+                }
+            } else {
+                result.setResult(ResponseEntity.status(409).body(response)); // 409 Conflict
+            }
+        });
+        return result;
+    }
+
+    @PostMapping("/release/{lockKey}")
+    public ResponseEntity<Map<String, Object>> releaseLock(
+            @PathVariable String lockKey,
+            @RequestParam(required = false) String token) {
+        log.info("Releasing lock: {}", lockKey);
         Map<String, Object> response = new HashMap<>();
         response.put("lockKey", lockKey);
-        response.put("acquired", acquired);
         response.put("timestamp", System.currentTimeMillis());
 
-        if (acquired) {
+        // Locks acquired over REST are only ever held under the token /acquire returned
+        if (token == null) {
+            response.put("released", false);
+            response.put("error", "token is required, pass the token returned by /acquire");
+            return ResponseEntity.status(400).body(response); // 400 Bad Request
+        }
+
+        boolean released = lockService.releaseLockToken(lockKey, token);
+        response.put("released", released);
+
+        if (released) {
             return ResponseEntity.ok(response);
         } else {
-            return ResponseEntity.status(409).body(response); // 409 Conflict
+            return ResponseEntity.status(400).body(response); // 400 Bad Request
         }
     }
 
-    @PostMapping("/release/{lockKey}")
-    public ResponseEntity<Map<String, Object>> releaseLock(@PathVariable String lockKey) {
-        log.info("Releasing lock: {}", lockKey);
-        boolean released = lockService.releaseLock(lockKey);
+    @PostMapping("/batch/acquire")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> acquireLocks(
+            @RequestBody List<String> lockKeys,
+            @RequestParam(required = false, defaultValue = "30000") Long timeoutMs) {
+
+        log.info("Acquiring {} locks: {}, timeout: {}", lockKeys.size(), lockKeys, timeoutMs);
+
+        // Handed out as one token like a single lock, never tied to the servlet thread
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(timeoutMs + ASYNC_TIMEOUT_MARGIN_MS);
+        lockService.acquireAllToken(lockKeys, timeoutMs).whenComplete((token, e) -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof LockUnavailableException) {
+                result.setResult(unavailable((LockUnavailableException) cause));
+                return;
+            }
+            if (e != null) {
+                log.error("Error acquiring locks: {}", lockKeys, e);
+            }
+            boolean acquired = e == null && token != null;
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("lockKeys", lockKeys);
+            response.put("acquired", acquired);
+            response.put("timestamp", System.currentTimeMillis());
+
+            if (acquired) {
+                response.put("token", token);
+                if (!result.setResult(ResponseEntity.ok(response))) {
+                    log.warn("Request expired before locks were granted, releasing: {}", lockKeys);
+                    lockService.releaseAllToken(lockKeys, token);
+                }
+            } else {
+                result.setResult(ResponseEntity.status(409).body(response)); // 409 Conflict
+            }
+        });
+        return result;
+    }
+
+    @PostMapping("/batch/release")
+    public ResponseEntity<Map<String, Object>> releaseLocks(
+            @RequestBody List<String> lockKeys,
+            @RequestParam String token) {
+        log.info("Releasing {} locks: {}", lockKeys.size(), lockKeys);
+        boolean released = lockService.releaseAllToken(lockKeys, token);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("lockKeys", lockKeys);
+        response.put("released", released);
+        response.put("timestamp", System.currentTimeMillis());
+
+        if (released) {
+            return ResponseEntity.ok(response);
+        } else {
+            return ResponseEntity.status(400).body(response); // 400 Bad Request
+        }
+    }
+
+    @PostMapping("/read/acquire/{lockKey}")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> acquireReadLock(
+            @PathVariable String lockKey,
+            @RequestParam(required = false, defaultValue = "30000") Long timeoutMs) {
+
+        log.info("Acquiring read lock: {}, timeout: {}", lockKey, timeoutMs);
+        return deferHold(lockKey, timeoutMs, holdResponse("lockKey", lockKey, "mode", "read"),
+                lockService.acquireReadLock(lockKey, timeoutMs), token -> lockService.releaseReadLock(lockKey, token));
+    }
+
+    @PostMapping("/read/release/{lockKey}")
+    public ResponseEntity<Map<String, Object>> releaseReadLock(
+            @PathVariable String lockKey,
+            @RequestParam String token) {
+        log.info("Releasing read lock: {}", lockKey);
+        return releaseResponse(lockKey, "read", lockService.releaseReadLock(lockKey, token));
+    }
+
+    @PostMapping("/write/acquire/{lockKey}")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> acquireWriteLock(
+            @PathVariable String lockKey,
+            @RequestParam(required = false, defaultValue = "30000") Long timeoutMs) {
+
+        log.info("Acquiring write lock: {}, timeout: {}", lockKey, timeoutMs);
+        return deferHold(lockKey, timeoutMs, holdResponse("lockKey", lockKey, "mode", "write"),
+                lockService.acquireWriteLock(lockKey, timeoutMs), token -> lockService.releaseWriteLock(lockKey, token));
+    }
+
+    @PostMapping("/write/release/{lockKey}")
+    public ResponseEntity<Map<String, Object>> releaseWriteLock(
+            @PathVariable String lockKey,
+            @RequestParam String token) {
+        log.info("Releasing write lock: {}", lockKey);
+        return releaseResponse(lockKey, "write", lockService.releaseWriteLock(lockKey, token));
+    }
+
+    @PostMapping("/semaphore/acquire/{semaphoreKey}")
+    public DeferredResult<ResponseEntity<Map<String, Object>>> acquireSemaphore(
+            @PathVariable String semaphoreKey,
+            @RequestParam(required = false, defaultValue = "1") Integer permits,
+            @RequestParam(required = false) Integer maxPermits,
+            @RequestParam(required = false, defaultValue = "30000") Long timeoutMs) {
+
+        log.info("Acquiring {} permits of semaphore: {}, timeout: {}", permits, semaphoreKey, timeoutMs);
+        Map<String, Object> response = holdResponse("semaphoreKey", semaphoreKey, "permits", permits);
+
+        // Every holder must agree on the count, so it only comes from the configuration
+        if (maxPermits != null && maxPermits != lockService.getSemaphorePermits()) {
+            response.put("error", "maxPermits must be " + lockService.getSemaphorePermits() + " as configured");
+            response.put("timestamp", System.currentTimeMillis());
+            DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>();
+            result.setResult(ResponseEntity.status(400).body(response)); // 400 Bad Request
+            return result;
+        }
+
+        return deferHold(semaphoreKey, timeoutMs, response, lockService.acquireSemaphore(semaphoreKey, permits, timeoutMs),
+                token -> lockService.releaseSemaphore(semaphoreKey, token));
+    }
+
+    @PostMapping("/semaphore/release/{semaphoreKey}")
+    public ResponseEntity<Map<String, Object>> releaseSemaphore(
+            @PathVariable String semaphoreKey,
+            @RequestParam String token) {
+
+        log.info("Releasing permits of semaphore: {}", semaphoreKey);
+        boolean released = lockService.releaseSemaphore(semaphoreKey, token);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("semaphoreKey", semaphoreKey);
+        response.put("released", released);
+        response.put("timestamp", System.currentTimeMillis());
+
+        if (released) {
+            return ResponseEntity.ok(response);
+        } else {
+            return ResponseEntity.status(400).body(response); // 400 Bad Request
+        }
+    }
 
+    private static Map<String, Object> holdResponse(String keyField, String key, String field, Object value) {
+        Map<String, Object> response = new HashMap<>();
+        response.put(keyField, key);
+        response.put(field, value);
+        return response;
+    }
+
+    // Read/write locks and semaphores only have blocking acquires, they wait on the scheduler's
+    // blocking pool so the servlet thread is still returned to Tomcat like with /acquire
+    private DeferredResult<ResponseEntity<Map<String, Object>>> deferHold(String key, long timeoutMs,
+                                                                        Map<String, Object> response,
+                                                                        CompletableFuture<String> hold,
+                                                                        Consumer<String> release) {
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(timeoutMs + ASYNC_TIMEOUT_MARGIN_MS);
+        hold.whenComplete((token, e) -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof LockUnavailableException) {
+                result.setResult(unavailable((LockUnavailableException) cause));
+                return;
+            }
+            response.put("timestamp", System.currentTimeMillis());
+            if (cause instanceof UnsupportedOperationException) {
+                response.put("error", cause.getMessage());
+                result.setResult(ResponseEntity.status(501).body(response)); // 501 Not Implemented
+                return;
+            }
+            if (cause instanceof RejectedExecutionException) {
+                response.put("error", "Too many blocking lock requests, retry later");
+                result.setResult(ResponseEntity.status(503).body(response)); // 503 Service Unavailable
+                return;
+            }
+            if (e != null) {
+                log.error("Error acquiring: {}", key, e);
+            }
+            boolean acquired = e == null && token != null;
+            response.put("acquired", acquired);
+
+            if (acquired) {
+                response.put("token", token);
+                if (!result.setResult(ResponseEntity.ok(response))) {
+                    log.warn("Request expired before hold was granted, releasing: {}", key);
+                    release.accept(token);
+                }
+            } else {
+                result.setResult(ResponseEntity.status(409).body(response)); // 409 Conflict
+            }
+        });
+        return result;
+    }
+
+    private static ResponseEntity<Map<String, Object>> releaseResponse(String lockKey, String mode, boolean released) {
         Map<String, Object> response = new HashMap<>();
         response.put("lockKey", lockKey);
+        response.put("mode", mode);
         response.put("released", released);
         response.put("timestamp", System.currentTimeMillis());
 
@@ -71,6 +321,79 @@ public class LockController {
         return ResponseEntity.ok(response);
     }
 
+    // One JSON object per line: an entry per held lock, written as it is read, then a last line
+    // with the cursor of the next page (null when done), or with an error if the listing failed
+    @GetMapping(value = "/list", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> listLocks(
+            @RequestParam(required = false) String backend,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "100") Integer limit) {
+
+        log.info("Listing locks, backend: {}, cursor: {}, limit: {}", backend, cursor, limit);
+        final String listed;
+        try {
+            listed = lockService.resolveListBackend(backend);
+        } catch (IllegalArgumentException e) {
+            return listError(e.getMessage());
+        }
+        if (limit < 1 || limit > MAX_LIST_LIMIT) {
+            return listError("limit must be between 1 and " + MAX_LIST_LIMIT);
+        }
+
+        StreamingResponseBody body = out -> {
+            int[] count = new int[1];
+            Map<String, Object> last = new HashMap<>();
+            try {
+                String next = lockService.listLocks(listed, cursor, limit, entry -> {
+                    Map<String, Object> line = new HashMap<>();
+                    line.put("lockKey", entry.getLockKey());
+                    line.put("backend", listed);
+                    line.put("owner", entry.getOwner());
+                    line.put("ttlMs", entry.getTtlMs());
+                    writeLine(out, line);
+                    count[0]++;
+                });
+                last.put("nextCursor", next);
+            } catch (UncheckedIOException e) {
+                // The client went away
+                throw e.getCause();
+            } catch (RuntimeException e) {
+                log.error("Error listing locks, backend: {}, cursor: {}", listed, cursor, e);
+                last.put("error", e.getMessage());
+            }
+            last.put("listed", count[0]);
+            last.put("timestamp", System.currentTimeMillis());
+            writeLine(out, last);
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> listError(String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", message);
+        response.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.status(400).contentType(NDJSON).body(out -> writeLine(out, response)); // 400 Bad Request
+    }
+
+    private void writeLine(OutputStream out, Map<String, Object> line) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(line));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Refused at once by an open circuit breaker, retrying later may succeed
+    @ExceptionHandler(LockUnavailableException.class)
+    public ResponseEntity<Map<String, Object>> unavailable(LockUnavailableException e) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", e.getMessage());
+        response.put("backend", e.getBackend());
+        response.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.status(503).body(response); // 503 Service Unavailable
+    }
+
     @GetMapping("/info")
     public ResponseEntity<Map<String, Object>> getLockInfo() {
         log.info("Getting lock system info");
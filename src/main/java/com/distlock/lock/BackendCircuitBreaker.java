@@ -0,0 +1,203 @@
+package com.distlock.lock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker in front of one lock backend.
+ * <p>
+ * Closed, every call goes through and outcomes are counted in windows of {@code window} calls;
+ * a window whose failure rate reaches {@code failureRate} percent opens the breaker. Open, calls
+ * are refused at once for {@code openTime}, then it goes half-open and lets {@code halfOpenTrials}
+ * acquires through: as many of those finishing without a backend error close it again, any failure
+ * opens it for another round. Only the acquires admitted as trials count, through the {@link Permit}
+ * they were given; other traffic finishing meanwhile does not vouch for the backend.
+ * Independently of the failure rate, the backend can hold the breaker open for as long as it
+ * knows to be disconnected.
+ * <p>
+ * Only acquires ask for permission. Releases always go through, so that nothing is left held
+ * when the breaker opens wrongly.
+ */
+@Slf4j
+public class BackendCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String backend;
+    private final boolean enabled;
+    private final int window;
+    private final int failureRate;
+    private final long openNanos;
+    private final int halfOpenTrials;
+    private final LockMetrics.Backend meters;
+    // Handed out while closed, it never counts as a trial
+    private final Permit pass = new Permit(0);
+
+    // Written under the monitor, read without it on the fast path
+    private volatile State state = State.CLOSED;
+    private volatile boolean held;
+    private volatile long openedAt;
+    private int calls;
+    private int failures;
+    private int trials;
+    private int trialSuccesses;
+    // Bumped on every transition to half-open, so that trials of an earlier round are ignored
+    private long round;
+
+    public BackendCircuitBreaker(String backend, boolean enabled, int window, int failureRate, long openTimeMs,
+                                 int halfOpenTrials, LockMetrics.Backend meters) {
+        this.backend = backend;
+        this.enabled = enabled;
+        this.window = Math.max(1, window);
+        this.failureRate = failureRate;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openTimeMs);
+        this.halfOpenTrials = Math.max(1, halfOpenTrials);
+        this.meters = meters;
+    }
+
+    /**
+     * Asks whether an acquire may go to the backend; half-open, this takes one of the trial calls
+     *
+     * @return the permit to finish once the acquire is done, or null if it is refused and must fail at once
+     */
+    public Permit tryAcquirePermission() {
+        if (!enabled || state == State.CLOSED) {
+            return pass;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && !held && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                trials = 0;
+                trialSuccesses = 0;
+                round++;
+                log.info("{} circuit breaker half-open, probing with {} trial calls", backend, halfOpenTrials);
+            }
+            if (state == State.CLOSED) {
+                return pass;
+            }
+            if (state == State.HALF_OPEN && trials < halfOpenTrials) {
+                trials++;
+                return new Permit(round);
+            }
+        }
+        meters.rejected();
+        return null;
+    }
+
+    /**
+     * Records a call that failed because of the backend; must be followed by {@link #recordCall()}
+     */
+    public synchronized void recordFailure() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open("a trial call failed");
+        } else if (state == State.CLOSED) {
+            failures++;
+        }
+    }
+
+    /**
+     * Records a finished round trip, failed or not; counts toward the window of the closed breaker
+     */
+    public synchronized void recordCall() {
+        if (!enabled) {
+            return;
+        }
+        if (state == State.CLOSED && ++calls >= window) {
+            if (failures * 100 >= failureRate * calls) {
+                open(failures + " of the last " + calls + " calls failed");
+            }
+            calls = 0;
+            failures = 0;
+        }
+    }
+
+    /**
+     * Holds the breaker open until {@link #connected()}, e.g. while the connection is suspended
+     */
+    public synchronized void disconnected() {
+        if (enabled && !held) {
+            held = true;
+            open("disconnected");
+        }
+    }
+
+    /**
+     * Ends a hold of {@link #disconnected()} and closes the breaker
+     */
+    public synchronized void connected() {
+        if (held) {
+            held = false;
+            close();
+        }
+    }
+
+    /**
+     * Tells whether calls are currently refused, without taking a trial call
+     *
+     * @return true while open and the open time has not run out, or while held open
+     */
+    public boolean isOpen() {
+        return state == State.OPEN && (held || System.nanoTime() - openedAt < openNanos);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    private synchronized void finishTrial(long trialRound, boolean succeeded) {
+        if (state != State.HALF_OPEN || round != trialRound) {
+            return;
+        }
+        if (!succeeded) {
+            // No verdict, e.g. interrupted; the slot goes to the next caller
+            trials--;
+        } else if (++trialSuccesses >= halfOpenTrials) {
+            close();
+        }
+    }
+
+    private void open(String reason) {
+        openedAt = System.nanoTime();
+        state = State.OPEN;
+        calls = 0;
+        failures = 0;
+        log.warn("{} circuit breaker open, {}; acquires fail at once", backend, reason);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        calls = 0;
+        failures = 0;
+        log.info("{} circuit breaker closed", backend);
+    }
+
+    /**
+     * Permission for one acquire; for a trial call in half-open state, its outcome decides the breaker
+     */
+    public final class Permit {
+        private final long trialRound;
+
+        private Permit(long trialRound) {
+            this.trialRound = trialRound;
+        }
+
+        /**
+         * Reports the acquire as done
+         *
+         * @param succeeded true if the backend answered, whether or not the lock was granted; false
+         *                  if the acquire ended without a verdict. Failures are reported through
+         *                  {@link #recordFailure()}
+         */
+        public void finished(boolean succeeded) {
+            if (trialRound != 0) {
+                finishTrial(trialRound, succeeded);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -1,5 +1,9 @@
 package com.distlock.lock;
 
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 /**
  * Interface defining distributed lock operations
  */
@@ -22,6 +26,16 @@ public interface DistributedLock {
      */
     boolean acquire(String lockKey, long timeoutMs);
 
+    /**
+     * Acquires a lock without blocking the calling thread. No thread is held while waiting;
+     * the lock is owned by this JVM rather than by a thread and may be released from any thread.
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs maximum time to wait for lock in milliseconds
+     * @return a future completed with true if the lock was acquired, false otherwise
+     */
+    CompletableFuture<Boolean> acquireAsync(String lockKey, long timeoutMs);
+
     /**
      * Releases a previously acquired lock
      *
@@ -30,6 +44,43 @@ public interface DistributedLock {
      */
     boolean release(String lockKey);
 
+    /**
+     * Hands a lock acquired with {@link #acquireAsync} over to the caller: this JVM forgets it and
+     * stops renewing any lease, and the returned token releases it with {@link #releaseByToken}
+     * from any thread or JVM
+     *
+     * @param lockKey the key of the lock
+     * @return the token, or null if this JVM holds no such lock
+     */
+    String detach(String lockKey);
+
+    /**
+     * Releases a lock by the token it was detached with, regardless of which JVM acquired it
+     *
+     * @param lockKey the key to unlock
+     * @param token the token returned by {@link #detach}
+     * @return true if the lock was still held under the token and is now released, false otherwise
+     */
+    boolean releaseByToken(String lockKey, String token);
+
+    /**
+     * Acquires all of the specified locks or none of them. Keys are taken in sorted
+     * order so that concurrent multi-key acquirers cannot deadlock each other.
+     *
+     * @param lockKeys the keys to lock
+     * @param timeoutMs maximum time to wait for all locks in milliseconds
+     * @return true if every lock was acquired, false if none was
+     */
+    boolean acquireAll(Collection<String> lockKeys, long timeoutMs);
+
+    /**
+     * Releases locks previously acquired together
+     *
+     * @param lockKeys the keys to unlock
+     * @return true if every lock was released successfully, false otherwise
+     */
+    boolean releaseAll(Collection<String> lockKeys);
+
     /**
      * Checks if a lock is currently held
      *
@@ -38,6 +89,18 @@ public interface DistributedLock {
      */
     boolean isLocked(String lockKey);
 
+    /**
+     * Lists held locks one page at a time. Entries are handed to the sink as they are read,
+     * so only one page is in memory whatever the number of locks.
+     *
+     * @param cursor where to continue, null for the first page
+     * @param limit the number of entries to aim for; a page may hold a few more
+     * @param sink receives each entry of the page
+     * @return the cursor of the next page, null when there are no more locks
+     * @throws IllegalArgumentException if the cursor was not returned by this backend
+     */
+    String listLocks(String cursor, int limit, Consumer<LockEntry> sink);
+
     /**
      * Gets the type of lock implementation
      *
@@ -0,0 +1,52 @@
+package com.distlock.lock;
+
+/**
+ * Interface defining distributed read/write lock operations. Any number of readers may hold
+ * a key at once while writers hold it exclusively. Every acquire is a separate, non-reentrant
+ * hold named by the token it returns, so it can be released from any thread.
+ */
+public interface DistributedReadWriteLock {
+
+    /**
+     * Acquires a shared read lock with the specified key and a timeout
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs maximum time to wait for lock in milliseconds
+     * @return the token of the hold, null if the lock was not acquired
+     */
+    String acquireRead(String lockKey, long timeoutMs);
+
+    /**
+     * Releases a previously acquired read lock
+     *
+     * @param lockKey the key to unlock
+     * @param token the token returned by {@link #acquireRead}
+     * @return true if lock was released successfully, false otherwise
+     */
+    boolean releaseRead(String lockKey, String token);
+
+    /**
+     * Acquires an exclusive write lock with the specified key and a timeout
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs maximum time to wait for lock in milliseconds
+     * @return the token of the hold, null if the lock was not acquired
+     */
+    String acquireWrite(String lockKey, long timeoutMs);
+
+    /**
+     * Releases a previously acquired write lock
+     *
+     * @param lockKey the key to unlock
+     * @param token the token returned by {@link #acquireWrite}
+     * @return true if lock was released successfully, false otherwise
+     */
+    boolean releaseWrite(String lockKey, String token);
+
+    /**
+     * Gets the type of lock implementation
+     *
+     * @return the lock type
+     */
+    String getType();
+}
\ No newline at end of file
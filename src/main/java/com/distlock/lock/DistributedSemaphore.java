@@ -0,0 +1,36 @@
+package com.distlock.lock;
+
+/**
+ * Interface defining distributed counting semaphore operations. Up to a fixed number of
+ * permits per key can be held at once across the cluster. The permits of one acquire are
+ * named by the token it returns, so they may be released from any thread or process.
+ */
+public interface DistributedSemaphore {
+
+    /**
+     * Acquires permits of the semaphore with the specified key, all or none
+     *
+     * @param semaphoreKey the key of the semaphore
+     * @param permits the number of permits to acquire
+     * @param maxPermits the total number of permits of the semaphore, the same for every caller
+     * @param timeoutMs maximum time to wait for the permits in milliseconds
+     * @return the token of the permits, null if they were not acquired
+     */
+    String acquire(String semaphoreKey, int permits, int maxPermits, long timeoutMs);
+
+    /**
+     * Releases the permits of an earlier acquire
+     *
+     * @param semaphoreKey the key of the semaphore
+     * @param token the token returned by {@link #acquire}
+     * @return true if all permits of the token were held and released, false otherwise
+     */
+    boolean release(String semaphoreKey, String token);
+
+    /**
+     * Gets the type of semaphore implementation
+     *
+     * @return the semaphore type
+     */
+    String getType();
+}
\ No newline at end of file
@@ -0,0 +1,418 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Lock backend that lives entirely in this JVM, for {@code lock.strategy=local}.
+ * <p>
+ * Behaves like the distributed backends for a single node: every lock has an owner value, locks
+ * acquired asynchronously can be detached and released by token, and waiters are served in FIFO
+ * order. Like a lock renewed by Redis' watchdog, a lock held in this JVM never expires; only once
+ * detached does its lease of {@code lock.local-ttl} start, so that a token that is never released
+ * does not hold the key forever. The key table is a {@link ConcurrentHashMap} and
+ * every change to a key runs inside {@code compute} on its bin, so keys never contend with each
+ * other and an uncontended acquire or release is a single map operation. Waiters park on a future
+ * that the releasing thread completes, with no polling. Leases expire on a hashed timing wheel,
+ * one shared thread and O(1) per lease instead of a timer per lock; a lease is also checked
+ * whenever its key is touched, so it never outlives its TTL by a wheel tick.
+ * <p>
+ * Nothing is shared with other replicas, so only use it when there is a single one.
+ */
+@Slf4j
+@Component
+public class LocalLock implements DistributedLock {
+
+    private final AppConfig appConfig;
+    private final LockScheduler scheduler;
+    private final LockMetrics.Backend meters;
+    private final HashedWheelTimer wheel;
+    private final long leaseNanos;
+    // An entry exists while its key is held, waiters only ever queue behind an owner
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, String>> ownerThreadLocal = ThreadLocal.withInitial(HashMap::new);
+    // Owners of locks acquired asynchronously, owned by the JVM rather than a thread
+    private final ConcurrentHashMap<String, String> detachedLocks = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Autowired
+    public LocalLock(AppConfig appConfig, LockScheduler scheduler, LockMetrics metrics) {
+        this.appConfig = appConfig;
+        this.scheduler = scheduler;
+        this.meters = metrics.local();
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(appConfig.getLocalTtl());
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-wheel-");
+        threadFactory.setDaemon(true);
+        this.wheel = new HashedWheelTimer(threadFactory, Math.max(1, appConfig.getLocalWheelTick()), TimeUnit.MILLISECONDS,
+                Math.max(1, appConfig.getLocalWheelSize()));
+    }
+
+    @Override
+    public boolean acquire(String lockKey) {
+        return acquire(lockKey, appConfig.getLocalWaitTime());
+    }
+
+    // A lock held by a thread never leaves this JVM, so its owner value only has to be unique
+    @Override
+    public boolean acquire(String lockKey, long timeoutMs) {
+        final long startNanos = System.nanoTime();
+        final String owner = Long.toHexString(sequence.incrementAndGet());
+        Waiter waiter = tryAcquire(lockKey, owner, false);
+
+        if (waiter != null) {
+            meters.contended();
+            try {
+                waiter.granted.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (abandon(lockKey, waiter)) {
+                    log.debug("Timeout waiting for local lock: {}", lockKey);
+                    meters.timedOut(System.nanoTime() - startNanos);
+                    return false;
+                }
+                // Handed over while we were giving up
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!abandon(lockKey, waiter)) {
+                    unlock(lockKey, owner, false);
+                }
+                meters.failed(System.nanoTime() - startNanos);
+                return false;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Local lock grant failed: " + lockKey, e.getCause());
+            }
+        }
+
+        ownerThreadLocal.get().put(lockKey, owner);
+        log.debug("Successfully acquired local lock: {}", lockKey);
+        meters.acquired(System.nanoTime() - startNanos);
+        return true;
+    }
+
+    // The owner value becomes the token on detach, so it is a random UUID like Redis' values
+    @Override
+    public CompletableFuture<Boolean> acquireAsync(String lockKey, long timeoutMs) {
+        final long startNanos = System.nanoTime();
+        final String owner = UUID.randomUUID().toString();
+        Waiter waiter = tryAcquire(lockKey, owner, true);
+        if (waiter == null) {
+            detachedLocks.put(lockKey, owner);
+            log.debug("Successfully acquired local lock asynchronously: {}", lockKey);
+            meters.acquired(System.nanoTime() - startNanos);
+            return CompletableFuture.completedFuture(true);
+        }
+
+        meters.contended();
+        // Only the timer is scheduled, nothing blocks while queued
+        Timeout timeout = wheel.newTimeout(expired -> scheduler.execute(() -> {
+            if (abandon(lockKey, waiter)) {
+                waiter.granted.complete(false);
+            }
+        }), timeoutMs, TimeUnit.MILLISECONDS);
+        return waiter.granted.thenApply(acquired -> {
+            if (acquired) {
+                timeout.cancel();
+                detachedLocks.put(lockKey, owner);
+                log.debug("Successfully acquired local lock asynchronously: {}", lockKey);
+                meters.acquired(System.nanoTime() - startNanos);
+            } else {
+                log.debug("Failed to acquire local lock asynchronously: {}", lockKey);
+                meters.timedOut(System.nanoTime() - startNanos);
+            }
+            return acquired;
+        });
+    }
+
+    @Override
+    public boolean release(String lockKey) {
+        final long startNanos = System.nanoTime();
+        Map<String, String> owned = ownerThreadLocal.get();
+        String owner = owned.remove(lockKey);
+        if (owned.isEmpty()) {
+            ownerThreadLocal.remove();
+        }
+        if (owner == null) {
+            owner = detachedLocks.remove(lockKey);
+        }
+
+        if (owner == null) {
+            log.warn("Cannot release local lock, not held by current thread: {}", lockKey);
+            meters.released(System.nanoTime() - startNanos, false);
+            return false;
+        }
+
+        boolean released = unlock(lockKey, owner, false);
+        meters.released(System.nanoTime() - startNanos, released);
+        if (released) {
+            log.debug("Successfully released local lock: {}", lockKey);
+        } else {
+            log.warn("Failed to release local lock, lease expired: {}", lockKey);
+        }
+        return released;
+    }
+
+    @Override
+    public String detach(String lockKey) {
+        String owner = detachedLocks.remove(lockKey);
+        if (owner != null && leaseNanos > 0) {
+            entries.computeIfPresent(lockKey, (key, entry) -> {
+                if (owner.equals(entry.owner)) {
+                    startLease(key, entry);
+                }
+                return entry;
+            });
+        }
+        return owner;
+    }
+
+    // Only locks acquired asynchronously are released by token, the owner values of locks held
+    // by a thread are easy to guess
+    @Override
+    public boolean releaseByToken(String lockKey, String token) {
+        final long startNanos = System.nanoTime();
+        detachedLocks.remove(lockKey, token);
+        boolean released = unlock(lockKey, token, true);
+        meters.released(System.nanoTime() - startNanos, released);
+        if (released) {
+            log.debug("Successfully released local lock by token: {}", lockKey);
+        } else {
+            log.warn("Failed to release local lock by token: {}", lockKey);
+        }
+        return released;
+    }
+
+    @Override
+    public boolean acquireAll(Collection<String> lockKeys, long timeoutMs) {
+        final long startTime = System.currentTimeMillis();
+        List<String> acquired = new ArrayList<>(lockKeys.size());
+
+        // Sorted order rules out deadlocks between batches; the timeout bounds the whole batch
+        for (String lockKey : new TreeSet<>(lockKeys)) {
+            long remaining = timeoutMs - (System.currentTimeMillis() - startTime);
+            if (remaining < 0 || !acquire(lockKey, remaining)) {
+                log.debug("Failed to acquire local locks, rolling back {} acquired: {}", acquired.size(), lockKeys);
+                releaseAll(acquired);
+                return false;
+            }
+            acquired.add(lockKey);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean releaseAll(Collection<String> lockKeys) {
+        boolean result = true;
+        List<String> keys = new ArrayList<>(new TreeSet<>(lockKeys));
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            result &= release(keys.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isLocked(String lockKey) {
+        Entry entry = entries.get(lockKey);
+        return entry != null && entry.owner != null && !entry.isExpired(System.nanoTime());
+    }
+
+    // The cursor is the last key of the previous page. Pages are in key order, each one a pass
+    // over the table that keeps the lowest keys after the cursor
+    @Override
+    public String listLocks(String cursor, int limit, Consumer<LockEntry> sink) {
+        TreeSet<String> page = new TreeSet<>();
+        for (String lockKey : entries.keySet()) {
+            if (cursor == null || lockKey.compareTo(cursor) > 0) {
+                page.add(lockKey);
+                if (page.size() > limit) {
+                    page.pollLast();
+                }
+            }
+        }
+
+        final long now = System.nanoTime();
+        for (String lockKey : page) {
+            Entry entry = entries.get(lockKey);
+            String owner = entry != null ? entry.owner : null;
+            if (owner == null || entry.isExpired(now)) {
+                // Released since
+                continue;
+            }
+            long ttlMs = entry.leased ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(entry.expiresAt - now)) : -1;
+            sink.accept(new LockEntry(lockKey, RedisLock.fingerprint(owner.getBytes(StandardCharsets.UTF_8)), ttlMs));
+        }
+        return page.size() < limit ? null : page.last();
+    }
+
+    @Override
+    public String getType() {
+        return "Local";
+    }
+
+    /**
+     * @return the number of keys currently held
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wheel.stop();
+    }
+
+    // Takes the key at once if it is free or its lease ran out with nobody waiting, queues
+    // otherwise; returns null when acquired or the queued waiter
+    private Waiter tryAcquire(String lockKey, String owner, boolean detached) {
+        final long now = System.nanoTime();
+        Waiter[] queued = new Waiter[1];
+        Waiter[] handedOver = new Waiter[1];
+        entries.compute(lockKey, (key, entry) -> {
+            if (entry == null) {
+                entry = new Entry();
+            } else if (entry.isExpired(now)) {
+                handedOver[0] = handOver(key, entry);
+            }
+            if (entry.owner == null) {
+                grant(entry, owner, detached);
+            } else {
+                queued[0] = new Waiter(owner, detached);
+                entry.waiters().add(queued[0]);
+            }
+            return entry;
+        });
+        if (handedOver[0] != null) {
+            handedOver[0].granted.complete(true);
+        }
+        return queued[0];
+    }
+
+    // Releases the key if it is still held by the owner under a valid lease, handing it to the
+    // next waiter; a lease found expired is passed on as well but does not count as released
+    private boolean unlock(String lockKey, String owner, boolean detachedOnly) {
+        final long now = System.nanoTime();
+        boolean[] released = new boolean[1];
+        Waiter[] handedOver = new Waiter[1];
+        entries.computeIfPresent(lockKey, (key, entry) -> {
+            boolean expired = entry.isExpired(now);
+            if (expired || (owner.equals(entry.owner) && (entry.detached || !detachedOnly))) {
+                released[0] = !expired;
+                handedOver[0] = handOver(key, entry);
+            }
+            return entry.owner != null ? entry : null;
+        });
+        if (handedOver[0] != null) {
+            handedOver[0].granted.complete(true);
+        }
+        return released[0];
+    }
+
+    // Runs off the wheel thread, so handing over never delays the next tick
+    private void expire(String lockKey, String owner) {
+        Waiter[] handedOver = new Waiter[1];
+        entries.computeIfPresent(lockKey, (key, entry) -> {
+            if (owner.equals(entry.owner)) {
+                log.debug("Local lock lease expired: {}", key);
+                handedOver[0] = handOver(key, entry);
+            }
+            return entry.owner != null ? entry : null;
+        });
+        if (handedOver[0] != null) {
+            handedOver[0].granted.complete(true);
+        }
+    }
+
+    private boolean abandon(String lockKey, Waiter waiter) {
+        boolean[] removed = new boolean[1];
+        entries.computeIfPresent(lockKey, (key, entry) -> {
+            removed[0] = entry.waiters != null && entry.waiters.remove(waiter);
+            return entry;
+        });
+        return removed[0];
+    }
+
+    // Called inside compute: ends the current hold and grants the next waiter, if any, which the
+    // caller completes once out of compute
+    private Waiter handOver(String lockKey, Entry entry) {
+        if (entry.expiry != null) {
+            entry.expiry.cancel();
+            entry.expiry = null;
+        }
+        entry.leased = false;
+        Waiter next = entry.waiters != null ? entry.waiters.poll() : null;
+        if (next != null) {
+            grant(entry, next.owner, next.detached);
+        } else {
+            entry.owner = null;
+        }
+        return next;
+    }
+
+    private void grant(Entry entry, String owner, boolean detached) {
+        entry.owner = owner;
+        entry.detached = detached;
+    }
+
+    // Called inside compute, on detach
+    private void startLease(String lockKey, Entry entry) {
+        final String owner = entry.owner;
+        entry.expiresAt = System.nanoTime() + leaseNanos;
+        entry.leased = true;
+        entry.expiry = wheel.newTimeout(expired -> scheduler.execute(() -> expire(lockKey, owner)),
+                leaseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private final class Entry {
+        // Written inside compute, read without it by status queries and listings
+        private volatile String owner;
+        private volatile long expiresAt;
+        private volatile boolean leased;
+        private boolean detached;
+        private Timeout expiry;
+        // Created on first contention, most keys never have a waiter
+        private ArrayDeque<Waiter> waiters;
+
+        private boolean isExpired(long now) {
+            return leased && owner != null && now - expiresAt >= 0;
+        }
+
+        private ArrayDeque<Waiter> waiters() {
+            if (waiters == null) {
+                waiters = new ArrayDeque<>();
+            }
+            return waiters;
+        }
+    }
+
+    private static final class Waiter {
+        private final String owner;
+        private final boolean detached;
+        private final CompletableFuture<Boolean> granted = new CompletableFuture<>();
+
+        private Waiter(String owner, boolean detached) {
+            this.owner = owner;
+            this.detached = detached;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,230 @@
+package com.distlock.lock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-JVM lock table placed in front of the distributed backends.
+ * <p>
+ * Only the head-of-line owner of a key talks to Redis/ZooKeeper; every other local caller
+ * queues here in FIFO order and is handed the key directly when the head releases it.
+ * Holds are not reentrant: a thread that acquires a key it already holds is refused at once,
+ * so a pooled thread reused by an unrelated request never inherits a hold. Keys acquired
+ * asynchronously are released with the {@link DetachedOwner} the acquire returned, from any
+ * thread; nobody else can release them. Entries exist only while a key is held or waited on.
+ */
+@Component
+public class LocalLockTable {
+
+    private final LockScheduler scheduler;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LocalLockTable(LockScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Acquires the local lock for a key on behalf of the current thread
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs maximum time to wait in milliseconds
+     * @return true if the local lock was acquired, false on timeout or if the current thread
+     * already holds it
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public boolean acquire(String lockKey, long timeoutMs) throws InterruptedException {
+        Object owner = Thread.currentThread();
+        Entry entry = retain(lockKey);
+        Waiter waiter;
+
+        entry.guard.lock();
+        try {
+            if (entry.owner == null && entry.waiters.isEmpty()) {
+                entry.owner = owner;
+                return true;
+            }
+            if (entry.owner != owner) {
+                waiter = new Waiter(owner);
+                entry.waiters.add(waiter);
+            } else {
+                // It would only wait for itself until the timeout
+                waiter = null;
+            }
+        } finally {
+            entry.guard.unlock();
+        }
+        if (waiter == null) {
+            unretain(lockKey, entry);
+            return false;
+        }
+
+        try {
+            waiter.granted.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | InterruptedException e) {
+            if (abandon(lockKey, entry, waiter)) {
+                if (e instanceof InterruptedException) {
+                    throw (InterruptedException) e;
+                }
+                return false;
+            }
+            // Handed over while we were giving up
+            if (e instanceof InterruptedException) {
+                release(lockKey);
+                throw (InterruptedException) e;
+            }
+            return true;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Local lock grant failed: " + lockKey, e.getCause());
+        }
+    }
+
+    /**
+     * Acquires the local lock for a key without blocking the calling thread
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs maximum time to wait in milliseconds
+     * @return a future completed with the owner to release the local lock with, null on timeout
+     */
+    public CompletableFuture<DetachedOwner> acquireAsync(String lockKey, long timeoutMs) {
+        DetachedOwner owner = new DetachedOwner();
+        Entry entry = retain(lockKey);
+        Waiter waiter;
+
+        entry.guard.lock();
+        try {
+            if (entry.owner == null && entry.waiters.isEmpty()) {
+                entry.owner = owner;
+                return CompletableFuture.completedFuture(owner);
+            }
+            waiter = new Waiter(owner);
+            entry.waiters.add(waiter);
+        } finally {
+            entry.guard.unlock();
+        }
+
+        // Only the timer is scheduled, nothing blocks while queued
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            if (abandon(lockKey, entry, waiter)) {
+                waiter.granted.completeExceptionally(new TimeoutException());
+            }
+        }, timeoutMs);
+        waiter.granted.whenComplete((granted, e) -> timeout.cancel(false));
+        return waiter.granted.handle((granted, e) -> e == null ? owner : null);
+    }
+
+    /**
+     * Releases the local lock the current thread holds for a key and hands it to the next queued owner
+     *
+     * @param lockKey the key to unlock
+     * @return true if the current thread held the key, false otherwise
+     */
+    public boolean release(String lockKey) {
+        return release(lockKey, Thread.currentThread());
+    }
+
+    /**
+     * Releases a local lock acquired by {@link #acquireAsync} and hands it to the next queued owner
+     *
+     * @param lockKey the key to unlock
+     * @param owner the owner the acquire was completed with
+     * @return true if the owner held the key, false otherwise
+     */
+    public boolean release(String lockKey, DetachedOwner owner) {
+        return release(lockKey, (Object) owner);
+    }
+
+    private boolean release(String lockKey, Object owner) {
+        Entry entry = entries.get(lockKey);
+        if (entry == null) {
+            return false;
+        }
+
+        Waiter next;
+        entry.guard.lock();
+        try {
+            if (entry.owner != owner) {
+                return false;
+            }
+            next = entry.waiters.poll();
+            entry.owner = next != null ? next.owner : null;
+        } finally {
+            entry.guard.unlock();
+        }
+
+        if (next != null) {
+            next.granted.complete(null);
+        }
+        unretain(lockKey, entry);
+        return true;
+    }
+
+    /**
+     * @return the number of keys currently held or waited on in this JVM
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private boolean abandon(String lockKey, Entry entry, Waiter waiter) {
+        entry.guard.lock();
+        try {
+            if (!entry.waiters.remove(waiter)) {
+                return false;
+            }
+        } finally {
+            entry.guard.unlock();
+        }
+        unretain(lockKey, entry);
+        return true;
+    }
+
+    private Entry retain(String lockKey) {
+        return entries.compute(lockKey, (key, entry) -> {
+            Entry result = entry != null ? entry : new Entry();
+            result.references++;
+            return result;
+        });
+    }
+
+    private void unretain(String lockKey, Entry entry) {
+        entries.computeIfPresent(lockKey, (key, current) ->
+                current == entry && --current.references == 0 ? null : current);
+    }
+
+    private static final class Entry {
+        private final ReentrantLock guard = new ReentrantLock();
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private Object owner;
+
+        // Holder plus waiters, guarded by the map's compute lock
+        private int references;
+    }
+
+    /**
+     * Identity of an asynchronous acquirer, the only handle that releases its local lock
+     */
+    public static final class DetachedOwner {
+        private DetachedOwner() {
+        }
+    }
+
+    private static final class Waiter {
+        private final Object owner;
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+
+        private Waiter(Object owner) {
+            this.owner = owner;
+        }
+    }
+}
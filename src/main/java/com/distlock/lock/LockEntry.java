@@ -0,0 +1,35 @@
+package com.distlock.lock;
+
+/**
+ * A held lock as reported by a lock listing
+ */
+public final class LockEntry {
+
+    private final String lockKey;
+    private final String owner;
+    private final long ttlMs;
+
+    public LockEntry(String lockKey, String owner, long ttlMs) {
+        this.lockKey = lockKey;
+        this.owner = owner;
+        this.ttlMs = ttlMs;
+    }
+
+    public String getLockKey() {
+        return lockKey;
+    }
+
+    /**
+     * @return an identifier of the holder; never a value that could release the lock
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the remaining lease in milliseconds, -1 if the lock is held until its owner goes away
+     */
+    public long getTtlMs() {
+        return ttlMs;
+    }
+}
\ No newline at end of file
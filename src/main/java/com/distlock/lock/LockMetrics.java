@@ -0,0 +1,286 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of the lock operations, published through {@code /actuator/metrics} and
+ * {@code /actuator/prometheus}.
+ * <p>
+ * Every meter is registered up front for its fixed backend and strategy tags, so recording on the
+ * hot path is a field read plus a timer or counter update: no tag lists, lookups or builders.
+ * Durations are passed in as {@link System#nanoTime()} deltas.
+ */
+@Component
+public class LockMetrics {
+
+    private static final int MAX_TIMED_HOLDS = 10_000;
+    private static final long STALE_HOLD_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final Backend redis;
+    private final Backend zookeeper;
+    private final Backend local;
+    private final Timer lockAcquired;
+    private final Timer lockFailed;
+    private final Timer lockHold;
+    private final DistributionSummary redisBatch;
+    private final Counter nearCacheHits;
+    private final Counter nearCacheMisses;
+    private final Counter zookeeperReaped;
+    // Start of the current hold per key of locks held in this JVM, the service admits one holder
+    // per key to the backends. Locks handed out as tokens carry their grant time instead
+    private final ConcurrentHashMap<String, Long> holdStarts = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LockMetrics(MeterRegistry registry, AppConfig appConfig) {
+        String strategy = appConfig.getStrategy();
+        this.redis = new Backend(registry, "redis", strategy);
+        this.zookeeper = new Backend(registry, "zookeeper", strategy);
+        this.local = new Backend(registry, "local", strategy);
+        this.lockAcquired = histogram("distlock.lock.acquire", "Time from request to grant of a lock through the service")
+                .tags("strategy", strategy, "result", "acquired").register(registry);
+        this.lockFailed = histogram("distlock.lock.acquire", "Time from request to grant of a lock through the service")
+                .tags("strategy", strategy, "result", "failed").register(registry);
+        this.lockHold = histogram("distlock.lock.hold", "Time a lock was held before release")
+                .tags("strategy", strategy).register(registry);
+        this.redisBatch = DistributionSummary.builder("distlock.redis.batch.size")
+                .description("Commands sent in one auto-batched Redis pipeline")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.nearCacheHits = Counter.builder("distlock.nearcache.requests")
+                .description("Lock status queries by whether the near cache answered them")
+                .tags("result", "hit").register(registry);
+        this.nearCacheMisses = Counter.builder("distlock.nearcache.requests")
+                .description("Lock status queries by whether the near cache answered them")
+                .tags("result", "miss").register(registry);
+        this.zookeeperReaped = Counter.builder("distlock.zookeeper.reaped")
+                .description("Empty idle lock key nodes deleted from ZooKeeper")
+                .register(registry);
+    }
+
+    public Backend redis() {
+        return redis;
+    }
+
+    public Backend zookeeper() {
+        return zookeeper;
+    }
+
+    public Backend local() {
+        return local;
+    }
+
+    /**
+     * Records a service level acquire and starts timing the hold of the lock
+     *
+     * @param lockKey the key of the lock
+     * @param waitNanos the time spent acquiring
+     * @param acquired whether the lock was granted
+     */
+    public void lockAcquired(String lockKey, long waitNanos, boolean acquired) {
+        lockAcquired(waitNanos, acquired);
+        if (acquired) {
+            startHold(lockKey, System.nanoTime());
+        }
+    }
+
+    /**
+     * Records a service level acquire of a lock whose hold is timed by {@link #lockReleasedByToken}
+     *
+     * @param waitNanos the time spent acquiring
+     * @param acquired whether the lock was granted
+     */
+    public void lockAcquired(long waitNanos, boolean acquired) {
+        if (acquired) {
+            lockAcquired.record(waitNanos, TimeUnit.NANOSECONDS);
+        } else {
+            lockFailed.record(waitNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records a service level acquire of several locks taken together
+     *
+     * @param lockKeys the keys of the locks
+     * @param waitNanos the time spent acquiring
+     * @param acquired whether the locks were granted
+     */
+    public void locksAcquired(List<String> lockKeys, long waitNanos, boolean acquired) {
+        if (acquired) {
+            lockAcquired.record(waitNanos, TimeUnit.NANOSECONDS);
+            long now = System.nanoTime();
+            for (int i = 0; i < lockKeys.size(); i++) {
+                startHold(lockKeys.get(i), now);
+            }
+        } else {
+            lockFailed.record(waitNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records the hold time of a lock being released
+     *
+     * @param lockKey the key of the lock
+     */
+    public void lockReleased(String lockKey) {
+        Long start = holdStarts.remove(lockKey);
+        if (start != null) {
+            lockHold.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records the hold time of a lock handed out as a token, possibly released on another replica
+     *
+     * @param grantedAtMillis the wall-clock time the lock was granted at
+     */
+    public void lockReleasedByToken(long grantedAtMillis) {
+        long heldMs = System.currentTimeMillis() - grantedAtMillis;
+        // Clocks of the replicas may disagree, a negative hold tells nothing
+        if (heldMs >= 0) {
+            lockHold.record(heldMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Holds never released here, because their lease expired or the caller went away, would pile up;
+    // while the map is full new holds are simply not timed, the stale ones are swept off the hot path
+    private void startHold(String lockKey, long now) {
+        if (holdStarts.size() < MAX_TIMED_HOLDS) {
+            holdStarts.put(lockKey, now);
+        }
+    }
+
+    /**
+     * Stops timing holds that have not been released for an hour, making room for new ones
+     */
+    @Scheduled(fixedDelayString = "${lock.hold-sweep-interval:60000}")
+    public void sweepStaleHolds() {
+        long now = System.nanoTime();
+        holdStarts.values().removeIf(start -> now - start > STALE_HOLD_NANOS);
+    }
+
+    /**
+     * Records the size of an auto-batched Redis pipeline
+     *
+     * @param commands the number of commands in the pipeline
+     */
+    public void redisBatch(int commands) {
+        redisBatch.record(commands);
+    }
+
+    /**
+     * Records a lock status query that consulted the near cache
+     *
+     * @param hit whether the cached state was served
+     */
+    public void nearCacheLookup(boolean hit) {
+        if (hit) {
+            nearCacheHits.increment();
+        } else {
+            nearCacheMisses.increment();
+        }
+    }
+
+    /**
+     * Records empty lock key nodes deleted from ZooKeeper
+     *
+     * @param nodes the number of deleted nodes
+     */
+    public void zookeeperReaped(int nodes) {
+        zookeeperReaped.increment(nodes);
+    }
+
+    private static Timer.Builder histogram(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram();
+    }
+
+    /**
+     * Meters of one backend, tagged with the backend and the configured strategy
+     */
+    public static final class Backend {
+        private final Timer acquired;
+        private final Timer failed;
+        private final Timer release;
+        private final Timer roundTrip;
+        private final Counter retries;
+        private final Counter timeouts;
+        private final Counter contention;
+        private final Counter releaseFailures;
+        private final Counter rejections;
+
+        private Backend(MeterRegistry registry, String backend, String strategy) {
+            String acquireDescription = "Time spent acquiring a backend lock, including waiting";
+            this.acquired = histogram("distlock.backend.acquire", acquireDescription)
+                    .tags("backend", backend, "strategy", strategy, "result", "acquired").register(registry);
+            this.failed = histogram("distlock.backend.acquire", acquireDescription)
+                    .tags("backend", backend, "strategy", strategy, "result", "failed").register(registry);
+            this.release = histogram("distlock.backend.release", "Latency of releasing a backend lock")
+                    .tags("backend", backend, "strategy", strategy).register(registry);
+            this.roundTrip = histogram("distlock.backend.roundtrip", "Latency of a single backend call")
+                    .tags("backend", backend, "strategy", strategy).register(registry);
+            this.retries = Counter.builder("distlock.backend.retries")
+                    .description("Acquire attempts after the first one")
+                    .tags("backend", backend, "strategy", strategy).register(registry);
+            this.timeouts = Counter.builder("distlock.backend.timeouts")
+                    .description("Acquires that gave up without the lock")
+                    .tags("backend", backend, "strategy", strategy).register(registry);
+            this.contention = Counter.builder("distlock.backend.contention")
+                    .description("Acquires that found the lock held and had to wait")
+                    .tags("backend", backend, "strategy", strategy).register(registry);
+            this.releaseFailures = Counter.builder("distlock.backend.release.failures")
+                    .description("Releases of locks that were not held or already expired")
+                    .tags("backend", backend, "strategy", strategy).register(registry);
+            this.rejections = Counter.builder("distlock.backend.rejected")
+                    .description("Acquires refused at once by the open circuit breaker")
+                    .tags("backend", backend, "strategy", strategy).register(registry);
+        }
+
+        public void acquired(long nanos) {
+            acquired.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void timedOut(long nanos) {
+            failed.record(nanos, TimeUnit.NANOSECONDS);
+            timeouts.increment();
+        }
+
+        public void failed(long nanos) {
+            failed.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void retried() {
+            retries.increment();
+        }
+
+        public void contended() {
+            contention.increment();
+        }
+
+        public void released(long nanos, boolean released) {
+            release.record(nanos, TimeUnit.NANOSECONDS);
+            if (!released) {
+                releaseFailures.increment();
+            }
+        }
+
+        public void roundTrip(long nanos) {
+            roundTrip.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void rejected() {
+            rejections.increment();
+        }
+    }
+}
\ No newline at end of file
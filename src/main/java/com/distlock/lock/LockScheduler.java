@@ -0,0 +1,117 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Small shared pool that drives the non-blocking acquire paths.
+ * <p>
+ * Async waiters do not occupy a thread while they wait: they are resumed here by unlock
+ * notifications, ZooKeeper watches or timeouts, and only run for the duration of a single
+ * backend call. Deliberately not exposed as a {@code ScheduledExecutorService} bean so that
+ * it does not replace the scheduler used for {@code @Scheduled} tasks.
+ * <p>
+ * With {@code lock.virtual-threads} enabled on JDK 21+ each task runs on its own virtual
+ * thread and the platform pool only keeps time.
+ * <p>
+ * Backend calls that can only block, like read/write lock and semaphore acquires, go to a
+ * separate bounded pool of {@code lock.blocking-threads} so they never starve the tasks above.
+ */
+@Slf4j
+@Component
+public class LockScheduler {
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final Executor taskExecutor;
+    private final ThreadPoolExecutor blockingPool;
+    private final boolean virtualThreads;
+
+    @Autowired
+    public LockScheduler(AppConfig appConfig) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-async-");
+        threadFactory.setDaemon(true);
+        this.timer = new ScheduledThreadPoolExecutor(appConfig.getAsyncThreads(), threadFactory);
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.virtualThreads = appConfig.isVirtualThreads() && supportsVirtualThreads();
+        this.taskExecutor = virtualThreads ? new VirtualThreadTaskExecutor("lock-virtual-") : timer;
+        CustomizableThreadFactory blockingThreadFactory = new CustomizableThreadFactory("lock-blocking-");
+        blockingThreadFactory.setDaemon(true);
+        this.blockingPool = new ThreadPoolExecutor(appConfig.getBlockingThreads(), appConfig.getBlockingThreads(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(appConfig.getBlockingQueue()), blockingThreadFactory);
+        this.blockingPool.allowCoreThreadTimeOut(true);
+        if (appConfig.isVirtualThreads() && !virtualThreads) {
+            log.warn("Virtual threads requested but not supported by Java {}, using platform threads",
+                    Runtime.version().feature());
+        }
+    }
+
+    /**
+     * Runs a task as soon as possible
+     *
+     * @param task the task to run
+     */
+    public void execute(Runnable task) {
+        taskExecutor.execute(task);
+    }
+
+    /**
+     * Runs a blocking call on the bounded blocking pool
+     *
+     * @param task the blocking call
+     * @return a future completed with its result, or failed with {@link RejectedExecutionException}
+     * if the pool and its queue are full
+     */
+    public <T> CompletableFuture<T> supplyBlocking(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, blockingPool);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Runs a task after a delay
+     *
+     * @param task the task to run
+     * @param delayMs the delay in milliseconds
+     * @return a handle that can cancel the task
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        if (!virtualThreads) {
+            return timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }
+        return timer.schedule(() -> taskExecutor.execute(task), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if lock work runs on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        blockingPool.shutdownNow();
+    }
+
+    private static boolean supportsVirtualThreads() {
+        return Runtime.version().feature() >= 21;
+    }
+}
@@ -0,0 +1,134 @@
+package com.distlock.lock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded LRU of lock states ("held" or "free") that is kept correct by invalidations.
+ * <p>
+ * A reader takes {@link #generation(String)} before querying the backend and passes it to
+ * {@link #put}; an invalidation of the key in between bumps the generation and the stale answer
+ * is dropped instead of cached. Invalidations are striped over a fixed number of counters, so an
+ * unrelated key that shares a stripe only costs a cache miss. Every entry also carries its own
+ * expiry, which bounds staleness if an invalidation is ever lost.
+ */
+public class LockStateCache implements RedisLockNotifier.InvalidationListener {
+
+    private static final int STRIPES = 256;
+
+    private final int maxSize;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    private final LinkedHashMap<String, CachedState> entries;
+
+    /**
+     * @param maxSize the maximum number of keys, 0 disables the cache
+     */
+    public LockStateCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedState> eldest) {
+                return size() > LockStateCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return true if states are cached at all
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Gets the cached state of a key
+     *
+     * @param key the key
+     * @return true if held, false if free, null if not cached or expired
+     */
+    public Boolean get(String key) {
+        synchronized (entries) {
+            CachedState entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtNanos - System.nanoTime() <= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.locked;
+        }
+    }
+
+    /**
+     * @param key the key about to be read from the backend
+     * @return the invalidation generation to pass to {@link #put}
+     */
+    public long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * Caches the state read from the backend, unless the key was invalidated since the read began
+     *
+     * @param key the key
+     * @param locked the state read
+     * @param validMs how long the state may be served
+     * @param generation the generation taken before the read
+     */
+    public void put(String key, boolean locked, long validMs, long generation) {
+        if (validMs <= 0) {
+            return;
+        }
+        long expiresAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(validMs);
+        synchronized (entries) {
+            if (generations.get(stripe(key)) == generation) {
+                entries.put(key, new CachedState(locked, expiresAtNanos));
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(String key) {
+        generations.incrementAndGet(stripe(key));
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached keys
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static final class CachedState {
+        private final boolean locked;
+        private final long expiresAtNanos;
+
+        private CachedState(boolean locked, long expiresAtNanos) {
+            this.locked = locked;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.distlock.lock;
+
+/**
+ * Thrown when a lock operation is refused at once because a backend it needs is known to be down
+ */
+public class LockUnavailableException extends RuntimeException {
+
+    private final String backend;
+
+    public LockUnavailableException(String backend) {
+        super(backend + " is unavailable, circuit breaker open");
+        this.backend = backend;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+}
\ No newline at end of file
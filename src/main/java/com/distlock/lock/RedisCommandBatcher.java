@@ -0,0 +1,275 @@
+package com.distlock.lock;
+
+import com.distlock.config.RedisConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Coalesces the single-key lock commands of concurrent callers into one pipeline per Redis
+ * instance.
+ * <p>
+ * With {@code redis.lock.batch-enabled} every instance gets a queue and a flusher thread. The
+ * flusher takes the first queued command, gathers whatever else arrives within
+ * {@code redis.lock.batch-window-micros} up to {@code redis.lock.batch-max-size} commands, sends
+ * them as one pipeline on a single pooled connection and completes each caller's future with its
+ * own reply. Commands queued while a pipeline is in flight go out together with the next one, so
+ * under load the round-trips and borrowed connections per second stay roughly constant while
+ * the operations per second grow. Callers still block until their reply arrives, bounded by
+ * {@code redis.timeout}.
+ * <p>
+ * Disabled, every command runs directly on the caller's thread as before.
+ */
+@Slf4j
+@Component
+public class RedisCommandBatcher {
+
+    private final RedisConfig redisConfig;
+    private final LockMetrics metrics;
+    private final boolean enabled;
+    private final ConcurrentHashMap<RedisTemplate<String, String>, Flusher> flushers = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
+
+    @Autowired
+    public RedisCommandBatcher(RedisConfig redisConfig, LockMetrics metrics) {
+        this.redisConfig = redisConfig;
+        this.metrics = metrics;
+        this.enabled = redisConfig.getLock().isBatchEnabled();
+    }
+
+    /**
+     * @return true if commands are coalesced into pipelines
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * SET NX PX
+     *
+     * @param template the instance that owns the key
+     * @param key the Redis key
+     * @param value the owner value
+     * @param ttlMs the lease in milliseconds
+     * @return true if the key was set
+     */
+    public boolean setIfAbsent(RedisTemplate<String, String> template, String key, String value, long ttlMs) {
+        if (!enabled) {
+            return Boolean.TRUE.equals(template.opsForValue().setIfAbsent(key, value, ttlMs, TimeUnit.MILLISECONDS));
+        }
+        final byte[] rawKey = bytes(key);
+        final byte[] rawValue = bytes(value);
+        return Boolean.TRUE.equals(submit(template, connection -> connection.stringCommands()
+                .set(rawKey, rawValue, Expiration.milliseconds(ttlMs), RedisStringCommands.SetOption.ifAbsent())));
+    }
+
+    /**
+     * EVAL of a script on a single key
+     *
+     * @param template the instance that owns the key
+     * @param script the script, sent in full with every call when batched
+     * @param key the Redis key
+     * @param args the script arguments
+     * @return the integer reply, null if there was none
+     */
+    public Long eval(RedisTemplate<String, String> template, RedisScript<Long> script, String key, String... args) {
+        if (!enabled) {
+            return template.execute(script, List.of(key), (Object[]) args);
+        }
+        final byte[][] keyAndArgs = new byte[args.length + 1][];
+        keyAndArgs[0] = bytes(key);
+        for (int i = 0; i < args.length; i++) {
+            keyAndArgs[i + 1] = bytes(args[i]);
+        }
+        final byte[] rawScript = bytes(script.getScriptAsString());
+        return (Long) submit(template, connection -> connection.scriptingCommands()
+                .eval(rawScript, ReturnType.INTEGER, 1, keyAndArgs));
+    }
+
+    /**
+     * EXISTS
+     *
+     * @param template the instance that owns the key
+     * @param key the Redis key
+     * @return true if the key exists
+     */
+    public boolean hasKey(RedisTemplate<String, String> template, String key) {
+        if (!enabled) {
+            return Boolean.TRUE.equals(template.hasKey(key));
+        }
+        final byte[] rawKey = bytes(key);
+        return Boolean.TRUE.equals(submit(template, connection -> connection.keyCommands().exists(rawKey)));
+    }
+
+    /**
+     * PTTL
+     *
+     * @param template the instance that owns the key
+     * @param key the Redis key
+     * @return the remaining lease in milliseconds, -1 without expiry, -2 if the key does not exist
+     */
+    public long pttl(RedisTemplate<String, String> template, String key) {
+        Long ttl;
+        if (!enabled) {
+            ttl = template.getExpire(key, TimeUnit.MILLISECONDS);
+        } else {
+            final byte[] rawKey = bytes(key);
+            ttl = (Long) submit(template, connection -> connection.keyCommands().pTtl(rawKey));
+        }
+        return ttl != null ? ttl : -2L;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdown = true;
+        flushers.values().forEach(flusher -> flusher.thread.interrupt());
+    }
+
+    private Object submit(RedisTemplate<String, String> template, Function<RedisConnection, Object> command) {
+        if (shutdown) {
+            throw new IllegalStateException("Redis command batcher is shut down");
+        }
+        Command queued = new Command(command);
+        flushers.computeIfAbsent(template, Flusher::new).queue.add(queued);
+        try {
+            return queued.reply.get(redisConfig.getTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a batched Redis reply", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for a batched Redis reply", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Command {
+        private final Function<RedisConnection, Object> call;
+        private final CompletableFuture<Object> reply = new CompletableFuture<>();
+
+        private Command(Function<RedisConnection, Object> call) {
+            this.call = call;
+        }
+    }
+
+    /**
+     * Queue and flusher thread of one Redis instance
+     */
+    private final class Flusher implements Runnable {
+        private final RedisTemplate<String, String> template;
+        private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        private Flusher(RedisTemplate<String, String> template) {
+            this.template = template;
+            this.thread = new Thread(this, "redis-batch-" + flushers.size());
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void run() {
+            final int maxSize = Math.max(1, redisConfig.getLock().getBatchMaxSize());
+            final long windowNanos = TimeUnit.MICROSECONDS.toNanos(redisConfig.getLock().getBatchWindowMicros());
+            List<Command> batch = new ArrayList<>(maxSize);
+            while (!shutdown) {
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, maxSize - batch.size());
+                    final long windowEnd = System.nanoTime() + windowNanos;
+                    while (batch.size() < maxSize) {
+                        long remaining = windowEnd - System.nanoTime();
+                        Command next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, maxSize - batch.size());
+                    }
+                    flush(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            RuntimeException closed = new IllegalStateException("Redis command batcher is shut down");
+            for (Command command : batch) {
+                command.reply.completeExceptionally(closed);
+            }
+            Command left;
+            while ((left = queue.poll()) != null) {
+                left.reply.completeExceptionally(closed);
+            }
+        }
+
+        private void flush(List<Command> batch) {
+            try {
+                List<Object> replies = template.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Command command : batch) {
+                        command.call.apply(connection);
+                    }
+                    return null;
+                });
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).reply.complete(replies.get(i));
+                }
+                metrics.redisBatch(batch.size());
+            } catch (RedisPipelineException e) {
+                // Every command was answered, the failed ones with their own error in place of a reply
+                List<Object> replies = e.getPipelineResult();
+                if (replies.size() != batch.size()) {
+                    failAll(batch, e);
+                    return;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    Object reply = replies.get(i);
+                    if (reply instanceof Throwable) {
+                        batch.get(i).reply.completeExceptionally((Throwable) reply);
+                    } else {
+                        batch.get(i).reply.complete(reply);
+                    }
+                }
+                metrics.redisBatch(batch.size());
+            } catch (RuntimeException e) {
+                failAll(batch, e);
+            }
+        }
+
+        // The pipeline itself failed, its callers retry or give up as they would on any other Redis error
+        private void failAll(List<Command> batch, RuntimeException e) {
+            log.warn("Error sending a pipeline of {} Redis lock commands", batch.size(), e);
+            for (Command command : batch) {
+                command.reply.completeExceptionally(e);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -3,114 +3,574 @@ package com.distlock.lock;
 import com.distlock.config.RedisConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
 public class RedisLock implements DistributedLock {
 
-    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisShards shards;
+    private final RedisCommandBatcher batcher;
     private final RedisConfig redisConfig;
-    private final ThreadLocal<String> lockValueThreadLocal = new ThreadLocal<>();
+    private final RedisLockNotifier notifier;
+    private final RedisLockWatchdog watchdog;
+    private final LockScheduler scheduler;
+    private final RedisQuorum quorum;
+    private final LockMetrics metrics;
+    private final LockMetrics.Backend meters;
+    private final LockStateCache nearCache;
+    private final BackendCircuitBreaker breaker;
+    private final ThreadLocal<Map<String, String>> lockValueThreadLocal = ThreadLocal.withInitial(HashMap::new);
+    // Values of locks acquired asynchronously, owned by the JVM rather than a thread
+    private final ConcurrentHashMap<String, String> detachedLocks = new ConcurrentHashMap<>();
 
-    // Lua script for lock release (ensures we only delete our own lock)
+    // Lua script for lock release (ensures we only delete our own lock and wakes up waiters)
     private static final String RELEASE_LOCK_SCRIPT =
             "if redis.call('get', KEYS[1]) == ARGV[1] then " +
-                    "    return redis.call('del', KEYS[1]) " +
+                    "    redis.call('del', KEYS[1]) " +
+                    "    redis.call('publish', '" + RedisLockNotifier.UNLOCK_CHANNEL + "', KEYS[1]) " +
+                    "    return 1 " +
                     "else " +
                     "    return 0 " +
                     "end";
 
+    // Lua script for multi-key acquire: sets all keys or none, returns 0 or the 1-based index of a held key
+    private static final String ACQUIRE_ALL_LOCKS_SCRIPT = acquireAllLocksScript(false);
+
+    // With the near cache enabled every grant is published, so other instances drop a cached "free"
+    private static final String ACQUIRE_LOCK_PUBLISHING_SCRIPT =
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then " +
+                    "    redis.call('publish', '" + RedisLockNotifier.ACQUIRE_CHANNEL + "', KEYS[1]) " +
+                    "    return 1 " +
+                    "else " +
+                    "    return 0 " +
+                    "end";
+    private static final String ACQUIRE_ALL_LOCKS_PUBLISHING_SCRIPT = acquireAllLocksScript(true);
+
+    // Lua script for multi-key release, ARGV[i] is our value for KEYS[i]; returns the number released
+    private static final String RELEASE_ALL_LOCKS_SCRIPT =
+            "local released = 0 " +
+                    "for i = 1, #KEYS do " +
+                    "    if redis.call('get', KEYS[i]) == ARGV[i] then " +
+                    "        redis.call('del', KEYS[i]) " +
+                    "        redis.call('publish', '" + RedisLockNotifier.UNLOCK_CHANNEL + "', KEYS[i]) " +
+                    "        released = released + 1 " +
+                    "    end " +
+                    "end " +
+                    "return released";
+
+    // Fair mode keeps two sorted sets next to the lock key: the waiter queue scored by enqueue time
+    // and the waiters' heartbeat expiries, both in Redis server time. Waiters whose heartbeat
+    // lapsed are dropped before the queue is looked at
+    private static final String FAIR_PRELUDE =
+            "if redis.replicate_commands then redis.replicate_commands() end " +
+                    "local now = redis.call('time') " +
+                    "local nowMs = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000) " +
+                    "local stale = redis.call('zrangebyscore', KEYS[3], '-inf', nowMs) " +
+                    "for i = 1, #stale do " +
+                    "    redis.call('zrem', KEYS[2], stale[i]) " +
+                    "end " +
+                    "redis.call('zremrangebyscore', KEYS[3], '-inf', nowMs) ";
+
+    // Fair acquire, see fairAcquireLockScript
+    private static final String FAIR_ACQUIRE_LOCK_SCRIPT = fairAcquireLockScript(false);
+    private static final String FAIR_ACQUIRE_LOCK_PUBLISHING_SCRIPT = fairAcquireLockScript(true);
+
+    // Fair release, also used by a waiter giving up: leaves the queue and, if we hold the lock,
+    // hands it to the head of the queue with a lease of one waiter TTL (extended to the full lease
+    // once the waiter picks it up), or deletes it if nobody is waiting. ARGV: value, waiter TTL
+    private static final String FAIR_RELEASE_LOCK_SCRIPT = FAIR_PRELUDE +
+            "redis.call('zrem', KEYS[2], ARGV[1]) " +
+            "redis.call('zrem', KEYS[3], ARGV[1]) " +
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] then " +
+            "    return 0 " +
+            "end " +
+            "local head = redis.call('zrange', KEYS[2], 0, 0)[1] " +
+            "if head then " +
+            "    redis.call('set', KEYS[1], head, 'PX', ARGV[2]) " +
+            "    redis.call('zrem', KEYS[2], head) " +
+            "    redis.call('zrem', KEYS[3], head) " +
+            "else " +
+            "    redis.call('del', KEYS[1]) " +
+            "end " +
+            "redis.call('publish', '" + RedisLockNotifier.UNLOCK_CHANNEL + "', KEYS[1]) " +
+            "return 1";
+
+    // Owner and remaining lease of each key that is a plain lock, as {key, value, pttl} triples;
+    // keys of other types fail the GET and are skipped like keys gone since the SCAN
+    private static final byte[] LIST_LOCKS_SCRIPT = (
+            "local result = {} " +
+                    "for i = 1, #KEYS do " +
+                    "    local value = redis.pcall('get', KEYS[i]) " +
+                    "    if type(value) == 'string' then " +
+                    "        result[#result + 1] = {KEYS[i], value, redis.call('pttl', KEYS[i])} " +
+                    "    end " +
+                    "end " +
+                    "return result").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] LOCK_PATTERN = "lock:*".getBytes(StandardCharsets.UTF_8);
+
     private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(RELEASE_LOCK_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> ACQUIRE_ALL_SCRIPT = new DefaultRedisScript<>(ACQUIRE_ALL_LOCKS_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_ALL_SCRIPT = new DefaultRedisScript<>(RELEASE_ALL_LOCKS_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> FAIR_ACQUIRE_SCRIPT = new DefaultRedisScript<>(FAIR_ACQUIRE_LOCK_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> FAIR_RELEASE_SCRIPT = new DefaultRedisScript<>(FAIR_RELEASE_LOCK_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> ACQUIRE_PUBLISHING_SCRIPT = new DefaultRedisScript<>(ACQUIRE_LOCK_PUBLISHING_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> ACQUIRE_ALL_PUBLISHING_SCRIPT = new DefaultRedisScript<>(ACQUIRE_ALL_LOCKS_PUBLISHING_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> FAIR_ACQUIRE_PUBLISHING_SCRIPT = new DefaultRedisScript<>(FAIR_ACQUIRE_LOCK_PUBLISHING_SCRIPT, Long.class);
+
+    private static String acquireAllLocksScript(boolean publish) {
+        return "for i = 1, #KEYS do " +
+                "    if redis.call('exists', KEYS[i]) == 1 then " +
+                "        return i " +
+                "    end " +
+                "end " +
+                "for i = 1, #KEYS do " +
+                "    redis.call('set', KEYS[i], ARGV[1], 'PX', ARGV[2]) " +
+                (publish ? "    redis.call('publish', '" + RedisLockNotifier.ACQUIRE_CHANNEL + "', KEYS[i]) " : "") +
+                "end " +
+                "return 0";
+    }
+
+    // Fair acquire: granted when the lock was handed to us, or when it is free and we are at the
+    // head of the queue (or the queue is empty); otherwise joins the queue and refreshes our
+    // heartbeat. ARGV: value, lease TTL, waiter TTL
+    private static String fairAcquireLockScript(boolean publish) {
+        return FAIR_PRELUDE +
+                "local owner = redis.call('get', KEYS[1]) " +
+                "if owner == ARGV[1] or (not owner and (redis.call('zrange', KEYS[2], 0, 0)[1] or ARGV[1]) == ARGV[1]) then " +
+                "    redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+                (publish ? "    if not owner then redis.call('publish', '" + RedisLockNotifier.ACQUIRE_CHANNEL + "', KEYS[1]) end " : "") +
+                "    redis.call('zrem', KEYS[2], ARGV[1]) " +
+                "    redis.call('zrem', KEYS[3], ARGV[1]) " +
+                "    return 1 " +
+                "end " +
+                "redis.call('zadd', KEYS[2], 'NX', nowMs, ARGV[1]) " +
+                "redis.call('zadd', KEYS[3], nowMs + tonumber(ARGV[3]), ARGV[1]) " +
+                "redis.call('pexpire', KEYS[2], ARGV[3]) " +
+                "redis.call('pexpire', KEYS[3], ARGV[3]) " +
+                "return 0";
+    }
 
     @Autowired
-    public RedisLock(RedisTemplate<String, String> redisTemplate, RedisConfig redisConfig) {
-        this.redisTemplate = redisTemplate;
+    public RedisLock(RedisShards shards, RedisCommandBatcher batcher, RedisConfig redisConfig,
+                     RedisLockNotifier notifier, RedisLockWatchdog watchdog, LockScheduler scheduler,
+                     RedisQuorum quorum, LockMetrics metrics) {
+        this.shards = shards;
+        this.batcher = batcher;
         this.redisConfig = redisConfig;
+        this.notifier = notifier;
+        this.watchdog = watchdog;
+        this.scheduler = scheduler;
+        this.quorum = quorum;
+        this.metrics = metrics;
+        this.meters = metrics.redis();
+        if (redisConfig.getLock().isFair() && quorum.isEnabled()) {
+            log.warn("Fair Redis locking is not supported in quorum mode, falling back to unfair locking");
+        }
+        if (redisConfig.getLock().getNearCacheSize() > 0 && quorum.isEnabled()) {
+            log.warn("The Redis lock near cache is not supported in quorum mode, status queries go to the nodes");
+        }
+        this.nearCache = new LockStateCache(quorum.isEnabled() ? 0 : redisConfig.getLock().getNearCacheSize());
+        RedisConfig.Lock lockConfig = redisConfig.getLock();
+        this.breaker = new BackendCircuitBreaker("Redis", lockConfig.isBreakerEnabled(), lockConfig.getBreakerWindow(),
+                lockConfig.getBreakerFailureRate(), lockConfig.getBreakerOpenTime(), lockConfig.getBreakerHalfOpenTrials(), meters);
+        if (nearCache.isEnabled()) {
+            notifier.addInvalidationListener(nearCache);
+        }
     }
 
     @Override
     public boolean acquire(String lockKey) {
-        return acquire(lockKey, redisConfig.getLock().getTtl());
+        return acquire(lockKey, redisConfig.getLock().getWaitTime());
     }
 
     @Override
     public boolean acquire(String lockKey, long timeoutMs) {
         final String lockValue = UUID.randomUUID().toString();
         final long startTime = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        final long leaseTtl = redisConfig.getLock().getTtl();
         final int retryTimes = redisConfig.getLock().getRetryTimes();
         final long retryInterval = redisConfig.getLock().getRetryInterval();
 
         lockKey = "lock:" + lockKey;
+        BackendCircuitBreaker.Permit permit = breaker.tryAcquirePermission();
+        if (permit == null) {
+            log.debug("Redis circuit breaker open, not acquiring: {}", lockKey);
+            meters.failed(System.nanoTime() - startNanos);
+            return false;
+        }
 
+        // Subscribe before the first attempt so that a release racing with it still wakes us up
+        RedisLockNotifier.Signal signal = notifier.subscribe(lockKey);
+        final boolean fair = isFair();
+        boolean acquired = false;
+        boolean answered = true;
         try {
             int retryCount = 0;
-            while (System.currentTimeMillis() - startTime < timeoutMs) {
-                Boolean result = redisTemplate.opsForValue().setIfAbsent(lockKey, lockValue, timeoutMs, TimeUnit.MILLISECONDS);
-
-                if (Boolean.TRUE.equals(result)) {
-                    lockValueThreadLocal.set(lockValue);
+            int polls = 0;
+            while (true) {
+                long seen = signal.generation();
+                if (fair ? tryLockFair(lockKey, lockValue, leaseTtl) : tryLock(lockKey, lockValue, leaseTtl)) {
+                    acquired = true;
+                    lockValueThreadLocal.get().put(lockKey, lockValue);
+                    watchdog.track(lockKey, lockValue);
                     log.debug("Successfully acquired Redis lock: {}", lockKey);
+                    meters.acquired(System.nanoTime() - startNanos);
                     return true;
                 }
 
                 retryCount++;
-                if (retryCount > retryTimes) {
-                    log.debug("Failed to acquire Redis lock after {} retries: {}", retryTimes, lockKey);
+                if (retryCount == 1) {
+                    meters.contended();
+                }
+                // Woken waiters retry until the timeout, however often other traffic wakes them; only
+                // blind polls while the unlock subscription is down also count against retry-times.
+                // A queued fair waiter keeps its place until the timeout either way
+                if (!fair && !notifier.isSubscribed() && ++polls > retryTimes) {
+                    log.debug("Failed to acquire Redis lock after {} polls: {}", retryTimes, lockKey);
+                    meters.timedOut(System.nanoTime() - startNanos);
                     return false;
                 }
 
-                log.debug("Waiting for Redis lock: {}, retry: {}/{}", lockKey, retryCount, retryTimes);
+                long remaining = timeoutMs - (System.currentTimeMillis() - startTime);
+                if (remaining <= 0) {
+                    break;
+                }
+
+                // Park until the holder releases; the retry interval only bounds the wait in case
+                // the lock expires by TTL or the notification is lost. In fair mode it also keeps
+                // our heartbeat in the queue alive
+                log.debug("Waiting for Redis lock: {}, retry: {}", lockKey, retryCount);
                 try {
-                    Thread.sleep(retryInterval);
+                    signal.await(seen, Math.min(retryInterval, remaining));
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
+                    answered = false;
+                    meters.failed(System.nanoTime() - startNanos);
                     return false;
                 }
+                meters.retried();
             }
 
             log.debug("Timeout waiting for Redis lock: {}", lockKey);
+            meters.timedOut(System.nanoTime() - startNanos);
             return false;
         } catch (Exception e) {
+            answered = false;
             log.error("Error acquiring Redis lock: {}", lockKey, e);
+            meters.failed(System.nanoTime() - startNanos);
             return false;
+        } finally {
+            notifier.unsubscribe(lockKey, signal);
+            if (fair && !acquired) {
+                leaveQueue(lockKey, lockValue);
+            }
+            permit.finished(answered);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> acquireAsync(String lockKey, long timeoutMs) {
+        BackendCircuitBreaker.Permit permit = breaker.tryAcquirePermission();
+        if (permit == null) {
+            log.debug("Redis circuit breaker open, not acquiring: lock:{}", lockKey);
+            meters.failed(0);
+            return CompletableFuture.completedFuture(false);
         }
+        AsyncAcquire acquire = new AsyncAcquire("lock:" + lockKey, timeoutMs, permit);
+        scheduler.execute(acquire::attempt);
+        return acquire.result;
     }
 
     @Override
     public boolean release(String lockKey) {
+        final long startNanos = System.nanoTime();
         lockKey = "lock:" + lockKey;
-        String lockValue = lockValueThreadLocal.get();
+        String lockValue = lockValueThreadLocal.get().get(lockKey);
+        boolean detached = false;
+        if (lockValue == null) {
+            lockValue = detachedLocks.get(lockKey);
+            detached = lockValue != null;
+        }
 
         if (lockValue == null) {
             log.warn("Cannot release Redis lock, no value found in ThreadLocal: {}", lockKey);
+            meters.released(System.nanoTime() - startNanos, false);
             return false;
         }
 
         try {
-            Long result = redisTemplate.execute(
-                    RELEASE_SCRIPT,
-                    Collections.singletonList(lockKey),
-                    lockValue
-            );
-
-            boolean released = result != null && result == 1L;
+            boolean released = unlock(lockKey, lockValue);
+            meters.released(System.nanoTime() - startNanos, released);
+            watchdog.untrack(lockKey, lockValue);
             if (released) {
-                lockValueThreadLocal.remove();
+                if (detached) {
+                    detachedLocks.remove(lockKey, lockValue);
+                } else {
+                    forget(lockKey);
+                }
+                notifier.notifyReleased(lockKey);
                 log.debug("Successfully released Redis lock: {}", lockKey);
             } else {
+                if (detached) {
+                    // Expired or released by token elsewhere, the value is no longer ours
+                    detachedLocks.remove(lockKey, lockValue);
+                }
                 log.warn("Failed to release Redis lock: {}", lockKey);
             }
 
             return released;
         } catch (Exception e) {
             log.error("Error releasing Redis lock: {}", lockKey, e);
+            meters.released(System.nanoTime() - startNanos, false);
+            return false;
+        }
+    }
+
+    // The token is the owner value. The lease is no longer renewed, so a holder that goes away
+    // without releasing only blocks the key until redis.lock.ttl after the grant
+    @Override
+    public String detach(String lockKey) {
+        String lockValue = detachedLocks.remove("lock:" + lockKey);
+        if (lockValue != null) {
+            watchdog.untrack("lock:" + lockKey, lockValue);
+        }
+        return lockValue;
+    }
+
+    @Override
+    public boolean releaseByToken(String lockKey, String token) {
+        final long startNanos = System.nanoTime();
+        lockKey = "lock:" + lockKey;
+        try {
+            boolean released = unlock(lockKey, token);
+            meters.released(System.nanoTime() - startNanos, released);
+            watchdog.untrack(lockKey, token);
+            detachedLocks.remove(lockKey, token);
+            if (released) {
+                notifier.notifyReleased(lockKey);
+                log.debug("Successfully released Redis lock by token: {}", lockKey);
+            } else {
+                log.warn("Failed to release Redis lock by token: {}", lockKey);
+            }
+            return released;
+        } catch (Exception e) {
+            log.error("Error releasing Redis lock by token: {}", lockKey, e);
+            meters.released(System.nanoTime() - startNanos, false);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean acquireAll(Collection<String> lockKeys, long timeoutMs) {
+        final String lockValue = UUID.randomUUID().toString();
+        final long startTime = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        final String leaseTtl = String.valueOf(redisConfig.getLock().getTtl());
+        final int retryTimes = redisConfig.getLock().getRetryTimes();
+        final long retryInterval = redisConfig.getLock().getRetryInterval();
+
+        List<String> keys = toRedisKeys(lockKeys);
+        if (keys.isEmpty()) {
+            return true;
+        }
+        BackendCircuitBreaker.Permit permit = breaker.tryAcquirePermission();
+        if (permit == null) {
+            log.debug("Redis circuit breaker open, not acquiring: {}", keys);
+            meters.failed(System.nanoTime() - startNanos);
+            return false;
+        }
+
+        List<RedisLockNotifier.Signal> signals = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            signals.add(notifier.subscribe(key));
+        }
+        boolean answered = true;
+        try {
+            long[] seen = new long[keys.size()];
+            int retryCount = 0;
+            int polls = 0;
+            while (true) {
+                for (int i = 0; i < seen.length; i++) {
+                    seen[i] = signals.get(i).generation();
+                }
+                Long blocked = tryLockAll(keys, lockValue, leaseTtl);
+
+                if (blocked != null && blocked == 0L) {
+                    Map<String, String> owned = lockValueThreadLocal.get();
+                    for (String key : keys) {
+                        owned.put(key, lockValue);
+                        watchdog.track(key, lockValue);
+                    }
+                    log.debug("Successfully acquired {} Redis locks: {}", keys.size(), keys);
+                    meters.acquired(System.nanoTime() - startNanos);
+                    return true;
+                }
+
+                retryCount++;
+                if (retryCount == 1 && blocked != null) {
+                    meters.contended();
+                }
+                if (blocked == null || (!notifier.isSubscribed() && ++polls > retryTimes)) {
+                    log.debug("Failed to acquire Redis locks: {}", keys);
+                    meters.timedOut(System.nanoTime() - startNanos);
+                    return false;
+                }
+
+                long remaining = timeoutMs - (System.currentTimeMillis() - startTime);
+                if (remaining <= 0) {
+                    break;
+                }
+
+                // Wait for the key that blocked us, the others are rechecked on the next attempt
+                int index = blocked.intValue() - 1;
+                log.debug("Waiting for Redis lock: {}, retry: {}", keys.get(index), retryCount);
+                try {
+                    signals.get(index).await(seen[index], Math.min(retryInterval, remaining));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    answered = false;
+                    meters.failed(System.nanoTime() - startNanos);
+                    return false;
+                }
+                meters.retried();
+            }
+
+            log.debug("Timeout waiting for Redis locks: {}", keys);
+            meters.timedOut(System.nanoTime() - startNanos);
+            return false;
+        } catch (Exception e) {
+            answered = false;
+            log.error("Error acquiring Redis locks: {}", keys, e);
+            meters.failed(System.nanoTime() - startNanos);
+            return false;
+        } finally {
+            for (int i = 0; i < keys.size(); i++) {
+                notifier.unsubscribe(keys.get(i), signals.get(i));
+            }
+            permit.finished(answered);
+        }
+    }
+
+    @Override
+    public boolean releaseAll(Collection<String> lockKeys) {
+        final long startNanos = System.nanoTime();
+        List<String> keys = toRedisKeys(lockKeys);
+        if (keys.isEmpty()) {
+            return true;
+        }
+
+        Map<String, String> owned = lockValueThreadLocal.get();
+        List<String> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String lockValue = owned.get(key);
+            if (lockValue == null) {
+                log.warn("Cannot release Redis lock, no value found in ThreadLocal: {}", key);
+                meters.released(System.nanoTime() - startNanos, false);
+                return false;
+            }
+            values.add(lockValue);
+        }
+
+        try {
+            boolean released = unlockAll(keys, values.toArray());
+            meters.released(System.nanoTime() - startNanos, released);
+
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                // After a partial failure, the keys still held stay ours and keep being renewed
+                if (!released && isHeldBy(key, values.get(i))) {
+                    continue;
+                }
+                watchdog.untrack(key, values.get(i));
+                forget(key);
+                notifier.notifyReleased(key);
+            }
+
+            if (released) {
+                log.debug("Successfully released {} Redis locks: {}", keys.size(), keys);
+            } else {
+                log.warn("Failed to release all {} Redis locks: {}", keys.size(), keys);
+            }
+            return released;
+        } catch (Exception e) {
+            log.error("Error releasing Redis locks: {}", keys, e);
+            meters.released(System.nanoTime() - startNanos, false);
+            return false;
+        }
+    }
+
+    /**
+     * Acquires all of the locks or none of them like {@link #acquireAll}, without blocking the
+     * calling thread, and hands them over at once like {@link #detach}: every attempt is the one
+     * all-or-none script, and all the keys share one owner value that is the token. The leases
+     * are not renewed.
+     *
+     * @param lockKeys the keys to lock
+     * @param timeoutMs maximum time to wait for all locks in milliseconds
+     * @return a future completed with the token, or null if no lock was acquired
+     */
+    public CompletableFuture<String> acquireAllToken(Collection<String> lockKeys, long timeoutMs) {
+        List<String> keys = toRedisKeys(lockKeys);
+        BackendCircuitBreaker.Permit permit = breaker.tryAcquirePermission();
+        if (permit == null) {
+            log.debug("Redis circuit breaker open, not acquiring: {}", keys);
+            meters.failed(0);
+            return CompletableFuture.completedFuture(null);
+        }
+        AsyncAcquireAll acquire = new AsyncAcquireAll(keys, timeoutMs, permit);
+        scheduler.execute(acquire::attempt);
+        return acquire.result;
+    }
+
+    /**
+     * Releases locks acquired together by the token {@link #acquireAllToken} returned, with one
+     * release script per shard
+     *
+     * @param lockKeys the keys to unlock
+     * @param token the token of the locks
+     * @return true if every lock was still held under the token and is now released, false otherwise
+     */
+    public boolean releaseAllByToken(Collection<String> lockKeys, String token) {
+        final long startNanos = System.nanoTime();
+        List<String> keys = toRedisKeys(lockKeys);
+        try {
+            boolean released = unlockAll(keys, Collections.nCopies(keys.size(), token).toArray());
+            meters.released(System.nanoTime() - startNanos, released);
+            keys.forEach(notifier::notifyReleased);
+            if (released) {
+                log.debug("Successfully released {} Redis locks by token: {}", keys.size(), keys);
+            } else {
+                log.warn("Failed to release all {} Redis locks by token: {}", keys.size(), keys);
+            }
+            return released;
+        } catch (Exception e) {
+            log.error("Error releasing Redis locks by token: {}", keys, e);
+            meters.released(System.nanoTime() - startNanos, false);
             return false;
         }
     }
@@ -119,15 +579,527 @@ public class RedisLock implements DistributedLock {
     public boolean isLocked(String lockKey) {
         lockKey = "lock:" + lockKey;
         try {
-            return redisTemplate.hasKey(lockKey);
+            if (quorum.isEnabled()) {
+                final String key = lockKey;
+                return quorum.countGranted(node -> node.hasKey(key)) >= quorum.getMajority();
+            }
+            if (nearCache.isEnabled() && notifier.isSubscribed()) {
+                return isLockedCached(lockKey);
+            }
+            return batcher.hasKey(shards.forKey(lockKey), lockKey);
         } catch (Exception e) {
+            breaker.recordFailure();
             log.error("Error checking Redis lock: {}", lockKey, e);
             return false;
+        } finally {
+            breaker.recordCall();
+        }
+    }
+
+    // The cursor is "<instance>:<SCAN cursor>", instances in the order of the shard list. Like
+    // SCAN itself, a key may be listed twice and a lock taken during the listing may be missed
+    @Override
+    public String listLocks(String cursor, int limit, Consumer<LockEntry> sink) {
+        // Every quorum node holds every lock, the first one stands for all of them
+        List<RedisTemplate<String, String>> instances = quorum.isEnabled()
+                ? quorum.getNodes().subList(0, 1)
+                : shards.getInstances();
+        int instance = 0;
+        String scanCursor = "0";
+        if (cursor != null) {
+            try {
+                int separator = cursor.indexOf(':');
+                instance = Integer.parseInt(cursor.substring(0, separator));
+                scanCursor = cursor.substring(separator + 1);
+                Long.parseUnsignedLong(scanCursor);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid Redis lock cursor: " + cursor);
+            }
+            if (instance < 0 || instance >= instances.size()) {
+                throw new IllegalArgumentException("Invalid Redis lock cursor: " + cursor);
+            }
+        }
+
+        int[] listed = new int[1];
+        Consumer<LockEntry> counted = entry -> {
+            listed[0]++;
+            sink.accept(entry);
+        };
+        while (listed[0] < limit) {
+            final String from = scanCursor;
+            scanCursor = instances.get(instance).execute(
+                    (RedisCallback<String>) connection -> scanLocks(connection, from, limit, counted));
+            if ("0".equals(scanCursor)) {
+                if (++instance == instances.size()) {
+                    return null;
+                }
+            }
         }
+        return instance + ":" + scanCursor;
     }
 
     @Override
     public String getType() {
         return "Redis";
     }
+
+    /**
+     * @return true while acquires fail at once because Redis is failing
+     */
+    public boolean isCircuitOpen() {
+        return breaker.isOpen();
+    }
+
+    /**
+     * @return the state of the circuit breaker in front of Redis
+     */
+    public BackendCircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    /**
+     * @return the number of keys in the near cache
+     */
+    public int getNearCacheSize() {
+        return nearCache.size();
+    }
+
+    // One SCAN step and one script call for the owners and leases of the keys it returned
+    private static String scanLocks(RedisConnection connection, String cursor, int count, Consumer<LockEntry> sink) {
+        List<?> page = (List<?>) connection.execute("SCAN", cursor.getBytes(StandardCharsets.UTF_8),
+                "MATCH".getBytes(StandardCharsets.UTF_8), LOCK_PATTERN,
+                "COUNT".getBytes(StandardCharsets.UTF_8), String.valueOf(count).getBytes(StandardCharsets.UTF_8));
+        String next = new String((byte[]) page.get(0), StandardCharsets.UTF_8);
+        List<?> keys = (List<?>) page.get(1);
+        if (keys.isEmpty()) {
+            return next;
+        }
+
+        byte[][] keysAndArgs = keys.toArray(new byte[0][]);
+        List<?> locks = connection.scriptingCommands().eval(LIST_LOCKS_SCRIPT, ReturnType.MULTI, keysAndArgs.length, keysAndArgs);
+        for (Object lock : locks) {
+            List<?> fields = (List<?>) lock;
+            String redisKey = new String((byte[]) fields.get(0), StandardCharsets.UTF_8);
+            sink.accept(new LockEntry(redisKey.substring("lock:".length()), fingerprint((byte[]) fields.get(1)),
+                    (Long) fields.get(2)));
+        }
+        return next;
+    }
+
+    // The owner value is also the release token, so only a digest of it is ever shown
+    static String fingerprint(byte[] value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // A held state is good until the lease runs out or a release is published, a free state until
+    // an acquire is published; both at most for the configured max age
+    private boolean isLockedCached(String lockKey) {
+        Boolean cached = nearCache.get(lockKey);
+        metrics.nearCacheLookup(cached != null);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = nearCache.generation(lockKey);
+        long ttl = batcher.pttl(shards.forKey(lockKey), lockKey);
+        boolean locked = ttl != -2L;
+        long maxAge = redisConfig.getLock().getNearCacheMaxAge();
+        nearCache.put(lockKey, locked, locked && ttl >= 0 ? Math.min(ttl, maxAge) : maxAge, generation);
+        return locked;
+    }
+
+    // Single node: one SETNX. Quorum: SETNX on every node in parallel; the lock is held only if a
+    // majority granted it while the lease, less elapsed time and clock drift, is still valid
+    private boolean tryLock(String lockKey, String lockValue, long leaseTtl) {
+        final long roundTripStart = System.nanoTime();
+        try {
+            if (nearCache.isEnabled()) {
+                Long result = batcher.eval(shards.forKey(lockKey), ACQUIRE_PUBLISHING_SCRIPT, lockKey, lockValue,
+                        String.valueOf(leaseTtl));
+                nearCache.invalidate(lockKey);
+                return result != null && result == 1L;
+            } else if (!quorum.isEnabled()) {
+                return batcher.setIfAbsent(shards.forKey(lockKey), lockKey, lockValue, leaseTtl);
+            }
+
+            final long startTime = System.currentTimeMillis();
+            int granted = quorum.countGranted(node ->
+                    node.opsForValue().setIfAbsent(lockKey, lockValue, leaseTtl, TimeUnit.MILLISECONDS));
+            if (granted >= quorum.getMajority() && quorum.getValidity(leaseTtl, System.currentTimeMillis() - startTime) > 0) {
+                return true;
+            }
+
+            // Undo partial grants everywhere so the minority does not block the next attempt
+            quorum.invokeAll(node -> node.execute(RELEASE_SCRIPT, Collections.singletonList(lockKey), lockValue));
+            return false;
+        } catch (RuntimeException e) {
+            breaker.recordFailure();
+            throw e;
+        } finally {
+            breaker.recordCall();
+            meters.roundTrip(System.nanoTime() - roundTripStart);
+        }
+    }
+
+    private boolean unlock(String lockKey, String lockValue) {
+        final long roundTripStart = System.nanoTime();
+        try {
+            if (isFair()) {
+                Long result = shards.forKey(lockKey).execute(FAIR_RELEASE_SCRIPT, fairKeys(lockKey), lockValue,
+                        String.valueOf(redisConfig.getLock().getFairWaiterTtl()));
+                return result != null && result == 1L;
+            } else if (!quorum.isEnabled()) {
+                Long result = batcher.eval(shards.forKey(lockKey), RELEASE_SCRIPT, lockKey, lockValue);
+                return result != null && result == 1L;
+            }
+
+            int released = quorum.countGranted(node ->
+                    Long.valueOf(1L).equals(node.execute(RELEASE_SCRIPT, Collections.singletonList(lockKey), lockValue)));
+            return released >= quorum.getMajority();
+        } catch (RuntimeException e) {
+            breaker.recordFailure();
+            throw e;
+        } finally {
+            nearCache.invalidate(lockKey);
+            breaker.recordCall();
+            meters.roundTrip(System.nanoTime() - roundTripStart);
+        }
+    }
+
+    // Fair mode, single node only: one script call that either grants the lock or queues us
+    private boolean tryLockFair(String lockKey, String lockValue, long leaseTtl) {
+        final long roundTripStart = System.nanoTime();
+        try {
+            Long result = shards.forKey(lockKey).execute(nearCache.isEnabled() ? FAIR_ACQUIRE_PUBLISHING_SCRIPT : FAIR_ACQUIRE_SCRIPT,
+                    fairKeys(lockKey), lockValue, String.valueOf(leaseTtl),
+                    String.valueOf(redisConfig.getLock().getFairWaiterTtl()));
+            nearCache.invalidate(lockKey);
+            return result != null && result == 1L;
+        } catch (RuntimeException e) {
+            breaker.recordFailure();
+            throw e;
+        } finally {
+            breaker.recordCall();
+            meters.roundTrip(System.nanoTime() - roundTripStart);
+        }
+    }
+
+    // Drops a waiter that gave up from the queue; if the lock was handed to it in the meantime
+    // it is passed on to the next waiter right away
+    private void leaveQueue(String lockKey, String lockValue) {
+        try {
+            if (unlock(lockKey, lockValue)) {
+                log.debug("Passed on Redis lock handed to a waiter that gave up: {}", lockKey);
+            }
+        } catch (Exception e) {
+            // The waiter's heartbeat lapses and the handoff lease expires on their own
+            log.warn("Error leaving Redis lock queue: {}", lockKey, e);
+        }
+    }
+
+    private boolean isFair() {
+        return redisConfig.getLock().isFair() && !quorum.isEnabled();
+    }
+
+    private static List<String> fairKeys(String lockKey) {
+        String key = lockKey.substring("lock:".length());
+        return List.of(lockKey, "lockqueue:" + key, "lockwaiters:" + key);
+    }
+
+    private Long tryLockAll(List<String> keys, String lockValue, String leaseTtl) {
+        final long roundTripStart = System.nanoTime();
+        try {
+            if (!quorum.isEnabled()) {
+                return tryLockAllShards(keys, lockValue, leaseTtl);
+            }
+
+            final long startTime = System.currentTimeMillis();
+            List<Long> results = quorum.invokeAll(node -> node.execute(ACQUIRE_ALL_SCRIPT, keys, lockValue, leaseTtl));
+            int granted = 0;
+            Long blocked = null;
+            for (Long result : results) {
+                if (result == null) {
+                    continue;
+                }
+                if (result == 0L) {
+                    granted++;
+                } else if (blocked == null) {
+                    blocked = result;
+                }
+            }
+            if (granted >= quorum.getMajority()
+                    && quorum.getValidity(Long.parseLong(leaseTtl), System.currentTimeMillis() - startTime) > 0) {
+                return 0L;
+            }
+
+            Object[] values = Collections.nCopies(keys.size(), lockValue).toArray();
+            quorum.invokeAll(node -> node.execute(RELEASE_ALL_SCRIPT, keys, values));
+            return blocked != null ? blocked : 1L;
+        } catch (RuntimeException e) {
+            breaker.recordFailure();
+            throw e;
+        } finally {
+            keys.forEach(nearCache::invalidate);
+            breaker.recordCall();
+            meters.roundTrip(System.nanoTime() - roundTripStart);
+        }
+    }
+
+    private boolean unlockAll(List<String> keys, Object[] values) {
+        final long roundTripStart = System.nanoTime();
+        try {
+            if (!quorum.isEnabled()) {
+                return unlockAllShards(keys, values) == keys.size();
+            }
+
+            int released = quorum.countGranted(node ->
+                    Long.valueOf(keys.size()).equals(node.execute(RELEASE_ALL_SCRIPT, keys, values)));
+            return released >= quorum.getMajority();
+        } catch (RuntimeException e) {
+            breaker.recordFailure();
+            throw e;
+        } finally {
+            keys.forEach(nearCache::invalidate);
+            breaker.recordCall();
+            meters.roundTrip(System.nanoTime() - roundTripStart);
+        }
+    }
+
+    // Sharded: one all-or-none script per shard, in the order of the sorted keys; a shard that
+    // refuses rolls back the shards already taken. Returns 0 or the 1-based index of a held key
+    private Long tryLockAllShards(List<String> keys, String lockValue, String leaseTtl) {
+        final DefaultRedisScript<Long> acquireAll = nearCache.isEnabled() ? ACQUIRE_ALL_PUBLISHING_SCRIPT : ACQUIRE_ALL_SCRIPT;
+        Map<RedisTemplate<String, String>, List<String>> groups = shards.group(keys);
+        if (groups.size() == 1) {
+            return groups.keySet().iterator().next().execute(acquireAll, keys, lockValue, leaseTtl);
+        }
+
+        List<Map.Entry<RedisTemplate<String, String>, List<String>>> taken = new ArrayList<>();
+        for (Map.Entry<RedisTemplate<String, String>, List<String>> group : groups.entrySet()) {
+            Long blocked = group.getKey().execute(acquireAll, group.getValue(), lockValue, leaseTtl);
+            if (blocked == null || blocked != 0L) {
+                for (Map.Entry<RedisTemplate<String, String>, List<String>> rollback : taken) {
+                    rollback.getKey().execute(RELEASE_ALL_SCRIPT, rollback.getValue(),
+                            Collections.nCopies(rollback.getValue().size(), lockValue).toArray());
+                }
+                return blocked == null ? null : (long) keys.indexOf(group.getValue().get(blocked.intValue() - 1)) + 1;
+            }
+            taken.add(group);
+        }
+        return 0L;
+    }
+
+    // Sharded: one release script per shard; returns the number of keys released
+    private long unlockAllShards(List<String> keys, Object[] values) {
+        Map<RedisTemplate<String, String>, List<String>> groups = shards.group(keys);
+        if (groups.size() == 1) {
+            Long result = groups.keySet().iterator().next().execute(RELEASE_ALL_SCRIPT, keys, values);
+            return result != null ? result : 0L;
+        }
+
+        long released = 0;
+        for (Map.Entry<RedisTemplate<String, String>, List<String>> group : groups.entrySet()) {
+            Object[] groupValues = new Object[group.getValue().size()];
+            for (int i = 0; i < groupValues.length; i++) {
+                groupValues[i] = values[keys.indexOf(group.getValue().get(i))];
+            }
+            Long result = group.getKey().execute(RELEASE_ALL_SCRIPT, group.getValue(), groupValues);
+            released += result != null ? result : 0L;
+        }
+        return released;
+    }
+
+    /**
+     * Non-blocking acquire: every attempt is a single SETNX (or fair queue script) on the
+     * scheduler, and between attempts the waiter is only a callback on the unlock signal plus a
+     * fallback timer.
+     */
+    private final class AsyncAcquire {
+        private final String lockKey;
+        private final String lockValue = UUID.randomUUID().toString();
+        private final long deadline;
+        private final RedisLockNotifier.Signal signal;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private final boolean fair = isFair();
+        private final BackendCircuitBreaker.Permit permit;
+        private int retryCount;
+        private int polls;
+
+        private AsyncAcquire(String lockKey, long timeoutMs, BackendCircuitBreaker.Permit permit) {
+            this.lockKey = lockKey;
+            this.deadline = System.currentTimeMillis() + timeoutMs;
+            this.permit = permit;
+            this.signal = notifier.subscribe(lockKey);
+            result.whenComplete((acquired, e) -> notifier.unsubscribe(lockKey, signal));
+        }
+
+        private void attempt() {
+            try {
+                long seen = signal.generation();
+                final long leaseTtl = redisConfig.getLock().getTtl();
+                if (fair ? tryLockFair(lockKey, lockValue, leaseTtl) : tryLock(lockKey, lockValue, leaseTtl)) {
+                    detachedLocks.put(lockKey, lockValue);
+                    watchdog.track(lockKey, lockValue);
+                    log.debug("Successfully acquired Redis lock asynchronously: {}", lockKey);
+                    meters.acquired(System.nanoTime() - startNanos);
+                    permit.finished(true);
+                    result.complete(true);
+                    return;
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (++retryCount == 1) {
+                    meters.contended();
+                }
+                if ((!fair && !notifier.isSubscribed() && ++polls > redisConfig.getLock().getRetryTimes()) || remaining <= 0) {
+                    log.debug("Failed to acquire Redis lock asynchronously: {}", lockKey);
+                    meters.timedOut(System.nanoTime() - startNanos);
+                    giveUp(true);
+                    return;
+                }
+
+                // Whichever comes first, the unlock notification or the fallback timer, retries
+                AtomicBoolean retried = new AtomicBoolean();
+                Runnable retry = () -> {
+                    if (retried.compareAndSet(false, true)) {
+                        meters.retried();
+                        scheduler.execute(this::attempt);
+                    }
+                };
+                signal.whenReleased(seen, retry);
+                scheduler.schedule(retry, Math.min(redisConfig.getLock().getRetryInterval(), remaining));
+            } catch (Exception e) {
+                log.error("Error acquiring Redis lock asynchronously: {}", lockKey, e);
+                meters.failed(System.nanoTime() - startNanos);
+                giveUp(false);
+            }
+        }
+
+        private void giveUp(boolean answered) {
+            if (fair) {
+                leaveQueue(lockKey, lockValue);
+            }
+            permit.finished(answered);
+            result.complete(false);
+        }
+    }
+
+    private boolean isHeldBy(String lockKey, String lockValue) {
+        try {
+            if (quorum.isEnabled()) {
+                return quorum.countGranted(node -> lockValue.equals(node.opsForValue().get(lockKey))) >= quorum.getMajority();
+            }
+            return lockValue.equals(shards.forKey(lockKey).opsForValue().get(lockKey));
+        } catch (RuntimeException e) {
+            // Unknown, keep renewing rather than let a held lock expire
+            log.warn("Cannot check Redis lock owner: {}", lockKey, e);
+            return true;
+        }
+    }
+
+    /**
+     * Non-blocking all-or-none acquire: every attempt is one all-or-none script on the scheduler,
+     * and between attempts the waiter is only a callback on the unlock signal of the key that
+     * blocked it plus a fallback timer.
+     */
+    private final class AsyncAcquireAll {
+        private final List<String> keys;
+        private final String lockValue = UUID.randomUUID().toString();
+        private final long deadline;
+        private final List<RedisLockNotifier.Signal> signals;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private final BackendCircuitBreaker.Permit permit;
+        private int retryCount;
+        private int polls;
+
+        private AsyncAcquireAll(List<String> keys, long timeoutMs, BackendCircuitBreaker.Permit permit) {
+            this.keys = keys;
+            this.deadline = System.currentTimeMillis() + timeoutMs;
+            this.permit = permit;
+            this.signals = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                signals.add(notifier.subscribe(key));
+            }
+            result.whenComplete((token, e) -> {
+                for (int i = 0; i < keys.size(); i++) {
+                    notifier.unsubscribe(keys.get(i), signals.get(i));
+                }
+            });
+        }
+
+        private void attempt() {
+            try {
+                long[] seen = new long[keys.size()];
+                for (int i = 0; i < seen.length; i++) {
+                    seen[i] = signals.get(i).generation();
+                }
+                Long blocked = tryLockAll(keys, lockValue, String.valueOf(redisConfig.getLock().getTtl()));
+                if (blocked != null && blocked == 0L) {
+                    log.debug("Successfully acquired {} Redis locks asynchronously: {}", keys.size(), keys);
+                    meters.acquired(System.nanoTime() - startNanos);
+                    permit.finished(true);
+                    result.complete(lockValue);
+                    return;
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (++retryCount == 1 && blocked != null) {
+                    meters.contended();
+                }
+                if (blocked == null || (!notifier.isSubscribed() && ++polls > redisConfig.getLock().getRetryTimes())
+                        || remaining <= 0) {
+                    log.debug("Failed to acquire Redis locks asynchronously: {}", keys);
+                    meters.timedOut(System.nanoTime() - startNanos);
+                    permit.finished(true);
+                    result.complete(null);
+                    return;
+                }
+
+                // Wait for the key that blocked us, the others are rechecked on the next attempt
+                int index = blocked.intValue() - 1;
+                AtomicBoolean retried = new AtomicBoolean();
+                Runnable retry = () -> {
+                    if (retried.compareAndSet(false, true)) {
+                        meters.retried();
+                        scheduler.execute(this::attempt);
+                    }
+                };
+                signals.get(index).whenReleased(seen[index], retry);
+                scheduler.schedule(retry, Math.min(redisConfig.getLock().getRetryInterval(), remaining));
+            } catch (Exception e) {
+                log.error("Error acquiring Redis locks asynchronously: {}", keys, e);
+                meters.failed(System.nanoTime() - startNanos);
+                permit.finished(false);
+                result.complete(null);
+            }
+        }
+    }
+
+    // Sorted and de-duplicated so every caller takes multiple keys in the same order
+    private static List<String> toRedisKeys(Collection<String> lockKeys) {
+        List<String> keys = new ArrayList<>(lockKeys.size());
+        for (String lockKey : new TreeSet<>(lockKeys)) {
+            keys.add("lock:" + lockKey);
+        }
+        return keys;
+    }
+
+    private void forget(String lockKey) {
+        Map<String, String> owned = lockValueThreadLocal.get();
+        owned.remove(lockKey);
+        if (owned.isEmpty()) {
+            lockValueThreadLocal.remove();
+        }
+    }
 }
\ No newline at end of file
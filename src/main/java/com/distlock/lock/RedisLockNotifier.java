@@ -0,0 +1,287 @@
+package com.distlock.lock;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fans out Redis unlock notifications to the local threads waiting on a key.
+ * <p>
+ * The release script publishes the released key on {@link #UNLOCK_CHANNEL}; a single
+ * subscription per JVM delivers it here and every local waiter on that key is woken up.
+ * Until the subscription is established waiters fall back to polling at the retry interval.
+ * <p>
+ * Released keys, and acquired keys published on {@link #ACQUIRE_CHANNEL} when the near cache is
+ * enabled, are also passed to the registered {@link InvalidationListener}s. Every (re)subscription
+ * invalidates everything, since messages sent while unsubscribed are lost.
+ */
+@Slf4j
+@Component
+public class RedisLockNotifier implements MessageListener, SubscriptionListener {
+
+    public static final String UNLOCK_CHANNEL = "lock:unlock";
+    public static final String ACQUIRE_CHANNEL = "lock:acquire";
+
+    private final ConcurrentHashMap<String, Signal> signals = new ConcurrentHashMap<>();
+    // Instances that run lock scripts: redis.host plus any lock shards
+    private final List<RedisConnectionFactory> connectionFactories = new ArrayList<>();
+    // One subscription per instance and channel, the acquire channel only with a near cache
+    private final List<RedisMessageListenerContainer> containers = new CopyOnWriteArrayList<>();
+    private final List<InvalidationListener> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public RedisLockNotifier(RedisConnectionFactory connectionFactory, RedisShards shards) {
+        connectionFactories.add(connectionFactory);
+        connectionFactories.addAll(shards.getConnectionFactories());
+        for (RedisConnectionFactory factory : connectionFactories) {
+            containers.add(createContainer(factory, UNLOCK_CHANNEL));
+        }
+    }
+
+    // Local-only notifier, used when no subscription is needed
+    RedisLockNotifier() {
+    }
+
+    /**
+     * Establishes the shared unlock subscription, retrying until Redis becomes reachable
+     */
+    @Scheduled(fixedDelayString = "${redis.lock.subscribe-retry-interval:5000}")
+    public void ensureSubscribed() {
+        for (RedisMessageListenerContainer container : containers) {
+            if (container.isRunning()) {
+                continue;
+            }
+            try {
+                container.start();
+                log.info("Subscribed to Redis lock notifications");
+            } catch (Exception e) {
+                log.warn("Cannot subscribe to Redis lock channel, waiters will poll: {}", e.getMessage());
+                container.stop();
+            }
+        }
+    }
+
+    /**
+     * @return true if the unlock subscription is running on every instance
+     */
+    public boolean isSubscribed() {
+        if (containers.isEmpty()) {
+            return false;
+        }
+        for (RedisMessageListenerContainer container : containers) {
+            if (!container.isRunning()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers a listener for lock state changes seen on the subscription. The first listener
+     * adds a subscription to {@link #ACQUIRE_CHANNEL} on every instance, established by the next
+     * {@link #ensureSubscribed()}
+     *
+     * @param listener the listener
+     */
+    public synchronized void addInvalidationListener(InvalidationListener listener) {
+        if (invalidationListeners.isEmpty()) {
+            for (RedisConnectionFactory factory : connectionFactories) {
+                containers.add(createContainer(factory, ACQUIRE_CHANNEL));
+            }
+        }
+        invalidationListeners.add(listener);
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        for (RedisMessageListenerContainer container : containers) {
+            container.destroy();
+        }
+    }
+
+    private RedisMessageListenerContainer createContainer(RedisConnectionFactory connectionFactory, String channel) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(this, new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        return container;
+    }
+
+    /**
+     * Registers interest in unlock events for a key. Must be called before the acquire
+     * attempt so that a release racing with the attempt is not missed.
+     *
+     * @param lockKey the Redis key to watch
+     * @return the signal to wait on; must be passed back to {@link #unsubscribe}
+     */
+    public Signal subscribe(String lockKey) {
+        return signals.compute(lockKey, (key, signal) -> {
+            Signal result = signal != null ? signal : new Signal();
+            result.subscribers++;
+            return result;
+        });
+    }
+
+    /**
+     * Drops interest in unlock events for a key
+     *
+     * @param lockKey the Redis key that was watched
+     * @param signal the signal returned by {@link #subscribe}
+     */
+    public void unsubscribe(String lockKey, Signal signal) {
+        signals.computeIfPresent(lockKey, (key, current) -> {
+            if (current != signal) {
+                return current;
+            }
+            return --current.subscribers == 0 ? null : current;
+        });
+    }
+
+    /**
+     * Wakes up the local waiters of a key
+     *
+     * @param lockKey the Redis key that was released
+     */
+    public void notifyReleased(String lockKey) {
+        Signal signal = signals.get(lockKey);
+        if (signal != null) {
+            signal.fire();
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String lockKey = new String(message.getBody(), StandardCharsets.UTF_8);
+        for (InvalidationListener listener : invalidationListeners) {
+            listener.invalidate(lockKey);
+        }
+        if (UNLOCK_CHANNEL.equals(new String(message.getChannel(), StandardCharsets.UTF_8))) {
+            log.trace("Received unlock notification: {}", lockKey);
+            notifyReleased(lockKey);
+        }
+    }
+
+    @Override
+    public void onChannelSubscribed(byte[] channel, long count) {
+        for (InvalidationListener listener : invalidationListeners) {
+            listener.invalidateAll();
+        }
+    }
+
+    /**
+     * Receives the keys whose lock state may have changed
+     */
+    public interface InvalidationListener {
+
+        /**
+         * @param lockKey the Redis key that was acquired or released
+         */
+        void invalidate(String lockKey);
+
+        /**
+         * Called when changes may have been missed
+         */
+        void invalidateAll();
+    }
+
+    /**
+     * Generation counter for a single key that waiters can block on
+     */
+    public static final class Signal {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        private List<Runnable> callbacks = new ArrayList<>();
+        private long generation;
+
+        // Guarded by the map's compute lock
+        private int subscribers;
+
+        /**
+         * @return the current generation, to be passed to {@link #await}
+         */
+        public long generation() {
+            lock.lock();
+            try {
+                return generation;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Waits until the key is released after the given generation was observed
+         *
+         * @param seen the generation observed before the acquire attempt
+         * @param timeoutMs maximum time to wait in milliseconds
+         * @return true if a release was observed, false on timeout
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        public boolean await(long seen, long timeoutMs) throws InterruptedException {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            lock.lock();
+            try {
+                while (generation == seen) {
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+                    remainingNanos = released.awaitNanos(remainingNanos);
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Runs a callback once the key is released after the given generation was observed,
+         * without blocking the calling thread
+         *
+         * @param seen the generation observed before the acquire attempt
+         * @param callback the callback to run, possibly on the notifying thread
+         */
+        public void whenReleased(long seen, Runnable callback) {
+            lock.lock();
+            try {
+                if (generation == seen) {
+                    callbacks.add(callback);
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            callback.run();
+        }
+
+        void fire() {
+            List<Runnable> pending;
+            lock.lock();
+            try {
+                generation++;
+                released.signalAll();
+                pending = callbacks;
+                callbacks = new ArrayList<>();
+            } finally {
+                lock.unlock();
+            }
+            pending.forEach(Runnable::run);
+        }
+    }
+}
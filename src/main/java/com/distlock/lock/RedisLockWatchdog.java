@@ -0,0 +1,176 @@
+package com.distlock.lock;
+
+import com.distlock.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the leases of the Redis locks held by this JVM alive.
+ * <p>
+ * Every tick all held locks are renewed in a single pipeline; each pipelined command is one
+ * Lua call that extends up to {@code redis.lock.watchdog-batch-size} keys, so the cost per tick
+ * is one round-trip per shard regardless of how many locks are held. In quorum mode the same
+ * pipeline goes to every node in parallel and a lease counts as renewed when a majority extended it.
+ * A lock is only given up once a majority answered that it no longer holds our value; a node that
+ * did not answer in time leaves the lock to be retried on the next tick.
+ */
+@Slf4j
+@Component
+public class RedisLockWatchdog {
+
+    // Extends the TTL of every key that still holds our value, returns 1/0 per key. Only plain
+    // locks are tracked; read/write and semaphore holds are named by tokens and not renewed
+    private static final String RENEW_LOCKS_SCRIPT =
+            "local result = {} " +
+                    "for i = 1, #KEYS do " +
+                    "    if redis.call('get', KEYS[i]) == ARGV[i + 1] then " +
+                    "        result[i] = redis.call('pexpire', KEYS[i], ARGV[1]) " +
+                    "    else " +
+                    "        result[i] = 0 " +
+                    "    end " +
+                    "end " +
+                    "return result";
+
+    private static final byte[] RENEW_SCRIPT = RENEW_LOCKS_SCRIPT.getBytes(StandardCharsets.UTF_8);
+
+    private final RedisShards shards;
+    private final RedisConfig redisConfig;
+    private final RedisQuorum quorum;
+    // Key and owner pairs of the plain locks held by this JVM
+    private final Set<Map.Entry<String, String>> heldLocks = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public RedisLockWatchdog(RedisShards shards, RedisConfig redisConfig, RedisQuorum quorum) {
+        this.shards = shards;
+        this.redisConfig = redisConfig;
+        this.quorum = quorum;
+    }
+
+    /**
+     * Starts renewing the lease of a lock acquired by this JVM
+     *
+     * @param lockKey the Redis key of the lock
+     * @param lockValue the owner value stored in the key
+     */
+    public void track(String lockKey, String lockValue) {
+        if (redisConfig.getLock().isWatchdogEnabled()) {
+            heldLocks.add(Map.entry(lockKey, lockValue));
+        }
+    }
+
+    /**
+     * Stops renewing the lease of a lock
+     *
+     * @param lockKey the Redis key of the lock
+     * @param lockValue the owner value stored in the key
+     */
+    public void untrack(String lockKey, String lockValue) {
+        heldLocks.remove(Map.entry(lockKey, lockValue));
+    }
+
+    /**
+     * @return the number of locks whose lease is currently being renewed
+     */
+    public int getHeldCount() {
+        return heldLocks.size();
+    }
+
+    @Scheduled(fixedDelayString = "${redis.lock.watchdog-interval:10000}")
+    public void renewLeases() {
+        if (heldLocks.isEmpty()) {
+            return;
+        }
+
+        final int batchSize = Math.max(1, redisConfig.getLock().getWatchdogBatchSize());
+        final byte[] ttl = String.valueOf(redisConfig.getLock().getTtl()).getBytes(StandardCharsets.UTF_8);
+
+        Map<RedisTemplate<String, String>, List<Map.Entry<String, String>>> byShard = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : heldLocks) {
+            byShard.computeIfAbsent(shards.forKey(entry.getKey()), shard -> new ArrayList<>()).add(entry);
+        }
+        byShard.forEach((shard, locks) -> renewLeases(shard, locks, batchSize, ttl));
+    }
+
+    private void renewLeases(RedisTemplate<String, String> shard, List<Map.Entry<String, String>> held, int batchSize,
+                             byte[] ttl) {
+        List<List<Map.Entry<String, String>>> batches = new ArrayList<>();
+        for (int from = 0; from < held.size(); from += batchSize) {
+            batches.add(held.subList(from, Math.min(held.size(), from + batchSize)));
+        }
+
+        try {
+            List<List<Object>> nodeResults = quorum.isEnabled()
+                    ? quorum.invokeAll(node -> renewOn(node, batches, ttl))
+                    : Collections.singletonList(renewOn(shard, batches, ttl));
+            final int required = quorum.isEnabled() ? quorum.getMajority() : 1;
+
+            int renewed = 0;
+            int unknown = 0;
+            for (int b = 0; b < batches.size(); b++) {
+                List<Map.Entry<String, String>> locks = batches.get(b);
+                for (int i = 0; i < locks.size(); i++) {
+                    if (countAnswers(nodeResults, b, i, 1L) >= required) {
+                        renewed++;
+                    } else if (countAnswers(nodeResults, b, i, 0L) >= required) {
+                        // Expired, taken over or released by token on another instance in the
+                        // meantime, renewing it further would be wrong
+                        Map.Entry<String, String> lost = locks.get(i);
+                        heldLocks.remove(lost);
+                        log.info("Redis lock no longer held under our value, stopped renewing: {}", lost.getKey());
+                    } else {
+                        unknown++;
+                    }
+                }
+            }
+            if (unknown > 0) {
+                log.warn("{} Redis lock leases not confirmed by a majority, retrying on the next tick", unknown);
+            }
+            log.debug("Renewed {} Redis lock leases in {} batches", renewed, batches.size());
+        } catch (Exception e) {
+            log.error("Error renewing Redis lock leases", e);
+        }
+    }
+
+    private static List<Object> renewOn(RedisTemplate<String, String> template,
+                                        List<List<Map.Entry<String, String>>> batches, byte[] ttl) {
+        return template.executePipelined((RedisCallback<Object>) connection -> {
+            for (List<Map.Entry<String, String>> locks : batches) {
+                byte[][] keysAndArgs = new byte[locks.size() * 2 + 1][];
+                keysAndArgs[locks.size()] = ttl;
+                for (int i = 0; i < locks.size(); i++) {
+                    keysAndArgs[i] = locks.get(i).getKey().getBytes(StandardCharsets.UTF_8);
+                    keysAndArgs[locks.size() + 1 + i] = locks.get(i).getValue().getBytes(StandardCharsets.UTF_8);
+                }
+                connection.scriptingCommands().eval(RENEW_SCRIPT, ReturnType.MULTI, locks.size(), keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    // Number of nodes that answered 1 (renewed) or 0 (not ours) for lock i in batch b; null
+    // results are nodes that did not answer, they count for neither
+    private static int countAnswers(List<List<Object>> nodeResults, int b, int i, long answer) {
+        int count = 0;
+        for (List<Object> results : nodeResults) {
+            Object batch = results != null && b < results.size() ? results.get(b) : null;
+            if (batch instanceof List && Long.valueOf(answer).equals(((List<?>) batch).get(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,161 @@
+package com.distlock.lock;
+
+import com.distlock.config.RedisConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Independent Redis nodes used for Redlock-style quorum locking.
+ * <p>
+ * Enabled by listing the nodes in {@code redis.quorum.nodes}; each operation is sent to all
+ * nodes in parallel, so its latency is that of the slowest node within the per-node timeout
+ * rather than the sum over nodes. A lock counts as held when a majority of nodes granted it.
+ * For local testing start e.g. three servers with
+ * {@code redis-server --port 7001 & redis-server --port 7002 & redis-server --port 7003}
+ * and set {@code REDIS_QUORUM_NODES=localhost:7001,localhost:7002,localhost:7003}.
+ */
+@Slf4j
+@Component
+public class RedisQuorum {
+
+    private final RedisConfig redisConfig;
+    private final List<JedisConnectionFactory> connectionFactories = new ArrayList<>();
+    private final List<RedisTemplate<String, String>> nodes;
+    private final ExecutorService executor;
+
+    @Autowired
+    public RedisQuorum(RedisConfig redisConfig) {
+        this.redisConfig = redisConfig;
+        List<RedisTemplate<String, String>> templates = new ArrayList<>();
+        for (String node : redisConfig.getQuorum().getNodes()) {
+            int separator = node.lastIndexOf(':');
+            String host = separator > 0 ? node.substring(0, separator) : node;
+            int port = separator > 0 ? Integer.parseInt(node.substring(separator + 1)) : 6379;
+            JedisConnectionFactory connectionFactory = redisConfig.createConnectionFactory(host, port);
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            connectionFactories.add(connectionFactory);
+            templates.add(RedisConfig.createTemplate(connectionFactory));
+        }
+        this.nodes = Collections.unmodifiableList(templates);
+        this.executor = nodes.isEmpty() ? null : newExecutor();
+        if (!nodes.isEmpty()) {
+            log.info("Redis quorum locking enabled over {} nodes, majority {}", nodes.size(), getMajority());
+        }
+    }
+
+    // Quorum over the given templates, used in tests
+    RedisQuorum(RedisConfig redisConfig, List<RedisTemplate<String, String>> nodes) {
+        this.redisConfig = redisConfig;
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.executor = nodes.isEmpty() ? null : newExecutor();
+    }
+
+    /**
+     * @return true if locks are taken on a quorum of independent nodes
+     */
+    public boolean isEnabled() {
+        return !nodes.isEmpty();
+    }
+
+    /**
+     * @return the nodes of the quorum, empty when quorum locking is disabled
+     */
+    public List<RedisTemplate<String, String>> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the number of nodes that must agree
+     */
+    public int getMajority() {
+        return nodes.size() / 2 + 1;
+    }
+
+    /**
+     * Gets the time a lock stays valid for after being granted by a quorum, correcting
+     * the lease for the time spent acquiring it and for clock drift between nodes
+     *
+     * @param leaseTtl the lease TTL set on each node in milliseconds
+     * @param elapsedMs the time spent acquiring in milliseconds
+     * @return the remaining validity in milliseconds, 0 or less if already invalid
+     */
+    public long getValidity(long leaseTtl, long elapsedMs) {
+        long drift = (long) (leaseTtl * redisConfig.getQuorum().getClockDriftFactor()) + 2;
+        return leaseTtl - elapsedMs - drift;
+    }
+
+    /**
+     * Runs an operation on every node in parallel
+     *
+     * @param operation the operation to run against one node
+     * @param <T> the result type
+     * @return one result per node, null for nodes that failed or did not answer in time
+     */
+    public <T> List<T> invokeAll(Function<RedisTemplate<String, String>, T> operation) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(nodes.size());
+        for (RedisTemplate<String, String> node : nodes) {
+            futures.add(CompletableFuture.supplyAsync(() -> operation.apply(node), executor));
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(redisConfig.getQuorum().getNodeTimeout());
+        List<T> results = new ArrayList<>(nodes.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(null);
+            } catch (Exception e) {
+                // A slow or unreachable node simply does not vote
+                log.debug("Redis quorum node {} did not answer: {}", i, e.toString());
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs a boolean operation on every node in parallel and counts the nodes that agreed
+     *
+     * @param operation the operation to run against one node
+     * @return the number of nodes that returned true
+     */
+    public int countGranted(Function<RedisTemplate<String, String>, Boolean> operation) {
+        int granted = 0;
+        for (Boolean result : invokeAll(operation)) {
+            if (Boolean.TRUE.equals(result)) {
+                granted++;
+            }
+        }
+        return granted;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        connectionFactories.forEach(JedisConnectionFactory::destroy);
+    }
+
+    private static ExecutorService newExecutor() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("redis-quorum-");
+        threadFactory.setDaemon(true);
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+}
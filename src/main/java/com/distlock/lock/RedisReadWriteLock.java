@@ -0,0 +1,173 @@
+package com.distlock.lock;
+
+import com.distlock.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Read/write lock kept in one Redis hash per key: a {@code mode} field set to read or write,
+ * plus one field per hold. Readers share the hash; a writer only gets it while it is absent.
+ * A waiting writer leaves a short-lived intent key that keeps new readers out, so a steady
+ * stream of readers cannot starve it.
+ * <p>
+ * Every acquire is a hold of its own, named by the token it returns, so holds are never tied to
+ * a thread and can be released from anywhere. They are not renewed: the hash expires
+ * {@code redis.lock.ttl} after the last acquire, which frees the holds of a crashed client.
+ * Runs against {@code redis.host} only.
+ */
+@Slf4j
+@Component
+public class RedisReadWriteLock implements DistributedReadWriteLock {
+
+    // Lua script for read acquire: shares the hash unless a writer holds or waits for it
+    private static final String ACQUIRE_READ_LOCK_SCRIPT =
+            "local mode = redis.call('hget', KEYS[1], 'mode') " +
+                    "if mode == 'write' or redis.call('exists', KEYS[2]) == 1 then " +
+                    "    return 0 " +
+                    "end " +
+                    "redis.call('hset', KEYS[1], 'mode', 'read') " +
+                    "redis.call('hset', KEYS[1], ARGV[2], 1) " +
+                    "redis.call('pexpire', KEYS[1], ARGV[1]) " +
+                    "return 1";
+
+    // Lua script for write acquire: takes the hash if absent, otherwise records the intent to write
+    private static final String ACQUIRE_WRITE_LOCK_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+                    "    redis.call('hset', KEYS[1], 'mode', 'write') " +
+                    "    redis.call('hset', KEYS[1], ARGV[2], 1) " +
+                    "    redis.call('pexpire', KEYS[1], ARGV[1]) " +
+                    "    if redis.call('get', KEYS[2]) == ARGV[2] then " +
+                    "        redis.call('del', KEYS[2]) " +
+                    "    end " +
+                    "    return 1 " +
+                    "end " +
+                    "redis.call('set', KEYS[2], ARGV[2], 'PX', ARGV[3]) " +
+                    "return 0";
+
+    // Lua script for release: drops the hold of the mode it was taken in and deletes the hash
+    // once the last hold is gone, waking up waiters
+    private static final String RELEASE_RW_LOCK_SCRIPT =
+            "if redis.call('hget', KEYS[1], 'mode') ~= ARGV[2] or redis.call('hdel', KEYS[1], ARGV[1]) == 0 then " +
+                    "    return 0 " +
+                    "end " +
+                    "if redis.call('hlen', KEYS[1]) <= 1 then " +
+                    "    redis.call('del', KEYS[1]) " +
+                    "    redis.call('publish', '" + RedisLockNotifier.UNLOCK_CHANNEL + "', KEYS[1]) " +
+                    "end " +
+                    "return 1";
+
+    private static final DefaultRedisScript<Long> ACQUIRE_READ_SCRIPT = new DefaultRedisScript<>(ACQUIRE_READ_LOCK_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> ACQUIRE_WRITE_SCRIPT = new DefaultRedisScript<>(ACQUIRE_WRITE_LOCK_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(RELEASE_RW_LOCK_SCRIPT, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisConfig redisConfig;
+    private final RedisLockNotifier notifier;
+
+    @Autowired
+    public RedisReadWriteLock(RedisTemplate<String, String> redisTemplate, RedisConfig redisConfig,
+                              RedisLockNotifier notifier) {
+        this.redisTemplate = redisTemplate;
+        this.redisConfig = redisConfig;
+        this.notifier = notifier;
+    }
+
+    @Override
+    public String acquireRead(String lockKey, long timeoutMs) {
+        return acquire(lockKey, timeoutMs, ACQUIRE_READ_SCRIPT);
+    }
+
+    @Override
+    public boolean releaseRead(String lockKey, String token) {
+        return release(lockKey, token, "read");
+    }
+
+    @Override
+    public String acquireWrite(String lockKey, long timeoutMs) {
+        return acquire(lockKey, timeoutMs, ACQUIRE_WRITE_SCRIPT);
+    }
+
+    @Override
+    public boolean releaseWrite(String lockKey, String token) {
+        return release(lockKey, token, "write");
+    }
+
+    @Override
+    public String getType() {
+        return "Redis";
+    }
+
+    private String acquire(String lockKey, long timeoutMs, DefaultRedisScript<Long> script) {
+        final long startTime = System.currentTimeMillis();
+        final String leaseTtl = String.valueOf(redisConfig.getLock().getTtl());
+        final int retryTimes = redisConfig.getLock().getRetryTimes();
+        final long retryInterval = redisConfig.getLock().getRetryInterval();
+        // The write intent outlives one retry so readers stay out while the writer waits
+        final String intentTtl = String.valueOf(retryInterval * 2);
+
+        lockKey = "rwlock:" + lockKey;
+        final String lockValue = UUID.randomUUID().toString();
+        final List<String> keys = Arrays.asList(lockKey, lockKey + ":writer");
+
+        RedisLockNotifier.Signal signal = notifier.subscribe(lockKey);
+        try {
+            int polls = 0;
+            while (true) {
+                long seen = signal.generation();
+                Long result = redisTemplate.execute(script, keys, leaseTtl, lockValue, intentTtl);
+                if (result != null && result == 1L) {
+                    log.debug("Successfully acquired Redis read/write lock: {}", lockKey);
+                    return lockValue;
+                }
+
+                // Only blind polls while the unlock subscription is down count against retry-times
+                long remaining = timeoutMs - (System.currentTimeMillis() - startTime);
+                if (remaining <= 0 || (!notifier.isSubscribed() && ++polls > retryTimes)) {
+                    log.debug("Failed to acquire Redis read/write lock: {}", lockKey);
+                    return null;
+                }
+
+                try {
+                    signal.await(seen, Math.min(retryInterval, remaining));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error acquiring Redis read/write lock: {}", lockKey, e);
+            return null;
+        } finally {
+            notifier.unsubscribe(lockKey, signal);
+        }
+    }
+
+    private boolean release(String lockKey, String token, String mode) {
+        lockKey = "rwlock:" + lockKey;
+        if ("mode".equals(token)) {
+            // The one field of the hash that is not a hold
+            log.warn("Invalid Redis {} lock token: {}", mode, lockKey);
+            return false;
+        }
+        try {
+            Long released = redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(lockKey), token, mode);
+            if (released == null || released == 0L) {
+                log.warn("Redis {} lock not held by token, or its lease expired: {}", mode, lockKey);
+                return false;
+            }
+            log.debug("Successfully released Redis read/write lock: {}", lockKey);
+            return true;
+        } catch (Exception e) {
+            log.error("Error releasing Redis read/write lock: {}", lockKey, e);
+            return false;
+        }
+    }
+}
\ No newline at end of file
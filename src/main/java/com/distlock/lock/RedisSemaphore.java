@@ -0,0 +1,145 @@
+package com.distlock.lock;
+
+import com.distlock.config.RedisConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Counting semaphore kept in one Redis sorted set per key. Every held permit is a member scored
+ * by its lease expiry in Redis server time; expired permits are dropped before each acquire, so
+ * permits of a crashed holder come back after {@code redis.lock.ttl}. Permits are not renewed, a
+ * holder releases them within that lease. The token of an acquire is its permit ids.
+ * <p>
+ * Runs against {@code redis.host} only.
+ */
+@Slf4j
+@Component
+public class RedisSemaphore implements DistributedSemaphore {
+
+    // Lua script for acquire: drops expired permits, then adds all requested permits if they fit
+    private static final String ACQUIRE_PERMITS_SCRIPT =
+            "if redis.replicate_commands then redis.replicate_commands() end " +
+                    "local now = redis.call('time') " +
+                    "local nowMs = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000) " +
+                    "redis.call('zremrangebyscore', KEYS[1], '-inf', nowMs) " +
+                    "if redis.call('zcard', KEYS[1]) + #ARGV - 2 > tonumber(ARGV[2]) then " +
+                    "    return 0 " +
+                    "end " +
+                    "for i = 3, #ARGV do " +
+                    "    redis.call('zadd', KEYS[1], nowMs + tonumber(ARGV[1]), ARGV[i]) " +
+                    "end " +
+                    "redis.call('pexpire', KEYS[1], ARGV[1]) " +
+                    "return 1";
+
+    // Lua script for release: removes our permits and wakes up waiters, returns the number removed
+    private static final String RELEASE_PERMITS_SCRIPT =
+            "local removed = redis.call('zrem', KEYS[1], unpack(ARGV)) " +
+                    "if removed > 0 then " +
+                    "    redis.call('publish', '" + RedisLockNotifier.UNLOCK_CHANNEL + "', KEYS[1]) " +
+                    "end " +
+                    "return removed";
+
+    // Not part of a UUID
+    private static final String PERMIT_SEPARATOR = ",";
+
+    private static final DefaultRedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(ACQUIRE_PERMITS_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(RELEASE_PERMITS_SCRIPT, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisConfig redisConfig;
+    private final RedisLockNotifier notifier;
+
+    @Autowired
+    public RedisSemaphore(RedisTemplate<String, String> redisTemplate, RedisConfig redisConfig,
+                          RedisLockNotifier notifier) {
+        this.redisTemplate = redisTemplate;
+        this.redisConfig = redisConfig;
+        this.notifier = notifier;
+    }
+
+    @Override
+    public String acquire(String semaphoreKey, int permits, int maxPermits, long timeoutMs) {
+        final long startTime = System.currentTimeMillis();
+        final int retryTimes = redisConfig.getLock().getRetryTimes();
+        final long retryInterval = redisConfig.getLock().getRetryInterval();
+
+        if (permits <= 0 || permits > maxPermits) {
+            log.warn("Cannot acquire {} of {} permits of Redis semaphore: {}", permits, maxPermits, semaphoreKey);
+            return null;
+        }
+
+        final String redisKey = "semaphore:" + semaphoreKey;
+        final List<String> permitIds = new ArrayList<>(permits);
+        final Object[] args = new Object[permits + 2];
+        args[0] = String.valueOf(redisConfig.getLock().getTtl());
+        args[1] = String.valueOf(maxPermits);
+        for (int i = 0; i < permits; i++) {
+            permitIds.add(UUID.randomUUID().toString());
+            args[i + 2] = permitIds.get(i);
+        }
+
+        RedisLockNotifier.Signal signal = notifier.subscribe(redisKey);
+        try {
+            int polls = 0;
+            while (true) {
+                long seen = signal.generation();
+                Long result = redisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(redisKey), args);
+                if (result != null && result == 1L) {
+                    log.debug("Successfully acquired {} permits of Redis semaphore: {}", permits, redisKey);
+                    return String.join(PERMIT_SEPARATOR, permitIds);
+                }
+
+                // Only blind polls while the unlock subscription is down count against retry-times
+                long remaining = timeoutMs - (System.currentTimeMillis() - startTime);
+                if (remaining <= 0 || (!notifier.isSubscribed() && ++polls > retryTimes)) {
+                    log.debug("Failed to acquire {} permits of Redis semaphore: {}", permits, redisKey);
+                    return null;
+                }
+
+                try {
+                    signal.await(seen, Math.min(retryInterval, remaining));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error acquiring Redis semaphore: {}", redisKey, e);
+            return null;
+        } finally {
+            notifier.unsubscribe(redisKey, signal);
+        }
+    }
+
+    @Override
+    public boolean release(String semaphoreKey, String token) {
+        final String redisKey = "semaphore:" + semaphoreKey;
+        String[] permitIds = token.split(PERMIT_SEPARATOR);
+
+        try {
+            Long removed = redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(redisKey), (Object[]) permitIds);
+            if (removed == null || removed < permitIds.length) {
+                log.warn("Redis semaphore permits not held by token, or expired before release: {}", redisKey);
+                return false;
+            }
+            log.debug("Successfully released {} permits of Redis semaphore: {}", permitIds.length, redisKey);
+            return true;
+        } catch (Exception e) {
+            log.error("Error releasing Redis semaphore: {}", redisKey, e);
+            return false;
+        }
+    }
+
+    @Override
+    public String getType() {
+        return "Redis";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,163 @@
+package com.distlock.lock;
+
+import com.distlock.config.RedisConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Routes plain lock keys ({@code lock:*}) to one of several Redis instances with a
+ * consistent-hash ring.
+ * <p>
+ * Enabled by listing the shards in {@code redis.shards.nodes}. Every shard is placed on the
+ * ring at {@code redis.shards.virtual-nodes} points hashed from its {@code host:port}, and a key
+ * belongs to the first point at or after its own hash. Each shard has its own connection pool,
+ * and the lock scripts run unchanged on the shard that owns the key. All other keys (read/write
+ * locks, semaphores) stay on {@code redis.host}.
+ * <p>
+ * Adding or removing a shard moves about 1/N of the keys to a different shard. A lock held on
+ * the old shard is invisible there, so two replicas with different shard lists could both grant
+ * a moved key. To change the shard list:
+ * <ol>
+ * <li>start the new Redis instance (when adding), it needs no data;</li>
+ * <li>stop every replica, or roll out with a {@code Recreate} strategy, so no two rings are
+ * ever live at the same time;</li>
+ * <li>wait {@code redis.lock.ttl} so that leases taken under the old ring have expired;</li>
+ * <li>start the replicas with the new {@code REDIS_SHARDS_NODES};</li>
+ * <li>when removing a shard, retire its instance only after that.</li>
+ * </ol>
+ * A shard's place on the ring comes from its {@code host:port} as written, so spell it the same
+ * way on every replica; the order of the list does not matter.
+ */
+@Slf4j
+@Component
+public class RedisShards {
+
+    private static final String LOCK_PREFIX = "lock:";
+
+    private final RedisTemplate<String, String> defaultTemplate;
+    private final List<JedisConnectionFactory> connectionFactories = new ArrayList<>();
+    private final TreeMap<Long, RedisTemplate<String, String>> ring = new TreeMap<>();
+    private final List<RedisTemplate<String, String>> instances = new ArrayList<>();
+
+    @Autowired
+    public RedisShards(RedisConfig redisConfig, RedisTemplate<String, String> redisTemplate) {
+        this.defaultTemplate = redisTemplate;
+        List<String> nodes = redisConfig.getShards().getNodes();
+        if (nodes.isEmpty()) {
+            return;
+        }
+        if (!redisConfig.getQuorum().getNodes().isEmpty()) {
+            log.warn("Redis sharding is not supported in quorum mode, keeping all lock keys on the quorum");
+            return;
+        }
+
+        for (String node : nodes) {
+            int separator = node.lastIndexOf(':');
+            String host = separator > 0 ? node.substring(0, separator) : node;
+            int port = separator > 0 ? Integer.parseInt(node.substring(separator + 1)) : 6379;
+            JedisConnectionFactory connectionFactory = redisConfig.createConnectionFactory(host, port);
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            connectionFactories.add(connectionFactory);
+            addShard(host + ":" + port, RedisConfig.createTemplate(connectionFactory), redisConfig.getShards().getVirtualNodes());
+        }
+        log.info("Redis lock keys sharded over {} nodes", nodes.size());
+    }
+
+    // Ring over the given templates by name, used in tests
+    RedisShards(RedisTemplate<String, String> defaultTemplate, Map<String, RedisTemplate<String, String>> shards,
+                int virtualNodes) {
+        this.defaultTemplate = defaultTemplate;
+        shards.forEach((name, template) -> addShard(name, template, virtualNodes));
+    }
+
+    /**
+     * @return true if lock keys are spread over several instances
+     */
+    public boolean isEnabled() {
+        return !ring.isEmpty();
+    }
+
+    /**
+     * Gets the instance that owns a key
+     *
+     * @param redisKey the full Redis key
+     * @return the shard for {@code lock:*} keys when sharding is enabled, the default instance otherwise
+     */
+    public RedisTemplate<String, String> forKey(String redisKey) {
+        if (ring.isEmpty() || !redisKey.startsWith(LOCK_PREFIX)) {
+            return defaultTemplate;
+        }
+        Map.Entry<Long, RedisTemplate<String, String>> point = ring.ceilingEntry(hash(redisKey));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * Groups keys by the instance that owns them, keeping their order within each group
+     *
+     * @param redisKeys the full Redis keys
+     * @return the keys per instance, instances in the order of their first key
+     */
+    public Map<RedisTemplate<String, String>, List<String>> group(List<String> redisKeys) {
+        Map<RedisTemplate<String, String>, List<String>> groups = new LinkedHashMap<>();
+        for (String redisKey : redisKeys) {
+            groups.computeIfAbsent(forKey(redisKey), template -> new ArrayList<>()).add(redisKey);
+        }
+        return groups;
+    }
+
+    /**
+     * @return every instance that holds lock keys, in the order of the shard list
+     */
+    public List<RedisTemplate<String, String>> getInstances() {
+        return instances.isEmpty() ? Collections.singletonList(defaultTemplate) : Collections.unmodifiableList(instances);
+    }
+
+    /**
+     * @return the connection factories of the shards, empty when sharding is disabled
+     */
+    public List<? extends RedisConnectionFactory> getConnectionFactories() {
+        return Collections.unmodifiableList(connectionFactories);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionFactories.forEach(JedisConnectionFactory::destroy);
+    }
+
+    private void addShard(String name, RedisTemplate<String, String> template, int virtualNodes) {
+        instances.add(template);
+        for (int i = 0; i < Math.max(1, virtualNodes); i++) {
+            ring.put(hash(name + "#" + i), template);
+        }
+    }
+
+    // First 8 bytes of the MD5 digest, which spreads short similar strings evenly over the ring
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
\ No newline at end of file
@@ -3,26 +3,70 @@ package com.distlock.lock;
 import com.distlock.config.ZookeeperConfig;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.CuratorWatcher;
+import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
 public class ZookeeperLock implements DistributedLock {
 
+    // Node name prefix used by InterProcessMutex
+    private static final String LOCK_NAME = "lock-";
+    // Keys looked at per page when listing without the mirror, relative to the page limit
+    private static final int FALLBACK_KEYS_PER_ENTRY = 2;
+
     private final CuratorFramework curatorClient;
     private final ZookeeperConfig zookeeperConfig;
-    private final ConcurrentHashMap<String, InterProcessMutex> lockMap = new ConcurrentHashMap<>();
+    private final LockScheduler scheduler;
+    private final LockMetrics.Backend meters;
+    private final ZookeeperLockMirror mirror;
+    private final BackendCircuitBreaker breaker;
+    private final ConcurrentHashMap<String, MutexEntry> mutexCache = new ConcurrentHashMap<>();
+    // Lock nodes acquired asynchronously, owned by the JVM rather than a thread
+    private final ConcurrentHashMap<String, String> detachedNodes = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private volatile boolean basePathCreated;
 
     @Autowired
-    public ZookeeperLock(CuratorFramework curatorClient, ZookeeperConfig zookeeperConfig) {
+    public ZookeeperLock(CuratorFramework curatorClient, ZookeeperConfig zookeeperConfig, LockScheduler scheduler,
+                         LockMetrics metrics, ZookeeperLockMirror mirror) {
         this.curatorClient = curatorClient;
         this.zookeeperConfig = zookeeperConfig;
+        this.scheduler = scheduler;
+        this.meters = metrics.zookeeper();
+        this.mirror = mirror;
+        ZookeeperConfig.Lock lockConfig = zookeeperConfig.getLock();
+        this.breaker = new BackendCircuitBreaker("ZooKeeper", lockConfig.isBreakerEnabled(), lockConfig.getBreakerWindow(),
+                lockConfig.getBreakerFailureRate(), lockConfig.getBreakerOpenTime(), lockConfig.getBreakerHalfOpenTrials(), meters);
+        // While the connection is suspended or lost Curator would retry every call until the
+        // connection timeout, so acquires fail at once until it is back
+        curatorClient.getConnectionStateListenable().addListener((client, newState) -> {
+            if (newState == ConnectionState.SUSPENDED || newState == ConnectionState.LOST) {
+                breaker.disconnected();
+            } else if (newState.isConnected()) {
+                breaker.connected();
+            }
+        });
     }
 
     @Override
@@ -32,75 +76,600 @@ public class ZookeeperLock implements DistributedLock {
 
     @Override
     public boolean acquire(String lockKey, long timeoutMs) {
+        if (scheduler.isVirtualThreads()) {
+            return acquireParked(lockKey, timeoutMs);
+        }
+
+        final long startNanos = System.nanoTime();
         String lockPath = zookeeperConfig.getLock().getBasePath() + "/" + lockKey;
+        if (isHeldByCurrentThread(lockKey)) {
+            // A pooled thread may be serving another caller, it must not re-enter the lock
+            log.debug("ZooKeeper lock already held by this thread, not re-entering: {}", lockPath);
+            meters.timedOut(System.nanoTime() - startNanos);
+            return false;
+        }
+        BackendCircuitBreaker.Permit permit = breaker.tryAcquirePermission();
+        if (permit == null) {
+            log.debug("ZooKeeper circuit breaker open, not acquiring: {}", lockPath);
+            meters.failed(System.nanoTime() - startNanos);
+            return false;
+        }
+        MutexEntry entry = null;
+        boolean answered = true;
 
         try {
-            // Ensure the base path exists
-            try {
-                curatorClient.create()
-                        .creatingParentsIfNeeded()
-                        .forPath(zookeeperConfig.getLock().getBasePath());
-            } catch (KeeperException.NodeExistsException ignore) {
-                // Base path already exists, which is fine
-            }
+            ensureBasePath();
 
-            InterProcessMutex lock = new InterProcessMutex(curatorClient, lockPath);
-            lockMap.put(lockKey, lock);
-
-            boolean acquired = lock.acquire(timeoutMs, TimeUnit.MILLISECONDS);
+            // The mutex is shared by all threads of this JVM; the check above keeps its
+            // per-thread reentrancy from ever being used
+            entry = retain(lockKey, lockPath);
+            boolean acquired = entry.mutex.acquire(timeoutMs, TimeUnit.MILLISECONDS);
             if (acquired) {
+                mirror.acquired(entry.mutex.getNodePath());
                 log.debug("Successfully acquired ZooKeeper lock: {}", lockPath);
+                meters.acquired(System.nanoTime() - startNanos);
             } else {
                 log.debug("Failed to acquire ZooKeeper lock: {}", lockPath);
-                lockMap.remove(lockKey);
+                meters.timedOut(System.nanoTime() - startNanos);
+                unretain(lockKey, entry);
             }
 
             return acquired;
         } catch (Exception e) {
+            answered = false;
+            breaker.recordFailure();
             log.error("Error acquiring ZooKeeper lock: {}", lockPath, e);
-            lockMap.remove(lockKey);
+            meters.failed(System.nanoTime() - startNanos);
+            if (entry != null) {
+                unretain(lockKey, entry);
+            }
             return false;
+        } finally {
+            breaker.recordCall();
+            permit.finished(answered);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> acquireAsync(String lockKey, long timeoutMs) {
+        String lockPath = zookeeperConfig.getLock().getBasePath() + "/" + lockKey;
+        BackendCircuitBreaker.Permit permit = breaker.tryAcquirePermission();
+        if (permit == null) {
+            log.debug("ZooKeeper circuit breaker open, not acquiring: {}", lockPath);
+            meters.failed(0);
+            return CompletableFuture.completedFuture(false);
         }
+        AsyncAcquire acquire = new AsyncAcquire(lockKey, lockPath, permit);
+        acquire.start(timeoutMs);
+        return acquire.result;
     }
 
     @Override
     public boolean release(String lockKey) {
-        InterProcessMutex lock = lockMap.get(lockKey);
-        if (lock == null) {
-            log.warn("Cannot release ZooKeeper lock, not found in map: {}", lockKey);
-            return false;
+        MutexEntry entry = mutexCache.get(lockKey);
+        if (entry == null || !entry.mutex.isOwnedByCurrentThread()) {
+            return releaseDetached(lockKey);
         }
 
+        final long startNanos = System.nanoTime();
         try {
-            lock.release();
-            lockMap.remove(lockKey);
+            String nodePath = entry.mutex.getNodePath();
+            entry.mutex.release();
+            mirror.deleted(nodePath);
+            unretain(lockKey, entry);
+            meters.released(System.nanoTime() - startNanos, true);
             log.debug("Successfully released ZooKeeper lock: {}", lockKey);
             return true;
         } catch (Exception e) {
             log.error("Error releasing ZooKeeper lock: {}", lockKey, e);
+            meters.released(System.nanoTime() - startNanos, false);
             return false;
         }
     }
 
+    private boolean isHeldByCurrentThread(String lockKey) {
+        MutexEntry entry = mutexCache.get(lockKey);
+        return entry != null && entry.mutex.isOwnedByCurrentThread();
+    }
+
+    // InterProcessMutex waits in a synchronized block, which pins the carrier of a virtual
+    // thread; waiting on the async path's future parks it instead.
+    private boolean acquireParked(String lockKey, long timeoutMs) {
+        try {
+            return acquireAsync(lockKey, timeoutMs).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            log.error("Error acquiring ZooKeeper lock: {}", lockKey, e.getCause());
+            return false;
+        }
+    }
+
+    // The token is the path of our lock node. The node stays ephemeral to the session of this
+    // JVM, so the lock is still given up if this JVM dies before anyone releases it
     @Override
-    public boolean isLocked(String lockKey) {
-        InterProcessMutex lock = lockMap.get(lockKey);
+    public String detach(String lockKey) {
+        return detachedNodes.remove(lockKey);
+    }
 
-        if (lock == null) {
+    @Override
+    public boolean releaseByToken(String lockKey, String token) {
+        final long startNanos = System.nanoTime();
+        String lockPath = zookeeperConfig.getLock().getBasePath() + "/" + lockKey;
+        // Only ever delete a node of this lock, whatever the token says
+        if (!ZKPaths.getPathAndNode(token).getPath().equals(lockPath)) {
+            log.warn("ZooKeeper lock token does not belong to lock: {}", lockKey);
+            meters.released(System.nanoTime() - startNanos, false);
             return false;
         }
 
+        detachedNodes.remove(lockKey, token);
         try {
-            String lockPath = zookeeperConfig.getLock().getBasePath() + "/" + lockKey;
-            return curatorClient.checkExists().forPath(lockPath) != null;
+            curatorClient.delete().guaranteed().forPath(token);
+            mirror.deleted(token);
+            meters.roundTrip(System.nanoTime() - startNanos);
+            meters.released(System.nanoTime() - startNanos, true);
+            log.debug("Successfully released ZooKeeper lock by token: {}", lockKey);
+            return true;
+        } catch (KeeperException.NoNodeException e) {
+            log.warn("ZooKeeper lock node already gone on release: {}", token);
+            meters.released(System.nanoTime() - startNanos, false);
+            return false;
         } catch (Exception e) {
-            log.error("Error checking ZooKeeper lock: {}", lockKey, e);
+            log.error("Error releasing ZooKeeper lock by token: {}", lockKey, e);
+            meters.released(System.nanoTime() - startNanos, false);
             return false;
         }
     }
 
+    @Override
+    public boolean acquireAll(Collection<String> lockKeys, long timeoutMs) {
+        final long startTime = System.currentTimeMillis();
+        List<String> acquired = new ArrayList<>(lockKeys.size());
+
+        // Same protocol as InterProcessMultiLock, but the timeout bounds the whole batch
+        // rather than each key; sorted order rules out deadlocks between batches
+        for (String lockKey : new TreeSet<>(lockKeys)) {
+            long remaining = timeoutMs - (System.currentTimeMillis() - startTime);
+            if (remaining <= 0 || !acquire(lockKey, remaining)) {
+                log.debug("Failed to acquire ZooKeeper locks, rolling back {} acquired: {}", acquired.size(), lockKeys);
+                releaseAll(acquired);
+                return false;
+            }
+            acquired.add(lockKey);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean releaseAll(Collection<String> lockKeys) {
+        boolean result = true;
+        List<String> keys = new ArrayList<>(new TreeSet<>(lockKeys));
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            result &= release(keys.get(i));
+        }
+        return result;
+    }
+
+    // Held by any process in the cluster, answered from the mirror of the lock tree. Until the
+    // mirror is loaded, or while disconnected, the lock nodes are read from ZooKeeper instead
+    @Override
+    public boolean isLocked(String lockKey) {
+        MutexEntry entry = mutexCache.get(lockKey);
+        boolean heldHere = (entry != null && entry.mutex.isAcquiredInThisProcess()) || detachedNodes.containsKey(lockKey);
+        if (heldHere || !mirror.isEnabled()) {
+            return heldHere;
+        }
+        if (mirror.isAvailable()) {
+            return mirror.isLocked(lockKey);
+        }
+
+        String lockPath = zookeeperConfig.getLock().getBasePath() + "/" + lockKey;
+        try {
+            return !curatorClient.getChildren().forPath(lockPath).isEmpty();
+        } catch (KeeperException.NoNodeException e) {
+            return false;
+        } catch (Exception e) {
+            log.warn("Cannot read ZooKeeper lock nodes, reporting lock as free: {}", lockPath, e);
+            return false;
+        }
+    }
+
+    /**
+     * Same answer as {@link #isLocked}, but a read of the lock nodes runs through Curator's
+     * background API so the caller can do other work while ZooKeeper answers
+     *
+     * @param lockKey the lock key
+     * @return completes with whether the lock is held by any process
+     */
+    public CompletableFuture<Boolean> isLockedAsync(String lockKey) {
+        MutexEntry entry = mutexCache.get(lockKey);
+        boolean heldHere = (entry != null && entry.mutex.isAcquiredInThisProcess()) || detachedNodes.containsKey(lockKey);
+        if (heldHere || !mirror.isEnabled()) {
+            return CompletableFuture.completedFuture(heldHere);
+        }
+        if (mirror.isAvailable()) {
+            return CompletableFuture.completedFuture(mirror.isLocked(lockKey));
+        }
+
+        String lockPath = zookeeperConfig.getLock().getBasePath() + "/" + lockKey;
+        CompletableFuture<Boolean> locked = new CompletableFuture<>();
+        try {
+            curatorClient.getChildren().inBackground((client, event) -> {
+                if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                    locked.complete(!event.getChildren().isEmpty());
+                } else {
+                    if (event.getResultCode() != KeeperException.Code.NONODE.intValue()) {
+                        log.warn("Cannot read ZooKeeper lock nodes, reporting lock as free: {}, code: {}",
+                                lockPath, event.getResultCode());
+                    }
+                    locked.complete(false);
+                }
+            }).forPath(lockPath);
+        } catch (Exception e) {
+            log.warn("Cannot read ZooKeeper lock nodes, reporting lock as free: {}", lockPath, e);
+            locked.complete(false);
+        }
+        return locked;
+    }
+
+    /**
+     * Looks up which process holds a lock, from the mirror of the lock tree
+     *
+     * @param lockKey the lock key
+     * @return the holder, null if the lock is free or the mirror is disabled
+     */
+    public ZookeeperLockMirror.LockHolder getHolder(String lockKey) {
+        return mirror.getHolder(lockKey);
+    }
+
+    /**
+     * @return the keys of all locks held in the cluster, from the mirror of the lock tree
+     */
+    public List<String> getLockedKeys() {
+        return mirror.getLockedKeys();
+    }
+
+    // The cursor is the last key of the previous page. Ephemeral lock nodes have no lease, they
+    // are held until released or until the holder's session ends
+    @Override
+    public String listLocks(String cursor, int limit, Consumer<LockEntry> sink) {
+        if (mirror.isAvailable()) {
+            List<ZookeeperLockMirror.LockHolder> holders = mirror.getHolders(cursor, limit);
+            holders.forEach(holder -> sink.accept(new LockEntry(holder.getLockKey(), holder.getOwner(), -1)));
+            return holders.isEmpty() || holders.size() < limit ? null : holders.get(holders.size() - 1).getLockKey();
+        }
+
+        // Without the mirror, read the keys directly below the base path and their holders.
+        // ZooKeeper cannot page children, so the names come in one call, but only the next few
+        // keys after the cursor are kept and looked at: a page may come back short while more
+        // remain. Nested keys (containing '/') are only listed from the mirror
+        String basePath = zookeeperConfig.getLock().getBasePath();
+        int examined = limit * FALLBACK_KEYS_PER_ENTRY;
+        try {
+            TreeSet<String> lockKeys = new TreeSet<>();
+            for (String lockKey : curatorClient.getChildren().forPath(basePath)) {
+                if (cursor == null || lockKey.compareTo(cursor) > 0) {
+                    lockKeys.add(lockKey);
+                    if (lockKeys.size() > examined) {
+                        lockKeys.pollLast();
+                    }
+                }
+            }
+            int listed = 0;
+            for (String lockKey : lockKeys) {
+                String owner = readHolder(ZKPaths.makePath(basePath, lockKey));
+                if (owner != null) {
+                    sink.accept(new LockEntry(lockKey, owner, -1));
+                    if (++listed == limit) {
+                        return lockKey;
+                    }
+                }
+            }
+            return lockKeys.size() == examined ? lockKeys.last() : null;
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot list ZooKeeper locks: " + basePath, e);
+        }
+    }
+
     @Override
     public String getType() {
         return "Zookeeper";
     }
+
+    /**
+     * @return true while acquires fail at once because ZooKeeper is disconnected or failing
+     */
+    public boolean isCircuitOpen() {
+        return breaker.isOpen();
+    }
+
+    /**
+     * @return the state of the circuit breaker in front of ZooKeeper
+     */
+    public BackendCircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    /**
+     * @return the number of mutex instances currently cached
+     */
+    public int getCachedMutexCount() {
+        return mutexCache.size();
+    }
+
+    private boolean releaseDetached(String lockKey) {
+        final long startNanos = System.nanoTime();
+        String nodePath = detachedNodes.remove(lockKey);
+        if (nodePath == null) {
+            log.warn("Cannot release ZooKeeper lock, not held by current thread: {}", lockKey);
+            meters.released(System.nanoTime() - startNanos, false);
+            return false;
+        }
+
+        try {
+            curatorClient.delete().guaranteed().forPath(nodePath);
+            mirror.deleted(nodePath);
+            meters.roundTrip(System.nanoTime() - startNanos);
+            meters.released(System.nanoTime() - startNanos, true);
+            log.debug("Successfully released ZooKeeper lock: {}", lockKey);
+            return true;
+        } catch (KeeperException.NoNodeException e) {
+            log.warn("ZooKeeper lock node already gone on release: {}", nodePath);
+            meters.released(System.nanoTime() - startNanos, false);
+            return false;
+        } catch (Exception e) {
+            log.error("Error releasing ZooKeeper lock: {}", lockKey, e);
+            meters.released(System.nanoTime() - startNanos, false);
+            return false;
+        }
+    }
+
+    // Data of the lowest lock node, null if the lock is free
+    private String readHolder(String lockPath) throws Exception {
+        List<String> nodes = new ArrayList<>();
+        try {
+            for (String child : curatorClient.getChildren().forPath(lockPath)) {
+                if (child.contains(LOCK_NAME)) {
+                    nodes.add(child);
+                }
+            }
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+        nodes.sort(Comparator.comparing(ZookeeperLock::sequenceOf));
+        for (String node : nodes) {
+            try {
+                return new String(curatorClient.getData().forPath(ZKPaths.makePath(lockPath, node)), StandardCharsets.UTF_8);
+            } catch (KeeperException.NoNodeException e) {
+                // Released meanwhile, the next node is the holder now
+            }
+        }
+        return null;
+    }
+
+    private void ensureBasePath() throws Exception {
+        if (basePathCreated) {
+            return;
+        }
+        try {
+            curatorClient.create()
+                    .creatingParentsIfNeeded()
+                    .forPath(zookeeperConfig.getLock().getBasePath());
+        } catch (KeeperException.NodeExistsException ignore) {
+            // Base path already exists, which is fine
+        }
+        basePathCreated = true;
+    }
+
+    private MutexEntry retain(String lockKey, String lockPath) {
+        MutexEntry entry = mutexCache.compute(lockKey, (key, current) -> {
+            MutexEntry result = current != null ? current : new MutexEntry(new TrackedMutex(curatorClient, lockPath));
+            result.references++;
+            return result;
+        });
+        if (mutexCache.size() > zookeeperConfig.getLock().getMutexCacheSize()) {
+            evictIdle();
+        }
+        return entry;
+    }
+
+    private void unretain(String lockKey, MutexEntry entry) {
+        mutexCache.computeIfPresent(lockKey, (key, current) -> {
+            if (current == entry) {
+                current.references--;
+            }
+            return current;
+        });
+    }
+
+    // Drops mutexes no thread holds or waits on until the cache is back under 90% of its bound
+    private void evictIdle() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int target = zookeeperConfig.getLock().getMutexCacheSize() * 9 / 10;
+            for (String lockKey : mutexCache.keySet()) {
+                if (mutexCache.size() <= target) {
+                    break;
+                }
+                mutexCache.computeIfPresent(lockKey, (key, entry) -> entry.references == 0 ? null : entry);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Non-blocking acquire driven entirely by Curator background callbacks and watches.
+     * Follows the same node naming and ordering as {@link InterProcessMutex}, so async and
+     * blocking acquirers of the same key exclude each other across the cluster.
+     */
+    private final class AsyncAcquire {
+        private final String lockKey;
+        private final String lockPath;
+        private final BackendCircuitBreaker.Permit permit;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private final long startNanos = System.nanoTime();
+        private volatile String ourPath;
+        private volatile ScheduledFuture<?> timeout;
+        private volatile boolean timedOut;
+        private volatile boolean waited;
+
+        private AsyncAcquire(String lockKey, String lockPath, BackendCircuitBreaker.Permit permit) {
+            this.lockKey = lockKey;
+            this.lockPath = lockPath;
+            this.permit = permit;
+        }
+
+        private void start(long timeoutMs) {
+            timeout = scheduler.schedule(() -> {
+                timedOut = true;
+                finish(false);
+            }, timeoutMs);
+            try {
+                final long createStart = System.nanoTime();
+                curatorClient.create()
+                        .creatingParentContainersIfNeeded()
+                        .withProtection()
+                        .withMode(CreateMode.EPHEMERAL_SEQUENTIAL)
+                        .inBackground((client, event) -> {
+                            meters.roundTrip(System.nanoTime() - createStart);
+                            if (event.getResultCode() != KeeperException.Code.OK.intValue()) {
+                                log.error("Error creating ZooKeeper lock node: {}, code: {}", lockPath, event.getResultCode());
+                                finish(false);
+                                return;
+                            }
+                            ourPath = event.getName();
+                            if (settled.get()) {
+                                deleteOurNode();
+                            } else {
+                                checkPosition();
+                            }
+                        })
+                        .forPath(ZKPaths.makePath(lockPath, LOCK_NAME));
+            } catch (Exception e) {
+                log.error("Error acquiring ZooKeeper lock asynchronously: {}", lockPath, e);
+                finish(false);
+            }
+        }
+
+        private void checkPosition() throws Exception {
+            if (settled.get()) {
+                return;
+            }
+            final long childrenStart = System.nanoTime();
+            curatorClient.getChildren().inBackground((client, event) -> {
+                meters.roundTrip(System.nanoTime() - childrenStart);
+                if (event.getResultCode() != KeeperException.Code.OK.intValue()) {
+                    finish(false);
+                    return;
+                }
+
+                List<String> children = new ArrayList<>(event.getChildren());
+                children.sort(Comparator.comparing(ZookeeperLock::sequenceOf));
+                int index = children.indexOf(ZKPaths.getNodeFromPath(ourPath));
+                if (index < 0) {
+                    // Our node vanished, e.g. the session expired
+                    finish(false);
+                } else if (index == 0) {
+                    finish(true);
+                } else {
+                    if (waited) {
+                        meters.retried();
+                    } else {
+                        waited = true;
+                        meters.contended();
+                    }
+                    // Watch only the predecessor, like InterProcessMutex, to avoid a herd on release
+                    String predecessor = ZKPaths.makePath(lockPath, children.get(index - 1));
+                    curatorClient.checkExists()
+                            .usingWatcher((CuratorWatcher) watchedEvent -> checkPosition())
+                            .inBackground((c, existsEvent) -> {
+                                if (existsEvent.getStat() == null) {
+                                    checkPosition();
+                                }
+                            })
+                            .forPath(predecessor);
+                }
+            }).forPath(lockPath);
+        }
+
+        private void finish(boolean acquired) {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> pending = timeout;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            if (acquired) {
+                detachedNodes.put(lockKey, ourPath);
+                mirror.acquired(ourPath);
+                meters.acquired(System.nanoTime() - startNanos);
+                log.debug("Successfully acquired ZooKeeper lock asynchronously: {}", lockPath);
+            } else {
+                if (timedOut) {
+                    meters.timedOut(System.nanoTime() - startNanos);
+                } else {
+                    breaker.recordFailure();
+                    meters.failed(System.nanoTime() - startNanos);
+                }
+                log.debug("Failed to acquire ZooKeeper lock asynchronously: {}", lockPath);
+                deleteOurNode();
+            }
+            breaker.recordCall();
+            // A timeout before our node was even created says nothing about the backend
+            permit.finished(acquired || (timedOut && ourPath != null));
+            result.complete(acquired);
+        }
+
+        private void deleteOurNode() {
+            String path = ourPath;
+            if (path == null) {
+                // Still being created, the create callback deletes it
+                return;
+            }
+            try {
+                curatorClient.delete().guaranteed().inBackground().forPath(path);
+                mirror.deleted(path);
+            } catch (Exception e) {
+                log.error("Error deleting ZooKeeper lock node: {}", path, e);
+            }
+        }
+    }
+
+    // Same ordering as InterProcessMutex: by the sequence suffix after the lock name
+    private static String sequenceOf(String child) {
+        int index = child.lastIndexOf(LOCK_NAME);
+        return index >= 0 ? child.substring(index + LOCK_NAME.length()) : child;
+    }
+
+    private static final class MutexEntry {
+        private final TrackedMutex mutex;
+
+        // In-flight acquires plus holds, guarded by the map's compute lock
+        private int references;
+
+        private MutexEntry(TrackedMutex mutex) {
+            this.mutex = mutex;
+        }
+    }
+
+    // Exposes the lock node of the calling thread, so a release can be applied to the mirror at once
+    private static final class TrackedMutex extends InterProcessMutex {
+
+        private TrackedMutex(CuratorFramework client, String path) {
+            super(client, path);
+        }
+
+        private String getNodePath() {
+            return getLockPath();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,350 @@
+package com.distlock.lock;
+
+import com.distlock.config.ZookeeperConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory mirror of the ZooKeeper lock tree under {@code zookeeper.lock.base-path}.
+ * <p>
+ * A {@link CuratorCache} keeps a recursive watch on the base path and every created or deleted
+ * ephemeral lock node updates an index of lock nodes per key, ordered like
+ * {@link org.apache.curator.framework.recipes.locks.InterProcessMutex} orders them. A key is held
+ * while it has a lock node, and the holder is the node with the lowest sequence, so lock state,
+ * holders and listings of every key in the cluster are answered without a ZooKeeper round-trip.
+ * <p>
+ * The mirror trails ZooKeeper by the watch delivery time. Nodes acquired by this JVM are added at
+ * once; nodes it deleted are dropped at once and remembered for a while, so a late create event
+ * cannot bring them back.
+ * <p>
+ * Key nodes left without lock nodes are remembered with the time they became empty, so
+ * {@link ZookeeperLockReaper} can delete idle ones without scanning the tree.
+ */
+@Slf4j
+@Component
+public class ZookeeperLockMirror {
+
+    // Node name prefix used by InterProcessMutex
+    private static final String LOCK_NAME = "lock-";
+    // How long a node deleted by this JVM is kept from coming back by a late create event
+    private static final long TOMBSTONE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final CuratorFramework curatorClient;
+    private final String basePath;
+    private final CuratorCache cache;
+    private final boolean enabled;
+    // Lock nodes per key, by sequence; keys sorted so that listings can be paged
+    private final ConcurrentSkipListMap<String, ConcurrentSkipListMap<String, ChildData>> locks = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Long> tombstones = new ConcurrentHashMap<>();
+    // Key nodes without lock nodes, by when they became empty
+    private final ConcurrentHashMap<String, Long> idleSince = new ConcurrentHashMap<>();
+    private volatile boolean initialized;
+
+    @Autowired
+    public ZookeeperLockMirror(CuratorFramework curatorClient, ZookeeperConfig zookeeperConfig) {
+        this.curatorClient = curatorClient;
+        this.basePath = zookeeperConfig.getLock().getBasePath();
+        this.cache = CuratorCache.build(curatorClient, basePath);
+        this.enabled = zookeeperConfig.getLock().isMirrorEnabled();
+        if (enabled) {
+            cache.listenable().addListener(new CuratorCacheListener() {
+                @Override
+                public void event(Type type, ChildData oldData, ChildData data) {
+                    if (type == Type.NODE_DELETED) {
+                        removed(oldData.getPath());
+                        if (oldData.getStat() != null && oldData.getStat().getEphemeralOwner() == 0) {
+                            String lockKey = keyOf(oldData.getPath());
+                            if (lockKey != null) {
+                                idleSince.remove(lockKey);
+                                // A nested key's parent may be left empty now
+                                String parentKey = keyOf(ZKPaths.getPathAndNode(oldData.getPath()).getPath());
+                                if (parentKey != null && !locks.containsKey(parentKey)) {
+                                    idleSince.put(parentKey, System.nanoTime());
+                                }
+                            }
+                        }
+                    } else if (type == Type.NODE_CREATED) {
+                        created(data);
+                    }
+                }
+
+                @Override
+                public void initialized() {
+                    initialized = true;
+                    log.info("ZooKeeper lock mirror initialized with {} held keys: {}", locks.size(), basePath);
+                }
+            });
+            cache.start();
+        }
+    }
+
+    /**
+     * @return true if the lock tree is mirrored
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true once the initial state is loaded and the connection is up, so the mirror
+     * can be trusted
+     */
+    public boolean isAvailable() {
+        return initialized && curatorClient.getZookeeperClient().isConnected();
+    }
+
+    /**
+     * @param lockKey the lock key
+     * @return true if any process holds or waits for the lock
+     */
+    public boolean isLocked(String lockKey) {
+        return locks.containsKey(lockKey);
+    }
+
+    /**
+     * Looks up the holder of a lock
+     *
+     * @param lockKey the lock key
+     * @return the holder, null if the lock is free
+     */
+    public LockHolder getHolder(String lockKey) {
+        return holderOf(lockKey, locks.get(lockKey));
+    }
+
+    /**
+     * @return the keys of all held locks, sorted
+     */
+    public List<String> getLockedKeys() {
+        return new ArrayList<>(locks.keySet());
+    }
+
+    /**
+     * Looks up the holders of a page of locks
+     *
+     * @param afterKey the last key of the previous page, null for the first page
+     * @param limit the maximum number of holders
+     * @return the holders of the next held locks by key
+     */
+    public List<LockHolder> getHolders(String afterKey, int limit) {
+        Map<String, ConcurrentSkipListMap<String, ChildData>> page = afterKey != null ? locks.tailMap(afterKey, false) : locks;
+        List<LockHolder> holders = new ArrayList<>(Math.min(limit, 1024));
+        for (Map.Entry<String, ConcurrentSkipListMap<String, ChildData>> entry : page.entrySet()) {
+            if (holders.size() >= limit) {
+                break;
+            }
+            LockHolder holder = holderOf(entry.getKey(), entry.getValue());
+            if (holder != null) {
+                holders.add(holder);
+            }
+        }
+        return holders;
+    }
+
+    /**
+     * Adds a lock node this JVM has just acquired, without waiting for the watch event
+     *
+     * @param nodePath the path of the acquired lock node
+     */
+    public void acquired(String nodePath) {
+        if (enabled && nodePath != null && !tombstones.containsKey(nodePath)) {
+            // Node data as the event will bring it, unless the client was built with other default data
+            add(nodePath, new ChildData(nodePath, null, CuratorFrameworkFactory.getLocalAddress()));
+        }
+    }
+
+    /**
+     * Drops a lock node this JVM has just deleted, without waiting for the watch event
+     *
+     * @param nodePath the path of the deleted lock node
+     */
+    public void deleted(String nodePath) {
+        if (nodePath == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        tombstones.values().removeIf(deletedAt -> now - deletedAt > TOMBSTONE_NANOS);
+        tombstones.put(nodePath, now);
+        removed(nodePath);
+    }
+
+    /**
+     * Looks up key nodes that have had no lock node for a while
+     *
+     * @param idleMs how long a key node must have been empty
+     * @param limit the maximum number of keys
+     * @return the idle keys
+     */
+    public List<String> getIdleKeys(long idleMs, int limit) {
+        final long now = System.nanoTime();
+        final long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMs);
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : idleSince.entrySet()) {
+            if (keys.size() >= limit) {
+                break;
+            }
+            if (now - entry.getValue() >= idleNanos) {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Restarts the idle time of a key node found to be in use, e.g. as the parent of other keys
+     *
+     * @param lockKey the lock key
+     */
+    public void stillInUse(String lockKey) {
+        idleSince.computeIfPresent(lockKey, (key, since) -> System.nanoTime());
+    }
+
+    /**
+     * Forgets a key node this JVM has just deleted, without waiting for the watch event
+     *
+     * @param lockKey the lock key
+     */
+    public void reaped(String lockKey) {
+        idleSince.remove(lockKey);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (enabled) {
+            cache.close();
+        }
+    }
+
+    private static LockHolder holderOf(String lockKey, ConcurrentSkipListMap<String, ChildData> nodes) {
+        Map.Entry<String, ChildData> first = nodes != null ? nodes.firstEntry() : null;
+        if (first == null) {
+            return null;
+        }
+        ChildData node = first.getValue();
+        String owner = node.getData() != null ? new String(node.getData(), StandardCharsets.UTF_8) : "";
+        return new LockHolder(lockKey, node.getPath(), owner, nodes.size() - 1);
+    }
+
+    private void created(ChildData data) {
+        if (data.getStat() == null || tombstones.containsKey(data.getPath())) {
+            return;
+        }
+        // Lock nodes are the ephemeral leaves, key nodes are persistent containers
+        if (data.getStat().getEphemeralOwner() != 0) {
+            add(data.getPath(), data);
+            return;
+        }
+        String lockKey = keyOf(data.getPath());
+        if (lockKey != null && !locks.containsKey(lockKey)) {
+            idleSince.putIfAbsent(lockKey, System.nanoTime());
+        }
+    }
+
+    private void add(String nodePath, ChildData data) {
+        ZKPaths.PathAndNode pathAndNode = ZKPaths.getPathAndNode(nodePath);
+        String lockKey = keyOf(pathAndNode.getPath());
+        if (lockKey == null) {
+            return;
+        }
+        locks.compute(lockKey, (key, nodes) -> {
+            ConcurrentSkipListMap<String, ChildData> result = nodes != null ? nodes : new ConcurrentSkipListMap<>();
+            result.put(sequenceOf(pathAndNode.getNode()), data);
+            return result;
+        });
+        idleSince.remove(lockKey);
+    }
+
+    private void removed(String nodePath) {
+        ZKPaths.PathAndNode pathAndNode = ZKPaths.getPathAndNode(nodePath);
+        String lockKey = keyOf(pathAndNode.getPath());
+        if (lockKey == null) {
+            return;
+        }
+        String sequence = sequenceOf(pathAndNode.getNode());
+        locks.computeIfPresent(lockKey, (key, nodes) -> {
+            ChildData current = nodes.get(sequence);
+            if (current != null && current.getPath().equals(nodePath)) {
+                nodes.remove(sequence);
+            }
+            return nodes.isEmpty() ? null : nodes;
+        });
+        if (!locks.containsKey(lockKey)) {
+            idleSince.put(lockKey, System.nanoTime());
+        }
+        // The tombstone has done its job once the delete itself was seen
+        if (!tombstones.isEmpty()) {
+            tombstones.remove(nodePath);
+        }
+    }
+
+    // The key is the path of the lock node's parent below the base path
+    private String keyOf(String parentPath) {
+        if (!parentPath.startsWith(basePath + "/")) {
+            return null;
+        }
+        return parentPath.substring(basePath.length() + 1);
+    }
+
+    // Same ordering as InterProcessMutex: by the sequence suffix after the lock name
+    private static String sequenceOf(String child) {
+        int index = child.lastIndexOf(LOCK_NAME);
+        return index >= 0 ? child.substring(index + LOCK_NAME.length()) : child;
+    }
+
+    /**
+     * The current holder of a lock as seen in the mirror
+     */
+    public static final class LockHolder {
+        private final String lockKey;
+        private final String nodePath;
+        private final String owner;
+        private final int waiters;
+
+        LockHolder(String lockKey, String nodePath, String owner, int waiters) {
+            this.lockKey = lockKey;
+            this.nodePath = nodePath;
+            this.owner = owner;
+            this.waiters = waiters;
+        }
+
+        public String getLockKey() {
+            return lockKey;
+        }
+
+        /**
+         * @return the path of the holder's lock node
+         */
+        public String getNodePath() {
+            return nodePath;
+        }
+
+        /**
+         * @return the data of the holder's lock node, the holder's address unless set otherwise
+         */
+        public String getOwner() {
+            return owner;
+        }
+
+        /**
+         * @return the number of processes queued behind the holder
+         */
+        public int getWaiters() {
+            return waiters;
+        }
+    }
+}
\ No newline at end of file
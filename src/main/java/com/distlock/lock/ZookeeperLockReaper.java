@@ -0,0 +1,105 @@
+package com.distlock.lock;
+
+import com.distlock.config.ZookeeperConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.zookeeper.KeeperException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes the key nodes of ZooKeeper locks that have been unused for a while.
+ * <p>
+ * Curator creates the key nodes as containers, which the server deletes once empty, but only on
+ * its own {@code znode.container.checkIntervalMs} sweep and only on servers that support them.
+ * Every tick this reaper takes the keys the {@link ZookeeperLockMirror} has seen empty for
+ * {@code zookeeper.lock.reaper-idle-time} and deletes up to {@code zookeeper.lock.reaper-batch-size}
+ * of them in one multi-op transaction, so a tree with many short-lived keys stays flat without
+ * a scan. A key taken again in the meantime fails the delete as not empty and is left alone; a
+ * deleted key node is recreated by the next acquire. Nested keys free their parents over later ticks.
+ * <p>
+ * Without the mirror nothing is reaped and the containers are left to the server.
+ */
+@Slf4j
+@Component
+public class ZookeeperLockReaper {
+
+    private final CuratorFramework curatorClient;
+    private final ZookeeperConfig zookeeperConfig;
+    private final ZookeeperLockMirror mirror;
+    private final LockMetrics metrics;
+
+    @Autowired
+    public ZookeeperLockReaper(CuratorFramework curatorClient, ZookeeperConfig zookeeperConfig, ZookeeperLockMirror mirror,
+                               LockMetrics metrics) {
+        this.curatorClient = curatorClient;
+        this.zookeeperConfig = zookeeperConfig;
+        this.mirror = mirror;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Deletes one batch of idle key nodes
+     *
+     * @return the number of deleted key nodes
+     */
+    @Scheduled(fixedDelayString = "${zookeeper.lock.reaper-interval:60000}")
+    public int reap() {
+        ZookeeperConfig.Lock lockConfig = zookeeperConfig.getLock();
+        if (!lockConfig.isReaperEnabled() || !mirror.isAvailable()) {
+            return 0;
+        }
+        List<String> lockKeys = mirror.getIdleKeys(lockConfig.getReaperIdleTime(), Math.max(1, lockConfig.getReaperBatchSize()));
+        if (lockKeys.isEmpty()) {
+            return 0;
+        }
+
+        int reaped;
+        try {
+            List<CuratorOp> deletes = new ArrayList<>(lockKeys.size());
+            for (String lockKey : lockKeys) {
+                deletes.add(curatorClient.transactionOp().delete().forPath(lockPathOf(lockKey)));
+            }
+            curatorClient.transaction().forOperations(deletes);
+            lockKeys.forEach(mirror::reaped);
+            reaped = lockKeys.size();
+        } catch (KeeperException e) {
+            // A multi-op fails as a whole, retry the batch node by node to find the keys in use
+            reaped = reapEach(lockKeys);
+        } catch (Exception e) {
+            log.error("Error reaping idle ZooKeeper lock nodes", e);
+            return 0;
+        }
+
+        metrics.zookeeperReaped(reaped);
+        log.debug("Reaped {} idle ZooKeeper lock nodes out of {}", reaped, lockKeys.size());
+        return reaped;
+    }
+
+    private int reapEach(List<String> lockKeys) {
+        int reaped = 0;
+        for (String lockKey : lockKeys) {
+            try {
+                curatorClient.delete().forPath(lockPathOf(lockKey));
+                mirror.reaped(lockKey);
+                reaped++;
+            } catch (KeeperException.NoNodeException e) {
+                mirror.reaped(lockKey);
+            } catch (KeeperException.NotEmptyException e) {
+                mirror.stillInUse(lockKey);
+            } catch (Exception e) {
+                log.warn("Error reaping idle ZooKeeper lock node: {}", lockKey, e);
+            }
+        }
+        return reaped;
+    }
+
+    private String lockPathOf(String lockKey) {
+        return zookeeperConfig.getLock().getBasePath() + "/" + lockKey;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+package com.distlock.lock;
+
+import com.distlock.config.ZookeeperConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.recipes.locks.InterProcessReadWriteLock;
+import org.apache.curator.utils.ZKPaths;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Read/write lock on the protocol of Curator's {@link InterProcessReadWriteLock}, one per key
+ * under {@code <base-path>-rw}. Every acquire waits on a lock object of its own, which is dropped
+ * once granted: the token is the path of the hold's node and a release deletes it, from any thread.
+ * The node stays ephemeral to the session of this JVM, so a hold is given up if this JVM dies.
+ */
+@Slf4j
+@Component
+public class ZookeeperReadWriteLock implements DistributedReadWriteLock {
+
+    // Node name markers of Curator's read and write lock nodes
+    private static final String READ_NODE_MARKER = "__READ__";
+    private static final String WRITE_NODE_MARKER = "__WRIT__";
+
+    private final CuratorFramework curatorClient;
+    private final ZookeeperConfig zookeeperConfig;
+
+    @Autowired
+    public ZookeeperReadWriteLock(CuratorFramework curatorClient, ZookeeperConfig zookeeperConfig) {
+        this.curatorClient = curatorClient;
+        this.zookeeperConfig = zookeeperConfig;
+    }
+
+    @Override
+    public String acquireRead(String lockKey, long timeoutMs) {
+        // A write lock of its own that is never held, so the read lock is never reentrant
+        return acquire(lockKey, timeoutMs, lockPath -> new TokenReadLock(curatorClient, lockPath,
+                new TokenWriteLock(curatorClient, lockPath)));
+    }
+
+    @Override
+    public boolean releaseRead(String lockKey, String token) {
+        return release(lockKey, token, READ_NODE_MARKER);
+    }
+
+    @Override
+    public String acquireWrite(String lockKey, long timeoutMs) {
+        return acquire(lockKey, timeoutMs, lockPath -> new TokenWriteLock(curatorClient, lockPath));
+    }
+
+    @Override
+    public boolean releaseWrite(String lockKey, String token) {
+        return release(lockKey, token, WRITE_NODE_MARKER);
+    }
+
+    @Override
+    public String getType() {
+        return "Zookeeper";
+    }
+
+    private <T extends InterProcessMutex & NodeLock> String acquire(String lockKey, long timeoutMs,
+                                                                     Function<String, T> newLock) {
+        String lockPath = lockPath(lockKey);
+        T lock = newLock.apply(lockPath);
+
+        try {
+            if (!lock.acquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                log.debug("Failed to acquire ZooKeeper read/write lock: {}", lockPath);
+                return null;
+            }
+            log.debug("Successfully acquired ZooKeeper read/write lock: {}", lockPath);
+            return lock.getNodePath();
+        } catch (Exception e) {
+            log.error("Error acquiring ZooKeeper read/write lock: {}", lockPath, e);
+            return null;
+        }
+    }
+
+    private boolean release(String lockKey, String token, String marker) {
+        String lockPath = lockPath(lockKey);
+        // Only ever delete a node of this lock and mode, whatever the token says
+        ZKPaths.PathAndNode pathAndNode = ZKPaths.getPathAndNode(token);
+        if (!pathAndNode.getPath().equals(lockPath) || !pathAndNode.getNode().contains(marker)) {
+            log.warn("ZooKeeper read/write lock token does not belong to lock: {}", lockKey);
+            return false;
+        }
+
+        try {
+            curatorClient.delete().guaranteed().forPath(token);
+            log.debug("Successfully released ZooKeeper read/write lock: {}", lockKey);
+            return true;
+        } catch (Exception e) {
+            log.error("Error releasing ZooKeeper read/write lock: {}", lockKey, e);
+            return false;
+        }
+    }
+
+    private String lockPath(String lockKey) {
+        return zookeeperConfig.getLock().getBasePath() + "-rw/" + lockKey;
+    }
+
+    // Exposes the node of the hold, which becomes its token
+    private interface NodeLock {
+        String getNodePath();
+    }
+
+    private static final class TokenReadLock extends InterProcessReadWriteLock.ReadLock implements NodeLock {
+
+        private TokenReadLock(CuratorFramework client, String path, InterProcessReadWriteLock.WriteLock writeLock) {
+            super(client, path, null, writeLock);
+        }
+
+        @Override
+        public String getNodePath() {
+            return getLockPath();
+        }
+    }
+
+    private static final class TokenWriteLock extends InterProcessReadWriteLock.WriteLock implements NodeLock {
+
+        private TokenWriteLock(CuratorFramework client, String path) {
+            super(client, path, null);
+        }
+
+        @Override
+        public String getNodePath() {
+            return getLockPath();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.distlock.lock;
+
+import com.distlock.config.ZookeeperConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreV2;
+import org.apache.curator.framework.recipes.locks.Lease;
+import org.apache.curator.utils.ZKPaths;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Counting semaphore backed by Curator's {@link InterProcessSemaphoreV2} under
+ * {@code <base-path>-semaphore}. Leases are ephemeral nodes, so permits of a crashed holder
+ * come back when its session expires. The token of an acquire is the names of its lease nodes,
+ * a release deletes them.
+ */
+@Slf4j
+@Component
+public class ZookeeperSemaphore implements DistributedSemaphore {
+
+    // Lease nodes live under this child of the semaphore path, as laid out by Curator
+    private static final String LEASE_PARENT = "leases";
+    // Not part of a lease node name
+    private static final String LEASE_SEPARATOR = ",";
+
+    private final CuratorFramework curatorClient;
+    private final ZookeeperConfig zookeeperConfig;
+
+    @Autowired
+    public ZookeeperSemaphore(CuratorFramework curatorClient, ZookeeperConfig zookeeperConfig) {
+        this.curatorClient = curatorClient;
+        this.zookeeperConfig = zookeeperConfig;
+    }
+
+    @Override
+    public String acquire(String semaphoreKey, int permits, int maxPermits, long timeoutMs) {
+        String semaphorePath = semaphorePath(semaphoreKey);
+        if (permits <= 0 || permits > maxPermits) {
+            log.warn("Cannot acquire {} of {} permits of ZooKeeper semaphore: {}", permits, maxPermits, semaphorePath);
+            return null;
+        }
+
+        try {
+            // Cheap to create, the state lives entirely in ZooKeeper
+            InterProcessSemaphoreV2 semaphore = new InterProcessSemaphoreV2(curatorClient, semaphorePath, maxPermits);
+            Collection<Lease> leases = semaphore.acquire(permits, timeoutMs, TimeUnit.MILLISECONDS);
+            if (leases == null) {
+                log.debug("Failed to acquire {} permits of ZooKeeper semaphore: {}", permits, semaphorePath);
+                return null;
+            }
+
+            log.debug("Successfully acquired {} permits of ZooKeeper semaphore: {}", permits, semaphorePath);
+            return leases.stream().map(Lease::getNodeName).collect(Collectors.joining(LEASE_SEPARATOR));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            log.error("Error acquiring ZooKeeper semaphore: {}", semaphorePath, e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean release(String semaphoreKey, String token) {
+        String leasesPath = ZKPaths.makePath(semaphorePath(semaphoreKey), LEASE_PARENT);
+        String[] leaseNodes = token.split(LEASE_SEPARATOR);
+
+        boolean released = true;
+        for (String leaseNode : leaseNodes) {
+            // Only ever delete a lease of this semaphore, whatever the token says
+            if (leaseNode.isEmpty() || leaseNode.contains("/")) {
+                log.warn("ZooKeeper semaphore token does not belong to semaphore: {}", semaphoreKey);
+                released = false;
+                continue;
+            }
+            try {
+                curatorClient.delete().guaranteed().forPath(ZKPaths.makePath(leasesPath, leaseNode));
+            } catch (Exception e) {
+                log.error("Error releasing ZooKeeper semaphore: {}", semaphoreKey, e);
+                released = false;
+            }
+        }
+        if (released) {
+            log.debug("Successfully released {} permits of ZooKeeper semaphore: {}", leaseNodes.length, semaphoreKey);
+        }
+        return released;
+    }
+
+    @Override
+    public String getType() {
+        return "Zookeeper";
+    }
+
+    private String semaphorePath(String semaphoreKey) {
+        return zookeeperConfig.getLock().getBasePath() + "-semaphore/" + semaphoreKey;
+    }
+}
\ No newline at end of file
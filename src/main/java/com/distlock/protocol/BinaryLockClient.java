@@ -0,0 +1,224 @@
+package com.distlock.protocol;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Client of the binary lock protocol over a single connection.
+ * <p>
+ * Thread-safe; every call returns at once and any number of calls may be in flight. An acquire
+ * completes when the server grants the lock or gives up, without polling. Locks are handed out as
+ * tokens, as by the HTTP API, and stay held if the connection drops after the grant.
+ * <pre>
+ * try (BinaryLockClient client = BinaryLockClient.connect("localhost", 7070)) {
+ *     String token = client.acquire("orders", 5000).get();
+ *     if (token != null) {
+ *         ...
+ *         client.release("orders", token).get();
+ *     }
+ * }
+ * </pre>
+ */
+@Slf4j
+public class BinaryLockClient implements AutoCloseable {
+
+    private final EventLoopGroup group;
+    private final Channel channel;
+    private final AtomicLong nextId = new AtomicLong();
+    private final ConcurrentHashMap<Long, Pending<?>> pending = new ConcurrentHashMap<>();
+
+    private BinaryLockClient(EventLoopGroup group, Channel channel) {
+        this.group = group;
+        this.channel = channel;
+        channel.closeFuture().addListener(future -> failPending());
+    }
+
+    /**
+     * Opens a connection to a lock server
+     *
+     * @param host the host of the server
+     * @param port the port of its binary lock protocol
+     * @return the connected client
+     * @throws InterruptedException if interrupted while connecting
+     */
+    public static BinaryLockClient connect(String host, int port) throws InterruptedException {
+        EventLoopGroup group = new NioEventLoopGroup(1, new DefaultThreadFactory("lock-binary-client", true));
+        try {
+            ResponseHandler handler = new ResponseHandler();
+            Channel channel = new Bootstrap()
+                    .group(group)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel channel) {
+                            BinaryProtocol.addCodec(channel.pipeline());
+                            channel.pipeline().addLast(handler);
+                        }
+                    })
+                    .connect(host, port)
+                    .sync()
+                    .channel();
+            BinaryLockClient client = new BinaryLockClient(group, channel);
+            handler.client = client;
+            return client;
+        } catch (InterruptedException | RuntimeException e) {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+            throw e;
+        }
+    }
+
+    /**
+     * Acquires a lock
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs how long the server waits for the lock
+     * @return a future completed with the token, or null if the lock was not granted in time
+     */
+    public CompletableFuture<String> acquire(String lockKey, long timeoutMs) {
+        return send(BinaryProtocol.ACQUIRE, buf -> {
+            buf.writeLong(timeoutMs);
+            BinaryProtocol.writeString(buf, lockKey);
+        }, (status, buf) -> status == BinaryProtocol.OK ? BinaryProtocol.readString(buf) : null);
+    }
+
+    /**
+     * Releases a lock by its token
+     *
+     * @param lockKey the key to unlock
+     * @param token the token of the acquire
+     * @return a future completed with true if the lock was released
+     */
+    public CompletableFuture<Boolean> release(String lockKey, String token) {
+        return send(BinaryProtocol.RELEASE, buf -> {
+            BinaryProtocol.writeString(buf, lockKey);
+            BinaryProtocol.writeString(buf, token);
+        }, (status, buf) -> status == BinaryProtocol.OK);
+    }
+
+    /**
+     * Checks if a lock is held
+     *
+     * @param lockKey the key to check
+     * @return a future completed with true if the lock is held
+     */
+    public CompletableFuture<Boolean> isLocked(String lockKey) {
+        return send(BinaryProtocol.STATUS, buf -> BinaryProtocol.writeString(buf, lockKey),
+                (status, buf) -> buf.readBoolean());
+    }
+
+    @Override
+    public void close() {
+        channel.close().syncUninterruptibly();
+        group.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+    }
+
+    private <T> CompletableFuture<T> send(byte op, Consumer<ByteBuf> operands, Decoder<T> decoder) {
+        long id = nextId.incrementAndGet();
+        Pending<T> request = new Pending<>(decoder);
+        pending.put(id, request);
+
+        ByteBuf buf = channel.alloc().buffer();
+        buf.writeByte(op);
+        buf.writeLong(id);
+        try {
+            operands.accept(buf);
+        } catch (RuntimeException e) {
+            buf.release();
+            pending.remove(id);
+            request.result.completeExceptionally(e);
+            return request.result;
+        }
+        channel.writeAndFlush(buf).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess() && pending.remove(id) != null) {
+                request.result.completeExceptionally(future.cause());
+            }
+        });
+        // A closed channel has already failed what was pending before this request was added
+        if (!channel.isActive() && pending.remove(id) != null) {
+            request.result.completeExceptionally(new IOException("Connection to lock server closed"));
+        }
+        return request.result;
+    }
+
+    private void received(ByteBuf frame) {
+        frame.readByte();
+        long id = frame.readLong();
+        byte status = frame.readByte();
+        Pending<?> request = pending.remove(id);
+        if (request == null) {
+            log.warn("Response to unknown binary lock request: {}", id);
+            return;
+        }
+        if (status == BinaryProtocol.ERROR) {
+            request.result.completeExceptionally(new IOException("Lock server error: " + BinaryProtocol.readString(frame)));
+        } else {
+            request.complete(status, frame);
+        }
+    }
+
+    private void failPending() {
+        for (Long id : pending.keySet()) {
+            Pending<?> request = pending.remove(id);
+            if (request != null) {
+                request.result.completeExceptionally(new IOException("Connection to lock server closed"));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Decoder<T> {
+        T decode(byte status, ByteBuf buf);
+    }
+
+    private static final class Pending<T> {
+        private final Decoder<T> decoder;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Pending(Decoder<T> decoder) {
+            this.decoder = decoder;
+        }
+
+        private void complete(byte status, ByteBuf buf) {
+            try {
+                result.complete(decoder.decode(status, buf));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class ResponseHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        private volatile BinaryLockClient client;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            client.received(frame);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("Closing binary lock connection: {}", cause.toString());
+            ctx.close();
+        }
+    }
+}
\ No newline at end of file
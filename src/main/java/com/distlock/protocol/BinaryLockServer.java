@@ -0,0 +1,250 @@
+package com.distlock.protocol;
+
+import com.distlock.config.AppConfig;
+import com.distlock.lock.LockScheduler;
+import com.distlock.service.LockService;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Serves acquire, release and status over the binary lock protocol ({@link BinaryProtocol}).
+ * <p>
+ * Enabled with {@code lock.binary-enabled}. Clients keep a connection open and pipeline requests
+ * on it; an acquire is answered when the lock is granted, so a waiting client is pushed its grant
+ * instead of polling, and one connection can carry thousands of waiting acquires. The operations
+ * are the same as the token based ones of the HTTP API, so a lock taken here can be released
+ * there and the other way round.
+ * <p>
+ * Requests are decoded on the Netty event loop; acquires start there since they do not block,
+ * releases and status lookups are blocking backend calls and run on the bounded blocking pool of
+ * the {@link LockScheduler}, never on the threads that drive the async acquires.
+ */
+@Slf4j
+@Component
+public class BinaryLockServer {
+
+    private final LockService lockService;
+    private final LockScheduler scheduler;
+    private final int maxInFlight;
+    private final AtomicInteger connections = new AtomicInteger();
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Channel serverChannel;
+
+    @Autowired
+    public BinaryLockServer(AppConfig appConfig, LockService lockService, LockScheduler scheduler) throws InterruptedException {
+        this.lockService = lockService;
+        this.scheduler = scheduler;
+        this.maxInFlight = appConfig.getBinaryMaxInFlight();
+        if (!appConfig.isBinaryEnabled()) {
+            return;
+        }
+
+        bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("lock-binary-accept", true));
+        workerGroup = new NioEventLoopGroup(0, new DefaultThreadFactory("lock-binary", true));
+        serverChannel = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        BinaryProtocol.addCodec(channel.pipeline());
+                        channel.pipeline().addLast(new RequestHandler());
+                    }
+                })
+                .bind(appConfig.getBinaryPort())
+                .sync()
+                .channel();
+        log.info("Binary lock protocol listening on port {}", getPort());
+    }
+
+    /**
+     * @return the bound port, -1 if the server is disabled
+     */
+    public int getPort() {
+        return serverChannel != null ? ((InetSocketAddress) serverChannel.localAddress()).getPort() : -1;
+    }
+
+    /**
+     * @return the number of open client connections
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (serverChannel == null) {
+            return;
+        }
+        serverChannel.close().syncUninterruptibly();
+        bossGroup.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+        workerGroup.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Per connection: decodes requests and writes each response as soon as it is ready
+     */
+    private final class RequestHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            final byte op = frame.readByte();
+            final long id = frame.readLong();
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                reply(ctx.channel(), op, id, BinaryProtocol.ERROR, "Too many requests in flight");
+                return;
+            }
+
+            try {
+                switch (op) {
+                    case BinaryProtocol.ACQUIRE: {
+                        final long timeoutMs = frame.readLong();
+                        final String lockKey = BinaryProtocol.readString(frame);
+                        acquire(ctx.channel(), id, lockKey, timeoutMs);
+                        break;
+                    }
+                    case BinaryProtocol.RELEASE: {
+                        final String lockKey = BinaryProtocol.readString(frame);
+                        final String token = BinaryProtocol.readString(frame);
+                        blocking(ctx.channel(), op, id, lockKey, () -> lockService.releaseLockToken(lockKey, token),
+                                (channel, released) -> reply(channel, op, id, released ? BinaryProtocol.OK : BinaryProtocol.REFUSED, null));
+                        break;
+                    }
+                    case BinaryProtocol.STATUS: {
+                        final String lockKey = BinaryProtocol.readString(frame);
+                        blocking(ctx.channel(), op, id, lockKey, () -> lockService.isLocked(lockKey),
+                                (channel, locked) -> replyStatus(channel, id, locked));
+                        break;
+                    }
+                    default:
+                        reply(ctx.channel(), op, id, BinaryProtocol.ERROR, "Unknown op: " + op);
+                }
+            } catch (IndexOutOfBoundsException e) {
+                reply(ctx.channel(), op, id, BinaryProtocol.ERROR, "Malformed request");
+            }
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            connections.incrementAndGet();
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            connections.decrementAndGet();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("Closing binary lock connection from {}: {}", ctx.channel().remoteAddress(), cause.toString());
+            ctx.close();
+        }
+
+        private void acquire(Channel channel, long id, String lockKey, long timeoutMs) {
+            lockService.acquireLockToken(lockKey, timeoutMs).whenComplete((token, e) -> {
+                if (e != null) {
+                    log.error("Error acquiring lock: {}", lockKey, e);
+                    reply(channel, BinaryProtocol.ACQUIRE, id, BinaryProtocol.ERROR, String.valueOf(e.getMessage()));
+                } else if (token == null) {
+                    reply(channel, BinaryProtocol.ACQUIRE, id, BinaryProtocol.REFUSED, null);
+                } else {
+                    inFlight.decrementAndGet();
+                    if (!channel.isActive()) {
+                        // Nobody is left to hear about the lock, so don't keep it
+                        releaseUnclaimed(lockKey, token);
+                        return;
+                    }
+                    ByteBuf response = header(channel, BinaryProtocol.ACQUIRE, id, BinaryProtocol.OK);
+                    BinaryProtocol.writeString(response, token);
+                    channel.writeAndFlush(response).addListener((ChannelFutureListener) future -> {
+                        if (!future.isSuccess()) {
+                            releaseUnclaimed(lockKey, token);
+                        }
+                    });
+                }
+            });
+        }
+
+        // The request was already counted out when the grant came in
+        private void releaseUnclaimed(String lockKey, String token) {
+            log.warn("Binary connection closed before lock was granted, releasing: {}", lockKey);
+            scheduler.supplyBlocking(() -> lockService.releaseLockToken(lockKey, token)).whenComplete((released, e) -> {
+                if (e != null) {
+                    log.error("Error releasing unclaimed lock: {}", lockKey, e);
+                }
+            });
+        }
+
+        // Runs a blocking backend call on the bounded blocking pool and answers with its result,
+        // or with an error if it failed or the pool was full
+        private <T> void blocking(Channel channel, byte op, long id, String lockKey, Supplier<T> call,
+                                  BiConsumer<Channel, T> answer) {
+            CompletableFuture<T> result = scheduler.supplyBlocking(call);
+            result.whenComplete((value, e) -> {
+                Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                if (cause instanceof RejectedExecutionException) {
+                    reply(channel, op, id, BinaryProtocol.ERROR, "Too many blocking requests, retry later");
+                } else if (cause != null) {
+                    log.error("Error handling binary request {} for lock: {}", op, lockKey, cause);
+                    reply(channel, op, id, BinaryProtocol.ERROR, String.valueOf(cause.getMessage()));
+                } else {
+                    answer.accept(channel, value);
+                }
+            });
+        }
+
+        private void replyStatus(Channel channel, long id, boolean locked) {
+            inFlight.decrementAndGet();
+            ByteBuf response = header(channel, BinaryProtocol.STATUS, id, BinaryProtocol.OK);
+            response.writeBoolean(locked);
+            channel.writeAndFlush(response);
+        }
+
+        private void reply(Channel channel, byte op, long id, byte status, String message) {
+            inFlight.decrementAndGet();
+            ByteBuf response = header(channel, op, id, status);
+            if (status == BinaryProtocol.ERROR) {
+                BinaryProtocol.writeString(response, message);
+            }
+            channel.writeAndFlush(response);
+        }
+
+        private ByteBuf header(Channel channel, byte op, long id, byte status) {
+            ByteBuf response = channel.alloc().buffer();
+            response.writeByte(op);
+            response.writeLong(id);
+            response.writeByte(status);
+            return response;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.distlock.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of the binary lock protocol.
+ * <p>
+ * Every message is a frame of a 4-byte big-endian length followed by that many bytes. A request
+ * is {@code op(1) id(8)} and the operands of the op; a response is {@code op(1) id(8) status(1)}
+ * and its results. Strings are an unsigned 2-byte length and UTF-8 bytes.
+ * <ul>
+ * <li>{@link #ACQUIRE}: timeoutMs(8) key, answered once the lock is granted or the timeout
+ * passes, with the token when {@link #OK};</li>
+ * <li>{@link #RELEASE}: key token, {@link #OK} if the lock was released;</li>
+ * <li>{@link #STATUS}: key, answered with locked(1).</li>
+ * </ul>
+ * An {@link #ERROR} response carries a message. Requests are pipelined: a client may send any
+ * number of them without waiting, and responses come back in completion order, matched by id.
+ */
+final class BinaryProtocol {
+
+    static final byte ACQUIRE = 1;
+    static final byte RELEASE = 2;
+    static final byte STATUS = 3;
+
+    static final byte OK = 0;
+    static final byte REFUSED = 1;
+    static final byte ERROR = 2;
+
+    static final int MAX_FRAME_LENGTH = 64 * 1024;
+    // Flushes coalesced into one write per this many messages, or per event loop turn
+    private static final int EXPLICIT_FLUSH_AFTER_FLUSHES = 256;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Adds framing and write coalescing to a channel pipeline
+     *
+     * @param pipeline the pipeline of a new channel
+     */
+    static void addCodec(ChannelPipeline pipeline) {
+        pipeline.addLast(new FlushConsolidationHandler(EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+        pipeline.addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
+        pipeline.addLast(new LengthFieldPrepender(4));
+    }
+
+    static void writeString(ByteBuf buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IllegalArgumentException("String longer than 65535 bytes");
+        }
+        buf.writeShort(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    static String readString(ByteBuf buf) {
+        int length = buf.readUnsignedShort();
+        return buf.readCharSequence(length, StandardCharsets.UTF_8).toString();
+    }
+}
\ No newline at end of file
@@ -2,38 +2,243 @@ package com.distlock.service;
 
 import com.distlock.config.AppConfig;
 import com.distlock.lock.DistributedLock;
+import com.distlock.lock.LocalLock;
+import com.distlock.lock.LocalLockTable;
+import com.distlock.lock.LockEntry;
+import com.distlock.lock.LockMetrics;
+import com.distlock.lock.LockScheduler;
+import com.distlock.lock.LockUnavailableException;
+import com.distlock.lock.DistributedReadWriteLock;
 import com.distlock.lock.RedisLock;
+import com.distlock.lock.RedisReadWriteLock;
+import com.distlock.lock.RedisSemaphore;
 import com.distlock.lock.ZookeeperLock;
+import com.distlock.lock.ZookeeperReadWriteLock;
+import com.distlock.lock.ZookeeperSemaphore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
 public class LockService {
 
+    // Neither a Redis owner value nor a ZooKeeper path can contain it
+    private static final String TOKEN_SEPARATOR = "\n";
+    // Joins the per-key handles of a batch, not in the base64url alphabet they are encoded in
+    private static final String BATCH_TOKEN_SEPARATOR = ".";
+
     private final RedisLock redisLock;
     private final ZookeeperLock zookeeperLock;
+    private final LocalLock localLock;
+    private final RedisReadWriteLock redisReadWriteLock;
+    private final ZookeeperReadWriteLock zookeeperReadWriteLock;
+    private final RedisSemaphore redisSemaphore;
+    private final ZookeeperSemaphore zookeeperSemaphore;
+    private final LocalLockTable localLocks;
+    private final LockScheduler scheduler;
+    private final LockMetrics metrics;
     private final AppConfig appConfig;
+    // Local queue slots of the locks acquired by acquireLockAsync, owned by this JVM
+    private final ConcurrentHashMap<String, LocalLockTable.DetachedOwner> detachedLocal = new ConcurrentHashMap<>();
 
     @Autowired
-    public LockService(RedisLock redisLock, ZookeeperLock zookeeperLock, AppConfig appConfig) {
+    public LockService(RedisLock redisLock, ZookeeperLock zookeeperLock, LocalLock localLock,
+                       RedisReadWriteLock redisReadWriteLock, ZookeeperReadWriteLock zookeeperReadWriteLock,
+                       RedisSemaphore redisSemaphore, ZookeeperSemaphore zookeeperSemaphore,
+                       LocalLockTable localLocks, LockScheduler scheduler, LockMetrics metrics,
+                       AppConfig appConfig) {
         this.redisLock = redisLock;
         this.zookeeperLock = zookeeperLock;
+        this.localLock = localLock;
+        this.redisReadWriteLock = redisReadWriteLock;
+        this.zookeeperReadWriteLock = zookeeperReadWriteLock;
+        this.redisSemaphore = redisSemaphore;
+        this.zookeeperSemaphore = zookeeperSemaphore;
+        this.localLocks = localLocks;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
         this.appConfig = appConfig;
     }
 
     /**
-     * Acquires a lock using the configured strategy
+     * Acquires a lock using the configured strategy. The lock is owned by the calling thread,
+     * is not reentrant and must be released by the same thread; callers that release elsewhere
+     * use {@link #acquireLockToken(String, long)}.
      *
      * @param lockKey the key to lock
      * @return true if lock was acquired, false otherwise
+     * @throws LockUnavailableException if a backend of the strategy is down
      */
     public boolean acquireLock(String lockKey) {
-        if ("both".equals(appConfig.getStrategy())) {
+        checkAvailable();
+        final long startNanos = System.nanoTime();
+        if (!acquireLocal(lockKey, appConfig.getLocalWaitTime())) {
+            metrics.lockAcquired(lockKey, System.nanoTime() - startNanos, false);
+            return false;
+        }
+        boolean acquired = acquireBackend(lockKey);
+        metrics.lockAcquired(lockKey, System.nanoTime() - startNanos, acquired);
+        if (!acquired) {
+            releaseLocal(lockKey);
+        }
+        return acquired;
+    }
+
+    /**
+     * Acquires a lock with a timeout using the configured strategy
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs the timeout in milliseconds
+     * @return true if lock was acquired, false otherwise
+     * @throws LockUnavailableException if a backend of the strategy is down
+     */
+    public boolean acquireLock(String lockKey, long timeoutMs) {
+        checkAvailable();
+        final long startTime = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        if (!acquireLocal(lockKey, timeoutMs)) {
+            metrics.lockAcquired(lockKey, System.nanoTime() - startNanos, false);
+            return false;
+        }
+        long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+        boolean acquired = acquireBackend(lockKey, remaining);
+        metrics.lockAcquired(lockKey, System.nanoTime() - startNanos, acquired);
+        if (!acquired) {
+            releaseLocal(lockKey);
+        }
+        return acquired;
+    }
+
+    /**
+     * Acquires a lock with a timeout using the configured strategy without blocking the
+     * calling thread. The lock is owned by this JVM and can be released from any thread.
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs the timeout in milliseconds
+     * @return a future completed with true if lock was acquired, false otherwise, or failed with
+     * {@link LockUnavailableException} if a backend of the strategy is down
+     */
+    public CompletableFuture<Boolean> acquireLockAsync(String lockKey, long timeoutMs) {
+        return acquireLockAsync(lockKey, timeoutMs, false).thenApply(Objects::nonNull);
+    }
+
+    // Completed with the token, or "" for a lock kept by this JVM; null if not acquired
+    private CompletableFuture<String> acquireLockAsync(String lockKey, long timeoutMs, boolean token) {
+        try {
+            checkAvailable();
+        } catch (LockUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final long startTime = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        if (!appConfig.isLocalQueue()) {
+            return acquireBackendAsync(lockKey, timeoutMs, token, null, startNanos);
+        }
+
+        return localLocks.acquireAsync(lockKey, timeoutMs).thenCompose(localOwner -> {
+            if (localOwner == null) {
+                metrics.lockAcquired(System.nanoTime() - startNanos, false);
+                return CompletableFuture.completedFuture(null);
+            }
+            long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+            return acquireBackendAsync(lockKey, remaining, token, localOwner, startNanos);
+        });
+    }
+
+    // A lock handed out as a token is timed by the grant time in the token, not by this JVM, and
+    // leaves the local queue at once; a lock kept by this JVM keeps its local slot until released
+    private CompletableFuture<String> acquireBackendAsync(String lockKey, long timeoutMs, boolean token,
+                                                         LocalLockTable.DetachedOwner localOwner, long startNanos) {
+        return acquireBackendAsync(lockKey, timeoutMs).handle((acquired, e) -> {
+            boolean granted = e == null && acquired;
+            if (token) {
+                metrics.lockAcquired(System.nanoTime() - startNanos, granted);
+            } else {
+                metrics.lockAcquired(lockKey, System.nanoTime() - startNanos, granted);
+            }
+            if (!granted) {
+                releaseLocal(lockKey, localOwner);
+                return null;
+            }
+            if (!token) {
+                if (localOwner != null) {
+                    detachedLocal.put(lockKey, localOwner);
+                }
+                return "";
+            }
+            String redisToken = appConfig.useRedis() ? redisLock.detach(lockKey) : null;
+            String zookeeperToken = appConfig.useZookeeper() ? zookeeperLock.detach(lockKey) : null;
+            String localToken = appConfig.useLocal() ? localLock.detach(lockKey) : null;
+            releaseLocal(lockKey, localOwner);
+            return encodeToken(redisToken, zookeeperToken, localToken);
+        });
+    }
+
+    /**
+     * Acquires a lock like {@link #acquireLockAsync} and hands it over to the caller as an opaque
+     * token. This JVM keeps no ownership state, so {@link #releaseLockToken} releases the lock
+     * from any thread or replica. The local queue only orders the wait and is left on grant.
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs the timeout in milliseconds
+     * @return a future completed with the token, or null if the lock was not acquired
+     */
+    public CompletableFuture<String> acquireLockToken(String lockKey, long timeoutMs) {
+        return acquireLockAsync(lockKey, timeoutMs, true);
+    }
+
+    private CompletableFuture<Boolean> acquireBackendAsync(String lockKey, long timeoutMs) {
+        if ("both".equals(appConfig.getStrategy()) && appConfig.isParallelBoth()) {
+            return acquireBothParallel(lockKey, timeoutMs);
+        } else if ("both".equals(appConfig.getStrategy())) {
+            final long startTime = System.currentTimeMillis();
+            return redisLock.acquireAsync(lockKey, timeoutMs).thenCompose(redisAcquired -> {
+                if (!redisAcquired) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+                return zookeeperLock.acquireAsync(lockKey, remaining).thenApply(zookeeperAcquired -> {
+                    if (!zookeeperAcquired) {
+                        // Roll back off the callback thread, the release is a blocking call
+                        scheduler.execute(() -> redisLock.release(lockKey));
+                    }
+                    return zookeeperAcquired;
+                });
+            });
+        } else if ("redis".equals(appConfig.getStrategy())) {
+            return redisLock.acquireAsync(lockKey, timeoutMs);
+        } else if ("zookeeper".equals(appConfig.getStrategy())) {
+            return zookeeperLock.acquireAsync(lockKey, timeoutMs);
+        } else if ("local".equals(appConfig.getStrategy())) {
+            return localLock.acquireAsync(lockKey, timeoutMs);
+        } else {
+            log.error("Invalid lock strategy: {}", appConfig.getStrategy());
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private boolean acquireBackend(String lockKey) {
+        if ("both".equals(appConfig.getStrategy()) && appConfig.isParallelBoth()) {
+            // Same default wait as the local queue, the backends each have their own otherwise
+            return awaitBothParallel(lockKey, appConfig.getLocalWaitTime());
+        } else if ("both".equals(appConfig.getStrategy())) {
             // For 'both' strategy, we try Redis first, then ZooKeeper if Redis fails
             if (redisLock.acquire(lockKey)) {
                 // If Redis lock succeeds, try ZooKeeper lock
@@ -52,21 +257,18 @@ public class LockService {
             return redisLock.acquire(lockKey);
         } else if ("zookeeper".equals(appConfig.getStrategy())) {
             return zookeeperLock.acquire(lockKey);
+        } else if ("local".equals(appConfig.getStrategy())) {
+            return localLock.acquire(lockKey);
         } else {
             log.error("Invalid lock strategy: {}", appConfig.getStrategy());
             return false;
         }
     }
 
-    /**
-     * Acquires a lock with a timeout using the configured strategy
-     *
-     * @param lockKey the key to lock
-     * @param timeoutMs the timeout in milliseconds
-     * @return true if lock was acquired, false otherwise
-     */
-    public boolean acquireLock(String lockKey, long timeoutMs) {
-        if ("both".equals(appConfig.getStrategy())) {
+    private boolean acquireBackend(String lockKey, long timeoutMs) {
+        if ("both".equals(appConfig.getStrategy()) && appConfig.isParallelBoth()) {
+            return awaitBothParallel(lockKey, timeoutMs);
+        } else if ("both".equals(appConfig.getStrategy())) {
             // For 'both' strategy, we try Redis first, then ZooKeeper if Redis fails
             if (redisLock.acquire(lockKey, timeoutMs)) {
                 // If Redis lock succeeds, try ZooKeeper lock
@@ -85,14 +287,87 @@ public class LockService {
             return redisLock.acquire(lockKey, timeoutMs);
         } else if ("zookeeper".equals(appConfig.getStrategy())) {
             return zookeeperLock.acquire(lockKey, timeoutMs);
+        } else if ("local".equals(appConfig.getStrategy())) {
+            return localLock.acquire(lockKey, timeoutMs);
         } else {
             log.error("Invalid lock strategy: {}", appConfig.getStrategy());
             return false;
         }
     }
 
+    /*
+     * Takes Redis and ZooKeeper at the same time, so an uncontended acquire costs the slower of the
+     * two rather than their sum. To keep two contenders from each holding one side and waiting on
+     * the other, ZooKeeper's FIFO queue decides the order: Redis is only tried once up front, a
+     * Redis grant is given back if ZooKeeper has not granted within the yield time, and Redis is
+     * only waited on by the ZooKeeper owner. Whichever side loses, the other is rolled back off
+     * the callback thread.
+     */
+    private CompletableFuture<Boolean> acquireBothParallel(String lockKey, long timeoutMs) {
+        final long startTime = System.currentTimeMillis();
+        CompletableFuture<Boolean> zookeeper = zookeeperLock.acquireAsync(lockKey, timeoutMs);
+        CompletableFuture<Boolean> redis = redisLock.acquireAsync(lockKey, 0);
+
+        return redis.thenCompose(redisAcquired -> {
+            if (!redisAcquired) {
+                return zookeeper.thenCompose(zookeeperAcquired -> zookeeperAcquired
+                        ? acquireRedisAfterZookeeper(lockKey, timeoutMs, startTime)
+                        : CompletableFuture.completedFuture(false));
+            }
+
+            return zookeeper.copy()
+                    .completeOnTimeout(null, appConfig.getParallelYieldTime(), TimeUnit.MILLISECONDS)
+                    .thenCompose(zookeeperAcquired -> {
+                        if (zookeeperAcquired == null) {
+                            // Still queued: yield Redis to the ZooKeeper owner, retake it once we are the owner
+                            return CompletableFuture.supplyAsync(() -> redisLock.release(lockKey), scheduler::execute)
+                                    .thenCompose(released -> zookeeper)
+                                    .thenCompose(granted -> granted
+                                            ? acquireRedisAfterZookeeper(lockKey, timeoutMs, startTime)
+                                            : CompletableFuture.completedFuture(false));
+                        }
+                        if (!zookeeperAcquired) {
+                            scheduler.execute(() -> redisLock.release(lockKey));
+                        }
+                        return CompletableFuture.completedFuture(zookeeperAcquired);
+                    });
+        });
+    }
+
+    private CompletableFuture<Boolean> acquireRedisAfterZookeeper(String lockKey, long timeoutMs, long startTime) {
+        long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+        return redisLock.acquireAsync(lockKey, remaining).thenApply(redisAcquired -> {
+            if (!redisAcquired) {
+                scheduler.execute(() -> zookeeperLock.release(lockKey));
+            }
+            return redisAcquired;
+        });
+    }
+
+    private boolean awaitBothParallel(String lockKey, long timeoutMs) {
+        CompletableFuture<Boolean> acquired = acquireBothParallel(lockKey, timeoutMs);
+        try {
+            return acquired.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Nobody is left to release what may still be granted
+            acquired.thenAccept(granted -> {
+                if (granted) {
+                    redisLock.release(lockKey);
+                    zookeeperLock.release(lockKey);
+                }
+            });
+            return false;
+        } catch (ExecutionException e) {
+            log.error("Error acquiring lock on both backends: {}", lockKey, e.getCause());
+            return false;
+        }
+    }
+
     /**
-     * Releases a lock using the configured strategy
+     * Releases a lock using the configured strategy. The local queue is only left by the thread
+     * that holds the key, or for a lock acquired by {@link #acquireLockAsync} once the backends
+     * released it.
      *
      * @param lockKey the key to unlock
      * @return true if lock was released, false otherwise
@@ -108,9 +383,602 @@ public class LockService {
             result = result && zookeeperLock.release(lockKey);
         }
 
+        if (appConfig.useLocal()) {
+            result = result && localLock.release(lockKey);
+        }
+
+        metrics.lockReleased(lockKey);
+        releaseLocal(lockKey);
+        if (result) {
+            LocalLockTable.DetachedOwner localOwner = detachedLocal.remove(lockKey);
+            if (localOwner != null) {
+                releaseLocal(lockKey, localOwner);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Releases a lock by the token {@link #acquireLockToken} returned, on whichever replica
+     * acquired it. Each backend named in the token is released, even if another one fails.
+     *
+     * @param lockKey the key to unlock
+     * @param token the lock token
+     * @return true if the lock was released on every backend, false otherwise
+     */
+    public boolean releaseLockToken(String lockKey, String token) {
+        String[] handles = decodeToken(token);
+        if (handles == null) {
+            log.warn("Invalid lock token for: {}", lockKey);
+            return false;
+        }
+
+        boolean result = true;
+
+        if (!handles[0].isEmpty()) {
+            result &= redisLock.releaseByToken(lockKey, handles[0]);
+        }
+
+        if (!handles[1].isEmpty()) {
+            result &= zookeeperLock.releaseByToken(lockKey, handles[1]);
+        }
+
+        if (!handles[2].isEmpty()) {
+            result &= localLock.releaseByToken(lockKey, handles[2]);
+        }
+
+        metrics.lockReleasedByToken(Long.parseLong(handles[3]));
+        return result;
+    }
+
+    // The backend handles, empty for a backend not used, and the wall-clock time of the grant,
+    // joined and base64url-encoded
+    private static String encodeToken(String redisToken, String zookeeperToken, String localToken) {
+        String handles = (redisToken != null ? redisToken : "") + TOKEN_SEPARATOR
+                + (zookeeperToken != null ? zookeeperToken : "") + TOKEN_SEPARATOR
+                + (localToken != null ? localToken : "") + TOKEN_SEPARATOR
+                + System.currentTimeMillis();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(handles.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // The four parts encodeToken joined, null if the token is not one of ours
+    private static String[] decodeToken(String token) {
+        try {
+            String handles = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = handles.split(TOKEN_SEPARATOR, -1);
+            if (parts.length != 4 || !parts[3].matches("\\d{1,18}")) {
+                return null;
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Refuses before queueing locally, so callers don't pile up behind an owner that is bound to
+    // fail; the read/write locks and semaphores live on the same servers and are refused as well
+    private void checkAvailable() {
+        if (appConfig.useRedis() && redisLock.isCircuitOpen()) {
+            throw new LockUnavailableException("Redis");
+        }
+        if (appConfig.useZookeeper() && zookeeperLock.isCircuitOpen()) {
+            throw new LockUnavailableException("ZooKeeper");
+        }
+    }
+
+    // Only the local head-of-line owner goes on to the backends, the rest wait here in FIFO order
+    private boolean acquireLocal(String lockKey, long timeoutMs) {
+        if (!appConfig.isLocalQueue()) {
+            return true;
+        }
+        try {
+            return localLocks.acquire(lockKey, timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void releaseLocal(String lockKey) {
+        if (appConfig.isLocalQueue()) {
+            localLocks.release(lockKey);
+        }
+    }
+
+    private void releaseLocal(String lockKey, LocalLockTable.DetachedOwner localOwner) {
+        if (localOwner != null) {
+            localLocks.release(lockKey, localOwner);
+        }
+    }
+
+    private void releaseLocal(List<String> lockKeys) {
+        for (int i = lockKeys.size() - 1; i >= 0; i--) {
+            releaseLocal(lockKeys.get(i));
+        }
+    }
+
+    /**
+     * Acquires several locks at once using the configured strategy, all or none
+     *
+     * @param lockKeys the keys to lock
+     * @param timeoutMs the timeout for the whole batch in milliseconds
+     * @return true if every lock was acquired, false if none was
+     * @throws LockUnavailableException if a backend of the strategy is down
+     */
+    public boolean acquireAll(Collection<String> lockKeys, long timeoutMs) {
+        checkAvailable();
+        final long startTime = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        List<String> heldLocally = new ArrayList<>();
+
+        // Sorted so that overlapping batches queue up locally in the same order
+        for (String lockKey : new TreeSet<>(lockKeys)) {
+            long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+            if (!acquireLocal(lockKey, remaining)) {
+                metrics.locksAcquired(heldLocally, System.nanoTime() - startNanos, false);
+                releaseLocal(heldLocally);
+                return false;
+            }
+            heldLocally.add(lockKey);
+        }
+
+        long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+        boolean acquired = acquireAllBackend(heldLocally, remaining);
+        metrics.locksAcquired(heldLocally, System.nanoTime() - startNanos, acquired);
+        if (!acquired) {
+            releaseLocal(heldLocally);
+        }
+        return acquired;
+    }
+
+    private boolean acquireAllBackend(List<String> lockKeys, long timeoutMs) {
+        if ("both".equals(appConfig.getStrategy())) {
+            if (redisLock.acquireAll(lockKeys, timeoutMs)) {
+                if (zookeeperLock.acquireAll(lockKeys, timeoutMs)) {
+                    return true;
+                } else {
+                    redisLock.releaseAll(lockKeys);
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        } else if ("redis".equals(appConfig.getStrategy())) {
+            return redisLock.acquireAll(lockKeys, timeoutMs);
+        } else if ("zookeeper".equals(appConfig.getStrategy())) {
+            return zookeeperLock.acquireAll(lockKeys, timeoutMs);
+        } else if ("local".equals(appConfig.getStrategy())) {
+            return localLock.acquireAll(lockKeys, timeoutMs);
+        } else {
+            log.error("Invalid lock strategy: {}", appConfig.getStrategy());
+            return false;
+        }
+    }
+
+    /**
+     * Releases several locks acquired together using the configured strategy
+     *
+     * @param lockKeys the keys to unlock
+     * @return true if every lock was released, false otherwise
+     */
+    public boolean releaseAll(Collection<String> lockKeys) {
+        List<String> toRelease = new ArrayList<>(new TreeSet<>(lockKeys));
+        boolean result = true;
+
+        if (appConfig.useRedis()) {
+            result = result && redisLock.releaseAll(toRelease);
+        }
+
+        if (appConfig.useZookeeper()) {
+            result = result && zookeeperLock.releaseAll(toRelease);
+        }
+
+        if (appConfig.useLocal()) {
+            result = result && localLock.releaseAll(toRelease);
+        }
+
+        toRelease.forEach(metrics::lockReleased);
+        releaseLocal(toRelease);
+        return result;
+    }
+
+    /**
+     * Acquires several locks at once like {@link #acquireLockToken}, all or none, and hands them
+     * out as one token. On Redis the whole batch is taken by one all-or-none script per attempt;
+     * ZooKeeper has no such operation, so its keys are taken one after another in sorted order
+     * and rolled back if a later one cannot be had.
+     *
+     * @param lockKeys the keys to lock
+     * @param timeoutMs the timeout for the whole batch in milliseconds
+     * @return a future completed with a token for the whole batch, or null if no lock was acquired,
+     * or failed with {@link LockUnavailableException} if a backend of the strategy is down
+     */
+    public CompletableFuture<String> acquireAllToken(Collection<String> lockKeys, long timeoutMs) {
+        try {
+            checkAvailable();
+        } catch (LockUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final long startTime = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        List<String> keys = new ArrayList<>(new TreeSet<>(lockKeys));
+
+        return acquireLocalAll(keys, new ArrayList<>(), startTime, timeoutMs).thenCompose(localOwners -> {
+            if (localOwners == null) {
+                metrics.lockAcquired(System.nanoTime() - startNanos, false);
+                return CompletableFuture.completedFuture(null);
+            }
+            long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+            return acquireAllBackendToken(keys, remaining).whenComplete((token, e) -> {
+                metrics.lockAcquired(System.nanoTime() - startNanos, e == null && token != null);
+                // Handed out as a token, the batch leaves the local queue either way
+                for (int i = localOwners.size() - 1; i >= 0; i--) {
+                    localLocks.release(keys.get(i), localOwners.get(i));
+                }
+            });
+        });
+    }
+
+    // Queues for the keys in order without blocking; completed with the local owners, or null
+    // once one of them timed out and the ones already held were left again
+    private CompletableFuture<List<LocalLockTable.DetachedOwner>> acquireLocalAll(
+            List<String> lockKeys, List<LocalLockTable.DetachedOwner> owners, long startTime, long timeoutMs) {
+        if (!appConfig.isLocalQueue() || owners.size() == lockKeys.size()) {
+            return CompletableFuture.completedFuture(owners);
+        }
+        String lockKey = lockKeys.get(owners.size());
+        long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+        return localLocks.acquireAsync(lockKey, remaining).thenCompose(owner -> {
+            if (owner == null) {
+                for (int i = owners.size() - 1; i >= 0; i--) {
+                    localLocks.release(lockKeys.get(i), owners.get(i));
+                }
+                return CompletableFuture.completedFuture(null);
+            }
+            owners.add(owner);
+            return acquireLocalAll(lockKeys, owners, startTime, timeoutMs);
+        });
+    }
+
+    private CompletableFuture<String> acquireAllBackendToken(List<String> lockKeys, long timeoutMs) {
+        if ("both".equals(appConfig.getStrategy())) {
+            final long startTime = System.currentTimeMillis();
+            return redisLock.acquireAllToken(lockKeys, timeoutMs).thenCompose(redisToken -> {
+                if (redisToken == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+                return acquireEachToken(zookeeperLock, lockKeys, new ArrayList<>(), System.currentTimeMillis(), remaining)
+                        .thenApply(zookeeperTokens -> {
+                            if (zookeeperTokens == null) {
+                                // Roll back off the callback thread, the release is a blocking call
+                                scheduler.execute(() -> redisLock.releaseAllByToken(lockKeys, redisToken));
+                                return null;
+                            }
+                            return encodeToken(redisToken, joinHandles(zookeeperTokens), null);
+                        });
+            });
+        } else if ("redis".equals(appConfig.getStrategy())) {
+            return redisLock.acquireAllToken(lockKeys, timeoutMs)
+                    .thenApply(redisToken -> redisToken != null ? encodeToken(redisToken, null, null) : null);
+        } else if ("zookeeper".equals(appConfig.getStrategy())) {
+            return acquireEachToken(zookeeperLock, lockKeys, new ArrayList<>(), System.currentTimeMillis(), timeoutMs)
+                    .thenApply(tokens -> tokens != null ? encodeToken(null, joinHandles(tokens), null) : null);
+        } else if ("local".equals(appConfig.getStrategy())) {
+            return acquireEachToken(localLock, lockKeys, new ArrayList<>(), System.currentTimeMillis(), timeoutMs)
+                    .thenApply(tokens -> tokens != null ? encodeToken(null, null, joinHandles(tokens)) : null);
+        } else {
+            log.error("Invalid lock strategy: {}", appConfig.getStrategy());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    // One key after another on a backend without an all-or-none operation; completed with the
+    // detached tokens in key order, or null once a key could not be had and the rest was rolled back
+    private CompletableFuture<List<String>> acquireEachToken(DistributedLock lock, List<String> lockKeys,
+                                                             List<String> tokens, long startTime, long timeoutMs) {
+        if (tokens.size() == lockKeys.size()) {
+            return CompletableFuture.completedFuture(tokens);
+        }
+        String lockKey = lockKeys.get(tokens.size());
+        long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+        return lock.acquireAsync(lockKey, remaining).handle((acquired, e) -> {
+            if (e == null && acquired) {
+                tokens.add(lock.detach(lockKey));
+                return acquireEachToken(lock, lockKeys, tokens, startTime, timeoutMs);
+            }
+            if (e != null) {
+                log.error("Error acquiring {} lock: {}", lock.getType(), lockKey, e);
+            }
+            if (!tokens.isEmpty()) {
+                log.debug("Failed to acquire lock {}, rolling back {} acquired: {}", lockKey, tokens.size(), lockKeys);
+                // Roll back off the callback thread, the releases are blocking calls
+                scheduler.execute(() -> releaseEachByToken(lock, lockKeys.subList(0, tokens.size()), tokens));
+            }
+            return CompletableFuture.<List<String>>completedFuture(null);
+        }).thenCompose(next -> next);
+    }
+
+    /**
+     * Releases several locks by the token {@link #acquireAllToken} returned for them. Each backend
+     * named in the token is released, even if another one fails.
+     *
+     * @param lockKeys the keys of the batch
+     * @param token the batch token
+     * @return true if every lock was released, false otherwise
+     */
+    public boolean releaseAllToken(Collection<String> lockKeys, String token) {
+        String[] handles = decodeToken(token);
+        if (handles == null) {
+            log.warn("Invalid batch lock token for: {}", lockKeys);
+            return false;
+        }
+        List<String> keys = new ArrayList<>(new TreeSet<>(lockKeys));
+
+        boolean result = true;
+
+        if (!handles[0].isEmpty()) {
+            result &= redisLock.releaseAllByToken(keys, handles[0]);
+        }
+
+        if (!handles[1].isEmpty()) {
+            result &= releaseEachByToken(zookeeperLock, keys, splitHandles(handles[1]));
+        }
+
+        if (!handles[2].isEmpty()) {
+            result &= releaseEachByToken(localLock, keys, splitHandles(handles[2]));
+        }
+
+        long grantedAtMillis = Long.parseLong(handles[3]);
+        for (int i = 0; i < keys.size(); i++) {
+            metrics.lockReleasedByToken(grantedAtMillis);
+        }
+        return result;
+    }
+
+    private static boolean releaseEachByToken(DistributedLock lock, List<String> lockKeys, List<String> tokens) {
+        if (tokens == null || tokens.size() != lockKeys.size()) {
+            log.warn("Batch lock token does not match the {} keys: {}", lockKeys.size(), lockKeys);
+            return false;
+        }
+        boolean result = true;
+        for (int i = lockKeys.size() - 1; i >= 0; i--) {
+            result &= lock.releaseByToken(lockKeys.get(i), tokens.get(i));
+        }
+        return result;
+    }
+
+    // Per-key handles of a batch, each base64url-encoded so the separator cannot occur in them
+    private static String joinHandles(List<String> handles) {
+        StringBuilder joined = new StringBuilder();
+        for (String handle : handles) {
+            if (joined.length() > 0) {
+                joined.append(BATCH_TOKEN_SEPARATOR);
+            }
+            joined.append(Base64.getUrlEncoder().withoutPadding().encodeToString(handle.getBytes(StandardCharsets.UTF_8)));
+        }
+        return joined.toString();
+    }
+
+    private static List<String> splitHandles(String joined) {
+        List<String> handles = new ArrayList<>();
+        try {
+            for (String handle : joined.split(Pattern.quote(BATCH_TOKEN_SEPARATOR), -1)) {
+                handles.add(new String(Base64.getUrlDecoder().decode(handle), StandardCharsets.UTF_8));
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return handles;
+    }
+
+    /**
+     * Acquires a shared read lock with a timeout using the configured strategy. Readers are not
+     * queued locally, so any number of them can hold the key at once. Every acquire is a hold of
+     * its own, released by its token from any thread or replica. The wait runs on the blocking
+     * pool of the scheduler, never on the caller's thread.
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs the timeout in milliseconds
+     * @return a future completed with the token of the hold, or null if the lock was not acquired,
+     * failed with {@link LockUnavailableException} if a backend of the strategy is down, or with
+     * {@link UnsupportedOperationException} under the local strategy
+     */
+    public CompletableFuture<String> acquireReadLock(String lockKey, long timeoutMs) {
+        return acquireReadWriteAsync(lockKey, timeoutMs, false);
+    }
+
+    /**
+     * Releases a read lock by the token {@link #acquireReadLock} returned
+     *
+     * @param lockKey the key to unlock
+     * @param token the token of the hold
+     * @return true if lock was released, false otherwise
+     */
+    public boolean releaseReadLock(String lockKey, String token) {
+        return releaseReadWrite(lockKey, token, false);
+    }
+
+    /**
+     * Acquires an exclusive write lock with a timeout using the configured strategy, released by
+     * its token from any thread or replica. Waits off the caller's thread like {@link #acquireReadLock}.
+     *
+     * @param lockKey the key to lock
+     * @param timeoutMs the timeout in milliseconds
+     * @return a future completed with the token of the hold, or null if the lock was not acquired,
+     * failed with {@link LockUnavailableException} if a backend of the strategy is down, or with
+     * {@link UnsupportedOperationException} under the local strategy
+     */
+    public CompletableFuture<String> acquireWriteLock(String lockKey, long timeoutMs) {
+        return acquireReadWriteAsync(lockKey, timeoutMs, true);
+    }
+
+    /**
+     * Releases a write lock by the token {@link #acquireWriteLock} returned
+     *
+     * @param lockKey the key to unlock
+     * @param token the token of the hold
+     * @return true if lock was released, false otherwise
+     */
+    public boolean releaseWriteLock(String lockKey, String token) {
+        return releaseReadWrite(lockKey, token, true);
+    }
+
+    private CompletableFuture<String> acquireReadWriteAsync(String lockKey, long timeoutMs, boolean write) {
+        if (appConfig.useLocal()) {
+            return CompletableFuture.failedFuture(
+                    new UnsupportedOperationException("Read/write locks are not supported by the local strategy"));
+        }
+        try {
+            checkAvailable();
+        } catch (LockUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return scheduler.supplyBlocking(() -> acquireReadWrite(lockKey, timeoutMs, write));
+    }
+
+    private String acquireReadWrite(String lockKey, long timeoutMs, boolean write) {
+        if ("both".equals(appConfig.getStrategy())) {
+            final long startTime = System.currentTimeMillis();
+            String redisToken = acquireSide(redisReadWriteLock, lockKey, timeoutMs, write);
+            if (redisToken == null) {
+                return null;
+            }
+            long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+            String zookeeperToken = acquireSide(zookeeperReadWriteLock, lockKey, remaining, write);
+            if (zookeeperToken != null) {
+                return encodeToken(redisToken, zookeeperToken, null);
+            }
+            releaseSide(redisReadWriteLock, lockKey, redisToken, write);
+            return null;
+        } else if ("redis".equals(appConfig.getStrategy())) {
+            String redisToken = acquireSide(redisReadWriteLock, lockKey, timeoutMs, write);
+            return redisToken != null ? encodeToken(redisToken, null, null) : null;
+        } else if ("zookeeper".equals(appConfig.getStrategy())) {
+            String zookeeperToken = acquireSide(zookeeperReadWriteLock, lockKey, timeoutMs, write);
+            return zookeeperToken != null ? encodeToken(null, zookeeperToken, null) : null;
+        } else {
+            log.error("Invalid lock strategy: {}", appConfig.getStrategy());
+            return null;
+        }
+    }
+
+    private boolean releaseReadWrite(String lockKey, String token, boolean write) {
+        String[] handles = decodeToken(token);
+        if (handles == null) {
+            log.warn("Invalid read/write lock token for: {}", lockKey);
+            return false;
+        }
+
+        boolean result = true;
+
+        if (!handles[0].isEmpty()) {
+            result &= releaseSide(redisReadWriteLock, lockKey, handles[0], write);
+        }
+
+        if (!handles[1].isEmpty()) {
+            result &= releaseSide(zookeeperReadWriteLock, lockKey, handles[1], write);
+        }
+
+        return result;
+    }
+
+    private static String acquireSide(DistributedReadWriteLock lock, String lockKey, long timeoutMs, boolean write) {
+        return write ? lock.acquireWrite(lockKey, timeoutMs) : lock.acquireRead(lockKey, timeoutMs);
+    }
+
+    private static boolean releaseSide(DistributedReadWriteLock lock, String lockKey, String token, boolean write) {
+        return write ? lock.releaseWrite(lockKey, token) : lock.releaseRead(lockKey, token);
+    }
+
+    /**
+     * Acquires permits of a counting semaphore with a timeout using the configured strategy. The
+     * semaphore has {@code lock.semaphore-permits} permits, so every caller agrees on the count.
+     * The wait runs on the blocking pool of the scheduler, never on the caller's thread.
+     *
+     * @param semaphoreKey the key of the semaphore
+     * @param permits the number of permits to acquire
+     * @param timeoutMs the timeout in milliseconds
+     * @return a future completed with the token of the permits, or null if they were not acquired,
+     * failed with {@link LockUnavailableException} if a backend of the strategy is down, or with
+     * {@link UnsupportedOperationException} under the local strategy
+     */
+    public CompletableFuture<String> acquireSemaphore(String semaphoreKey, int permits, long timeoutMs) {
+        if (appConfig.useLocal()) {
+            return CompletableFuture.failedFuture(
+                    new UnsupportedOperationException("Semaphores are not supported by the local strategy"));
+        }
+        try {
+            checkAvailable();
+        } catch (LockUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return scheduler.supplyBlocking(() -> acquireSemaphoreBlocking(semaphoreKey, permits, timeoutMs));
+    }
+
+    private String acquireSemaphoreBlocking(String semaphoreKey, int permits, long timeoutMs) {
+        final int maxPermits = appConfig.getSemaphorePermits();
+
+        if ("both".equals(appConfig.getStrategy())) {
+            final long startTime = System.currentTimeMillis();
+            String redisToken = redisSemaphore.acquire(semaphoreKey, permits, maxPermits, timeoutMs);
+            if (redisToken == null) {
+                return null;
+            }
+            long remaining = Math.max(0, timeoutMs - (System.currentTimeMillis() - startTime));
+            String zookeeperToken = zookeeperSemaphore.acquire(semaphoreKey, permits, maxPermits, remaining);
+            if (zookeeperToken != null) {
+                return encodeToken(redisToken, zookeeperToken, null);
+            }
+            redisSemaphore.release(semaphoreKey, redisToken);
+            return null;
+        } else if ("redis".equals(appConfig.getStrategy())) {
+            String redisToken = redisSemaphore.acquire(semaphoreKey, permits, maxPermits, timeoutMs);
+            return redisToken != null ? encodeToken(redisToken, null, null) : null;
+        } else if ("zookeeper".equals(appConfig.getStrategy())) {
+            String zookeeperToken = zookeeperSemaphore.acquire(semaphoreKey, permits, maxPermits, timeoutMs);
+            return zookeeperToken != null ? encodeToken(null, zookeeperToken, null) : null;
+        } else {
+            log.error("Invalid lock strategy: {}", appConfig.getStrategy());
+            return null;
+        }
+    }
+
+    /**
+     * Releases the permits of a counting semaphore by the token {@link #acquireSemaphore} returned.
+     * Each backend named in the token is released, even if another one fails.
+     *
+     * @param semaphoreKey the key of the semaphore
+     * @param token the token of the permits
+     * @return true if the permits were released, false otherwise
+     */
+    public boolean releaseSemaphore(String semaphoreKey, String token) {
+        String[] handles = decodeToken(token);
+        if (handles == null) {
+            log.warn("Invalid semaphore token for: {}", semaphoreKey);
+            return false;
+        }
+
+        boolean result = true;
+
+        if (!handles[0].isEmpty()) {
+            result &= redisSemaphore.release(semaphoreKey, handles[0]);
+        }
+
+        if (!handles[1].isEmpty()) {
+            result &= zookeeperSemaphore.release(semaphoreKey, handles[1]);
+        }
+
         return result;
     }
 
+    /**
+     * @return the number of permits of every semaphore
+     */
+    public int getSemaphorePermits() {
+        return appConfig.getSemaphorePermits();
+    }
+
     /**
      * Checks if a lock is held using the configured strategy
      *
@@ -119,17 +987,55 @@ public class LockService {
      */
     public boolean isLocked(String lockKey) {
         if ("both".equals(appConfig.getStrategy())) {
-            return redisLock.isLocked(lockKey) && zookeeperLock.isLocked(lockKey);
+            // Both lookups in flight at once, ZooKeeper in the background and Redis here, so the
+            // shared scheduler never waits on either backend
+            CompletableFuture<Boolean> zookeeperLocked = zookeeperLock.isLockedAsync(lockKey);
+            boolean redisLocked = redisLock.isLocked(lockKey);
+            return zookeeperLocked.join() && redisLocked;
         } else if ("redis".equals(appConfig.getStrategy())) {
             return redisLock.isLocked(lockKey);
         } else if ("zookeeper".equals(appConfig.getStrategy())) {
             return zookeeperLock.isLocked(lockKey);
+        } else if ("local".equals(appConfig.getStrategy())) {
+            return localLock.isLocked(lockKey);
         } else {
             log.error("Invalid lock strategy: {}", appConfig.getStrategy());
             return false;
         }
     }
 
+    /**
+     * Picks the backend whose locks are listed
+     *
+     * @param backend redis, zookeeper or local, null for the configured strategy (Redis with both)
+     * @return the backend name
+     * @throws IllegalArgumentException if the backend is unknown
+     */
+    public String resolveListBackend(String backend) {
+        if (backend == null) {
+            return appConfig.useLocal() ? "local" : appConfig.useRedis() ? "redis" : "zookeeper";
+        }
+        if (!"redis".equals(backend) && !"zookeeper".equals(backend) && !"local".equals(backend)) {
+            throw new IllegalArgumentException("Unknown lock backend: " + backend);
+        }
+        return backend;
+    }
+
+    /**
+     * Lists the held locks of one backend a page at a time, see {@link DistributedLock#listLocks}
+     *
+     * @param backend redis, zookeeper or local, as returned by {@link #resolveListBackend}
+     * @param cursor where to continue, null for the first page
+     * @param limit the number of entries to aim for
+     * @param sink receives each entry as it is read
+     * @return the cursor of the next page, null when there are no more locks
+     */
+    public String listLocks(String backend, String cursor, int limit, Consumer<LockEntry> sink) {
+        String resolved = resolveListBackend(backend);
+        DistributedLock lock = "redis".equals(resolved) ? redisLock : "local".equals(resolved) ? localLock : zookeeperLock;
+        return lock.listLocks(cursor, limit, sink);
+    }
+
     /**
      * Gets information about the lock system
      *
@@ -140,6 +1046,19 @@ public class LockService {
         info.put("strategy", appConfig.getStrategy());
         info.put("usingRedis", appConfig.useRedis());
         info.put("usingZookeeper", appConfig.useZookeeper());
+        info.put("usingLocal", appConfig.useLocal());
+        info.put("parallelBoth", appConfig.isParallelBoth());
+        info.put("localQueue", appConfig.isLocalQueue());
+        info.put("localKeys", localLocks.size());
+        if (appConfig.useRedis()) {
+            info.put("redisCircuit", redisLock.getCircuitState());
+        }
+        if (appConfig.useZookeeper()) {
+            info.put("zookeeperCircuit", zookeeperLock.getCircuitState());
+        }
+        if (appConfig.useLocal()) {
+            info.put("localLocks", localLock.size());
+        }
         return info;
     }
 }
\ No newline at end of file
@@ -0,0 +1,258 @@
+package com.distlock.benchmark;
+
+import com.distlock.DistLockApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fppt.jedismock.RedisServer;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.apache.curator.test.TestingServer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the {@code /api/lock} REST endpoints with skewed contention and reports acquire latency.
+ * <p>
+ * Each of {@code concurrency} clients loops: pick a key out of {@code keys} with a Zipfian
+ * distribution of exponent {@code skew} (0 is uniform), acquire it, hold it for {@code holdMs}
+ * and release it with the returned token. Acquires that are not granted within
+ * {@code timeoutMs} come back as 409 and are counted as conflicts. The clients are closed-loop,
+ * so a slow server also lowers the offered load; compare runs at the same concurrency.
+ * <p>
+ * Without {@code url} the application is started in this JVM against an embedded ZooKeeper and
+ * an in-process Redis server, so nothing has to be running:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.distlock.benchmark.LoadGenerator \
+ *     -Dexec.args="strategy=both concurrency=64 keys=1000 skew=0.99 holdMs=5 durationSec=30"
+ * </pre>
+ * Arguments are {@code name=value} pairs: {@code url}, {@code strategy}, {@code concurrency},
+ * {@code keys}, {@code skew}, {@code holdMs}, {@code timeoutMs}, {@code durationSec} and
+ * {@code log}. Per-second interval histograms in milliseconds, tagged {@code acquire},
+ * {@code conflict} and {@code release}, are written as an HdrHistogram log to {@code log}
+ * (default {@code target/loadgen.hlog}) for HistogramLogAnalyzer or HistogramLogProcessor.
+ */
+public class LoadGenerator {
+
+    // Latencies above this are clamped, far beyond any sensible acquire timeout
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("Expected name=value, got: " + arg);
+                return;
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        final String url = options.getOrDefault("url", "");
+        final String strategy = options.getOrDefault("strategy", "both");
+        final int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        final int keys = Integer.parseInt(options.getOrDefault("keys", "1000"));
+        final double skew = Double.parseDouble(options.getOrDefault("skew", "0.99"));
+        final long holdMs = Long.parseLong(options.getOrDefault("holdMs", "5"));
+        final long timeoutMs = Long.parseLong(options.getOrDefault("timeoutMs", "1000"));
+        final int durationSec = Integer.parseInt(options.getOrDefault("durationSec", "30"));
+        final File logFile = new File(options.getOrDefault("log", "target/loadgen.hlog"));
+
+        if (!url.isEmpty()) {
+            run(url, concurrency, keys, skew, holdMs, timeoutMs, durationSec, logFile);
+            return;
+        }
+
+        try (TestingServer zookeeperServer = new TestingServer()) {
+            RedisServer redisServer = RedisServer.newRedisServer();
+            redisServer.start();
+            // Command line arguments take precedence over application.properties
+            ConfigurableApplicationContext context = SpringApplication.run(DistLockApplication.class,
+                    "--server.port=0",
+                    "--redis.host=" + redisServer.getHost(),
+                    "--redis.port=" + redisServer.getBindPort(),
+                    "--zookeeper.connection-string=" + zookeeperServer.getConnectString(),
+                    "--lock.strategy=" + strategy,
+                    "--logging.level.root=WARN",
+                    "--logging.level.com.distlock=WARN");
+            try {
+                String port = context.getEnvironment().getProperty("local.server.port");
+                run("http://localhost:" + port, concurrency, keys, skew, holdMs, timeoutMs, durationSec, logFile);
+            } finally {
+                context.close();
+                redisServer.stop();
+            }
+        }
+    }
+
+    private static void run(String url, int concurrency, int keys, double skew, long holdMs, long timeoutMs,
+                            int durationSec, File logFile) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        ZipfianKeys keyChooser = new ZipfianKeys(keys, skew);
+
+        Recorder acquireLatency = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        Recorder conflictLatency = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        Recorder releaseLatency = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        AtomicLong acquired = new AtomicLong();
+        AtomicLong conflicts = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSec);
+        List<Thread> clients = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                    String lockKey = "load-" + keyChooser.next();
+                    try {
+                        long start = System.nanoTime();
+                        HttpResponse<String> response = post(client, url + "/api/lock/acquire/" + lockKey + "?timeoutMs=" + timeoutMs);
+                        long latency = System.nanoTime() - start;
+                        int status = response.statusCode();
+                        if (status == 409) {
+                            conflicts.incrementAndGet();
+                            conflictLatency.recordValue(Math.min(latency, HIGHEST_TRACKABLE_NANOS));
+                            continue;
+                        } else if (status != 200) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        acquired.incrementAndGet();
+                        acquireLatency.recordValue(Math.min(latency, HIGHEST_TRACKABLE_NANOS));
+
+                        String token = JSON.readTree(response.body()).path("token").asText();
+
+                        Thread.sleep(holdMs);
+                        start = System.nanoTime();
+                        if (post(client, url + "/api/lock/release/" + lockKey + "?token=" + token).statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                        releaseLatency.recordValue(Math.min(System.nanoTime() - start, HIGHEST_TRACKABLE_NANOS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }, "loadgen-" + i);
+            thread.setDaemon(true);
+            clients.add(thread);
+        }
+
+        if (logFile.getParentFile() != null) {
+            logFile.getParentFile().mkdirs();
+        }
+        Histogram acquireTotal = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        Histogram conflictTotal = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        try (PrintStream logStream = new PrintStream(logFile, "UTF-8")) {
+            HistogramLogWriter logWriter = new HistogramLogWriter(logStream);
+            final long startMillis = System.currentTimeMillis();
+            logWriter.outputLogFormatVersion();
+            logWriter.outputStartTime(startMillis);
+            logWriter.setBaseTime(startMillis);
+            logWriter.outputComment("url=" + url + " concurrency=" + concurrency + " keys=" + keys + " skew=" + skew
+                    + " holdMs=" + holdMs + " timeoutMs=" + timeoutMs);
+            logWriter.outputLegend();
+
+            final long startNanos = System.nanoTime();
+            clients.forEach(Thread::start);
+            System.out.printf("%6s %10s %10s %10s %10s %10s%n", "sec", "acquired/s", "409/s", "p50 ms", "p99 ms", "p999 ms");
+            for (int second = 1; clients.stream().anyMatch(Thread::isAlive); second++) {
+                TimeUnit.MILLISECONDS.sleep(Math.max(0,
+                        TimeUnit.NANOSECONDS.toMillis(startNanos + TimeUnit.SECONDS.toNanos(second) - System.nanoTime())));
+                Histogram acquireInterval = writeInterval(logWriter, acquireLatency, "acquire");
+                Histogram conflictInterval = writeInterval(logWriter, conflictLatency, "conflict");
+                writeInterval(logWriter, releaseLatency, "release");
+                acquireTotal.add(acquireInterval);
+                conflictTotal.add(conflictInterval);
+                System.out.printf("%6d %10d %10d %10.2f %10.2f %10.2f%n", second,
+                        acquireInterval.getTotalCount(), conflictInterval.getTotalCount(),
+                        millis(acquireInterval, 50), millis(acquireInterval, 99), millis(acquireInterval, 99.9));
+            }
+            double elapsedSec = (System.nanoTime() - startNanos) / 1e9;
+
+            long attempts = acquired.get() + conflicts.get();
+            System.out.printf("%nacquired=%d conflicts=%d errors=%d elapsed=%.1fs%n",
+                    acquired.get(), conflicts.get(), errors.get(), elapsedSec);
+            System.out.printf("throughput=%.1f acquires/s conflictRate=%.2f%%%n",
+                    acquired.get() / elapsedSec, attempts == 0 ? 0.0 : 100.0 * conflicts.get() / attempts);
+            System.out.printf("acquire latency ms: p50=%.2f p99=%.2f p999=%.2f max=%.2f%n",
+                    millis(acquireTotal, 50), millis(acquireTotal, 99), millis(acquireTotal, 99.9),
+                    acquireTotal.getMaxValue() / 1e6);
+            System.out.printf("409 latency ms: p50=%.2f p99=%.2f%n", millis(conflictTotal, 50), millis(conflictTotal, 99));
+            System.out.println("HdrHistogram log: " + logFile.getPath());
+        }
+    }
+
+    private static HttpResponse<String> post(HttpClient client, String uri) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Histogram writeInterval(HistogramLogWriter logWriter, Recorder recorder, String tag) {
+        Histogram interval = recorder.getIntervalHistogram();
+        interval.setTag(tag);
+        logWriter.outputIntervalHistogram(interval);
+        return interval;
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    /**
+     * Draws key indexes 0..n-1 with probability proportional to 1 / (rank + 1)^skew, so index 0
+     * is the hottest key
+     */
+    static final class ZipfianKeys {
+
+        private final double[] cumulative;
+
+        ZipfianKeys(int n, double skew) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, skew);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int next() {
+            double u = ThreadLocalRandom.current().nextDouble();
+            int low = 0;
+            int high = cumulative.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < u) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+package com.distlock.benchmark;
+
+import com.distlock.lock.DistributedLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acquire/release cost of a single lock backend, without the local queue or the strategy
+ * logic of {@link com.distlock.service.LockService} in front of it.
+ * <p>
+ * Reports throughput and sampled latency percentiles. The contended benchmarks have all threads
+ * hand one hot key back and forth, so they measure the release-to-grant handoff of the backend.
+ * Run with {@code mvn -P benchmark test-compile exec:exec -Djmh.args="LockBackendBenchmark"}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockBackendBenchmark {
+
+    private static final long TIMEOUT_MS = 30000;
+
+    @Param({"redis", "zookeeper", "local"})
+    public String backend;
+
+    // Redis servers the lock keys are sharded over, e.g. -p redisShards=1,2,4 to see the scaling
+    @Param({"1"})
+    public int redisShards;
+
+    // Coalesce concurrent Redis commands into pipelines. The in-process server does not set
+    // TCP_NODELAY, so any pipeline of two or more replies stalls on delayed ACKs there; measure
+    // batching against a real Redis with LoadGenerator url=... instead
+    @Param({"false"})
+    public boolean redisBatching;
+
+    private LockCluster cluster;
+    private DistributedLock lock;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cluster = LockCluster.start(backend, false, redisShards, redisBatching);
+        lock = cluster.backend(backend);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cluster.close();
+    }
+
+    /**
+     * A key of its own per benchmark thread, so acquires never wait on each other
+     */
+    @State(Scope.Thread)
+    public static class ThreadKey {
+        final String lockKey = "bench-" + UUID.randomUUID();
+    }
+
+    @Benchmark
+    public boolean uncontended(ThreadKey key) {
+        return lock.acquire(key.lockKey, TIMEOUT_MS) && lock.release(key.lockKey);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean uncontended8(ThreadKey key) {
+        return lock.acquire(key.lockKey, TIMEOUT_MS) && lock.release(key.lockKey);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean contended2() {
+        return handoff();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean contended4() {
+        return handoff();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean contended8() {
+        return handoff();
+    }
+
+    @Benchmark
+    public boolean isLocked(ThreadKey key) {
+        return lock.isLocked(key.lockKey);
+    }
+
+    private boolean handoff() {
+        return lock.acquire("bench-hot", TIMEOUT_MS) && lock.release("bench-hot");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,171 @@
+package com.distlock.benchmark;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.RedisConfig;
+import com.distlock.config.ZookeeperConfig;
+import com.distlock.lock.DistributedLock;
+import com.distlock.lock.LocalLock;
+import com.distlock.lock.LocalLockTable;
+import com.distlock.lock.LockMetrics;
+import com.distlock.lock.LockScheduler;
+import com.distlock.lock.RedisCommandBatcher;
+import com.distlock.lock.RedisLock;
+import com.distlock.lock.RedisLockNotifier;
+import com.distlock.lock.RedisLockWatchdog;
+import com.distlock.lock.RedisQuorum;
+import com.distlock.lock.RedisShards;
+import com.distlock.lock.RedisReadWriteLock;
+import com.distlock.lock.RedisSemaphore;
+import com.distlock.lock.ZookeeperLock;
+import com.distlock.lock.ZookeeperLockMirror;
+import com.distlock.lock.ZookeeperReadWriteLock;
+import com.distlock.lock.ZookeeperSemaphore;
+import com.distlock.service.LockService;
+import com.github.fppt.jedismock.RedisServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.test.TestingServer;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The whole lock stack wired by hand against an embedded ZooKeeper ({@link TestingServer}) and
+ * an in-process Redis server speaking RESP on a local port, so benchmarks exercise the real
+ * client code and network path without external services.
+ */
+final class LockCluster implements AutoCloseable {
+
+    private final TestingServer zookeeperServer;
+    private final RedisServer redisServer;
+    private final List<RedisServer> shardServers = new ArrayList<>();
+    private final CuratorFramework curatorClient;
+    private final JedisConnectionFactory connectionFactory;
+    private final RedisLockNotifier notifier;
+    private final RedisQuorum quorum;
+    private final RedisShards shards;
+    private final RedisCommandBatcher batcher;
+    private final ZookeeperLockMirror mirror;
+    private final LocalLock localLock;
+    private final LockScheduler scheduler;
+
+    final RedisLock redisLock;
+    final ZookeeperLock zookeeperLock;
+    final LockService lockService;
+
+    private LockCluster(String strategy, boolean localQueue, int redisShards, boolean redisBatching) throws Exception {
+        zookeeperServer = new TestingServer();
+        redisServer = RedisServer.newRedisServer();
+        redisServer.start();
+
+        AppConfig appConfig = new AppConfig();
+        appConfig.setStrategy(strategy);
+        appConfig.setLocalQueue(localQueue);
+
+        RedisConfig redisConfig = new RedisConfig();
+        redisConfig.setHost(redisServer.getHost());
+        redisConfig.setPort(redisServer.getBindPort());
+        // Contended waiters should wait for the holder rather than give up after a few polls
+        redisConfig.getLock().setRetryTimes(Integer.MAX_VALUE);
+        redisConfig.getLock().setRetryInterval(50);
+        redisConfig.getLock().setBatchEnabled(redisBatching);
+        // A single shard is redis.host itself, more spread the lock keys over servers of their own
+        if (redisShards > 1) {
+            List<String> nodes = new ArrayList<>();
+            for (int i = 0; i < redisShards; i++) {
+                RedisServer shardServer = RedisServer.newRedisServer();
+                shardServer.start();
+                shardServers.add(shardServer);
+                nodes.add(shardServer.getHost() + ":" + shardServer.getBindPort());
+            }
+            redisConfig.getShards().setNodes(nodes);
+        }
+
+        ZookeeperConfig zookeeperConfig = new ZookeeperConfig();
+        zookeeperConfig.setConnectionString(zookeeperServer.getConnectString());
+
+        curatorClient = zookeeperConfig.curatorClient();
+        curatorClient.start();
+        curatorClient.blockUntilConnected();
+
+        connectionFactory = redisConfig.createConnectionFactory(redisConfig.getHost(), redisConfig.getPort());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        RedisTemplate<String, String> redisTemplate = RedisConfig.createTemplate(connectionFactory);
+
+        LockMetrics metrics = new LockMetrics(new SimpleMeterRegistry(), appConfig);
+        scheduler = new LockScheduler(appConfig);
+        shards = new RedisShards(redisConfig, redisTemplate);
+        notifier = new RedisLockNotifier(connectionFactory, shards);
+        notifier.ensureSubscribed();
+        quorum = new RedisQuorum(redisConfig);
+        RedisLockWatchdog watchdog = new RedisLockWatchdog(shards, redisConfig, quorum);
+
+        batcher = new RedisCommandBatcher(redisConfig, metrics);
+        redisLock = new RedisLock(shards, batcher, redisConfig, notifier, watchdog, scheduler, quorum, metrics);
+        mirror = new ZookeeperLockMirror(curatorClient, zookeeperConfig);
+        zookeeperLock = new ZookeeperLock(curatorClient, zookeeperConfig, scheduler, metrics, mirror);
+        localLock = new LocalLock(appConfig, scheduler, metrics);
+        lockService = new LockService(redisLock, zookeeperLock, localLock,
+                new RedisReadWriteLock(redisTemplate, redisConfig, notifier),
+                new ZookeeperReadWriteLock(curatorClient, zookeeperConfig),
+                new RedisSemaphore(redisTemplate, redisConfig, notifier),
+                new ZookeeperSemaphore(curatorClient, zookeeperConfig),
+                new LocalLockTable(scheduler), scheduler, metrics, appConfig);
+    }
+
+    /**
+     * Starts the servers and the lock stack
+     *
+     * @param strategy the lock strategy, redis, zookeeper, both or local
+     * @param localQueue whether same-key callers queue in-JVM before the backends
+     * @return the running cluster
+     */
+    static LockCluster start(String strategy, boolean localQueue) throws Exception {
+        return new LockCluster(strategy, localQueue, 1, false);
+    }
+
+    /**
+     * Starts the servers and the lock stack with plain lock keys sharded over several Redis servers
+     *
+     * @param strategy the lock strategy, redis, zookeeper, both or local
+     * @param localQueue whether same-key callers queue in-JVM before the backends
+     * @param redisShards the number of Redis servers for lock keys
+     * @param redisBatching whether concurrent Redis lock commands are coalesced into pipelines
+     * @return the running cluster
+     */
+    static LockCluster start(String strategy, boolean localQueue, int redisShards, boolean redisBatching) throws Exception {
+        return new LockCluster(strategy, localQueue, redisShards, redisBatching);
+    }
+
+    /**
+     * @param backend the backend name, redis, zookeeper or local
+     * @return the lock backend
+     */
+    DistributedLock backend(String backend) {
+        if ("local".equals(backend)) {
+            return localLock;
+        }
+        return "redis".equals(backend) ? redisLock : zookeeperLock;
+    }
+
+    @Override
+    public void close() throws Exception {
+        scheduler.shutdown();
+        quorum.shutdown();
+        notifier.shutdown();
+        batcher.shutdown();
+        shards.shutdown();
+        mirror.shutdown();
+        localLock.shutdown();
+        connectionFactory.destroy();
+        curatorClient.close();
+        redisServer.stop();
+        for (RedisServer shardServer : shardServers) {
+            shardServer.stop();
+        }
+        zookeeperServer.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.distlock.benchmark;
+
+import com.distlock.service.LockService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of {@link LockService} for each {@code lock.strategy}, with and without the
+ * in-JVM queue in front of the backends.
+ * <p>
+ * Reports throughput and sampled latency percentiles.
+ * Run with {@code mvn -P benchmark test-compile exec:exec -Djmh.args="LockServiceBenchmark"}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockServiceBenchmark {
+
+    private static final long TIMEOUT_MS = 30000;
+
+    @Param({"redis", "zookeeper", "both", "local"})
+    public String strategy;
+
+    @Param({"true", "false"})
+    public boolean localQueue;
+
+    private LockCluster cluster;
+    private LockService lockService;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cluster = LockCluster.start(strategy, localQueue);
+        lockService = cluster.lockService;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cluster.close();
+    }
+
+    /**
+     * A key of its own per benchmark thread, so acquires never wait on each other
+     */
+    @State(Scope.Thread)
+    public static class ThreadKey {
+        final String lockKey = "bench-" + UUID.randomUUID();
+    }
+
+    @Benchmark
+    public boolean uncontended(ThreadKey key) {
+        return lockService.acquireLock(key.lockKey, TIMEOUT_MS) && lockService.releaseLock(key.lockKey);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean contended4() {
+        return lockService.acquireLock("bench-hot", TIMEOUT_MS) && lockService.releaseLock("bench-hot");
+    }
+
+    @Benchmark
+    public boolean isLocked(ThreadKey key) {
+        return lockService.isLocked(key.lockKey);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.distlock.benchmark;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.ZookeeperConfig;
+import com.distlock.lock.LocalLockTable;
+import com.distlock.lock.LockMetrics;
+import com.distlock.lock.LockScheduler;
+import com.distlock.lock.ZookeeperLock;
+import com.distlock.lock.ZookeeperLockMirror;
+import com.distlock.service.LockService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares blocking lock waits on platform threads against virtual threads.
+ * <p>
+ * Starts {@code waiters} threads that all block in {@link LockService#acquireLock(String, long)}
+ * on {@code keys} hot keys against an embedded ZooKeeper, hold each lock briefly and release it.
+ * Reports throughput, peak heap and peak platform thread count. Run each mode in its own JVM;
+ * the virtual mode needs JDK 21+:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.distlock.benchmark.VirtualThreadWaitersBenchmark \
+ *     -Dexec.args="virtual 10000 100 1"
+ * </pre>
+ * Arguments: mode ({@code platform} or {@code virtual}), waiters, keys, hold time in ms.
+ */
+public class VirtualThreadWaitersBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final boolean virtual = args.length > 0 && "virtual".equals(args[0]);
+        final int waiters = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        final int keys = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        final long holdMs = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        AppConfig appConfig = new AppConfig();
+        appConfig.setStrategy("zookeeper");
+        appConfig.setVirtualThreads(virtual);
+        appConfig.setLocalWaitTime(600000);
+
+        try (TestingServer server = new TestingServer();
+             CuratorFramework curatorClient = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100))) {
+            curatorClient.start();
+            curatorClient.blockUntilConnected();
+
+            LockScheduler scheduler = new LockScheduler(appConfig);
+            if (virtual && !scheduler.isVirtualThreads()) {
+                System.err.println("Virtual threads need JDK 21+, running on " + Runtime.version());
+                return;
+            }
+            LockMetrics metrics = new LockMetrics(new SimpleMeterRegistry(), appConfig);
+            ZookeeperConfig zookeeperConfig = new ZookeeperConfig();
+            ZookeeperLock zookeeperLock = new ZookeeperLock(curatorClient, zookeeperConfig, scheduler, metrics,
+                    new ZookeeperLockMirror(curatorClient, zookeeperConfig));
+            LockService lockService = new LockService(null, zookeeperLock, null, null, null, null, null, new LocalLockTable(scheduler), scheduler,
+                    metrics, appConfig);
+
+            Executor executor = virtual
+                    ? new VirtualThreadTaskExecutor("bench-virtual-")
+                    : task -> new Thread(task, "bench-platform").start();
+
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            System.gc();
+            final long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+            AtomicLong peakHeap = new AtomicLong(baselineHeap);
+
+            CountDownLatch done = new CountDownLatch(waiters);
+            AtomicInteger acquired = new AtomicInteger();
+            long start = System.nanoTime();
+            for (int i = 0; i < waiters; i++) {
+                final String lockKey = "bench-" + (i % keys);
+                executor.execute(() -> {
+                    try {
+                        if (lockService.acquireLock(lockKey, 600000)) {
+                            acquired.incrementAndGet();
+                            Thread.sleep(holdMs);
+                            lockService.releaseLock(lockKey);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+
+            while (done.getCount() > 0) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                Thread.sleep(50);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            scheduler.shutdown();
+
+            System.out.printf("mode=%s waiters=%d keys=%d holdMs=%d%n", virtual ? "virtual" : "platform", waiters, keys, holdMs);
+            System.out.printf("acquired=%d elapsed=%.2fs throughput=%.1f ops/s%n",
+                    acquired.get(), elapsedNanos / 1e9, acquired.get() / (elapsedNanos / 1e9));
+            System.out.printf("peakHeapDelta=%.1f MiB peakPlatformThreads=%d%n",
+                    (peakHeap.get() - baselineHeap) / (1024.0 * 1024.0), threads.getPeakThreadCount());
+        }
+    }
+}
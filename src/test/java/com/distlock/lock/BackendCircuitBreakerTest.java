@@ -0,0 +1,175 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackendCircuitBreakerTest {
+
+    private SimpleMeterRegistry registry;
+    private BackendCircuitBreaker breaker;
+
+    @BeforeEach
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        LockMetrics metrics = new LockMetrics(registry, new AppConfig());
+        breaker = new BackendCircuitBreaker("Redis", true, 4, 50, 100, 2, metrics.redis());
+    }
+
+    @Test
+    public void testOpensWhenTheFailureRateOfAWindowIsReached() {
+        // Arrange
+        call(false);
+        call(true);
+        call(false);
+        assertEquals(BackendCircuitBreaker.State.CLOSED, breaker.getState());
+
+        // Act
+        call(true);
+
+        // Assert
+        assertEquals(BackendCircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertNull(breaker.tryAcquirePermission());
+        assertEquals(1.0, registry.get("distlock.backend.rejected").tag("backend", "redis").counter().count());
+    }
+
+    @Test
+    public void testStaysClosedBelowTheFailureRate() {
+        // Act
+        for (int i = 0; i < 8; i++) {
+            call(i % 4 == 0);
+        }
+
+        // Assert
+        assertEquals(BackendCircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotNull(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testHalfOpenTrialsCloseTheBreaker() throws Exception {
+        // Arrange
+        open();
+        Thread.sleep(150);
+        assertFalse(breaker.isOpen());
+
+        // Act
+        BackendCircuitBreaker.Permit first = breaker.tryAcquirePermission();
+        BackendCircuitBreaker.Permit second = breaker.tryAcquirePermission();
+        // Only as many trial calls as needed to decide are let through
+        assertNull(breaker.tryAcquirePermission());
+        assertEquals(BackendCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.recordCall();
+        first.finished(true);
+        breaker.recordCall();
+        second.finished(true);
+
+        // Assert
+        assertEquals(BackendCircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotNull(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testOnlyTrialCallsCountWhileHalfOpen() throws Exception {
+        // Arrange
+        open();
+        Thread.sleep(150);
+        BackendCircuitBreaker.Permit trial = breaker.tryAcquirePermission();
+
+        // Act
+        // Releases and lookups go through without a permit and must not close the breaker
+        for (int i = 0; i < 4; i++) {
+            breaker.recordCall();
+        }
+
+        // Assert
+        assertEquals(BackendCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        trial.finished(true);
+        assertEquals(BackendCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testTrialWithoutVerdictFreesItsSlot() throws Exception {
+        // Arrange
+        open();
+        Thread.sleep(150);
+        BackendCircuitBreaker.Permit interrupted = breaker.tryAcquirePermission();
+        BackendCircuitBreaker.Permit first = breaker.tryAcquirePermission();
+        assertNull(breaker.tryAcquirePermission());
+
+        // Act
+        interrupted.finished(false);
+        BackendCircuitBreaker.Permit second = breaker.tryAcquirePermission();
+
+        // Assert
+        assertNotNull(second);
+        first.finished(true);
+        second.finished(true);
+        assertEquals(BackendCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testFailedTrialOpensTheBreakerAgain() throws Exception {
+        // Arrange
+        open();
+        Thread.sleep(150);
+        assertNotNull(breaker.tryAcquirePermission());
+
+        // Act
+        breaker.recordFailure();
+        breaker.recordCall();
+
+        // Assert
+        assertEquals(BackendCircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testDisconnectedHoldsTheBreakerOpenUntilConnected() throws Exception {
+        // Act
+        breaker.disconnected();
+        Thread.sleep(150);
+
+        // Assert
+        assertTrue(breaker.isOpen());
+        assertNull(breaker.tryAcquirePermission());
+        breaker.connected();
+        assertEquals(BackendCircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotNull(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testDisabledBreakerNeverOpens() {
+        // Arrange
+        LockMetrics metrics = new LockMetrics(registry, new AppConfig());
+        breaker = new BackendCircuitBreaker("Redis", false, 4, 50, 100, 2, metrics.redis());
+
+        // Act
+        for (int i = 0; i < 8; i++) {
+            call(true);
+        }
+        breaker.disconnected();
+
+        // Assert
+        assertEquals(BackendCircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotNull(breaker.tryAcquirePermission());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        assertTrue(breaker.isOpen());
+    }
+
+    private void call(boolean failed) {
+        assertNotNull(breaker.tryAcquirePermission());
+        if (failed) {
+            breaker.recordFailure();
+        }
+        breaker.recordCall();
+    }
+}
\ No newline at end of file
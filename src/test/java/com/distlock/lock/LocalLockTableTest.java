@@ -0,0 +1,151 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalLockTableTest {
+
+    private LockScheduler scheduler;
+    private LocalLockTable localLocks;
+
+    @BeforeEach
+    public void setup() {
+        scheduler = new LockScheduler(new AppConfig());
+        localLocks = new LocalLockTable(scheduler);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testAcquireTimesOutWhileHeld() throws Exception {
+        // Arrange
+        assertTrue(localLocks.acquire("test-lock", 100));
+
+        // Act
+        boolean[] result = new boolean[1];
+        Thread contender = new Thread(() -> {
+            try {
+                result[0] = localLocks.acquire("test-lock", 100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        contender.start();
+        contender.join();
+
+        // Assert
+        assertFalse(result[0]);
+        assertTrue(localLocks.release("test-lock"));
+        assertEquals(0, localLocks.size());
+    }
+
+    @Test
+    public void testWaitersAreHandedTheLockInOrder() throws Exception {
+        // Arrange
+        assertTrue(localLocks.acquire("test-lock", 100));
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+
+        for (int i = 0; i < 3; i++) {
+            final int id = i;
+            new Thread(() -> {
+                try {
+                    if (localLocks.acquire("test-lock", 5000)) {
+                        order.add(id);
+                        localLocks.release("test-lock");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+            // Let each waiter enqueue before the next one
+            Thread.sleep(50);
+        }
+
+        // Act
+        assertTrue(localLocks.release("test-lock"));
+
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(0, 1, 2), order);
+        assertEquals(0, localLocks.size());
+    }
+
+    @Test
+    public void testSameThreadAcquireIsNotReentrant() throws Exception {
+        // Arrange
+        assertTrue(localLocks.acquire("test-lock", 100));
+
+        // Act
+        final long startNanos = System.nanoTime();
+        boolean reacquired = localLocks.acquire("test-lock", 5000);
+
+        // Assert
+        assertFalse(reacquired);
+        // Refused at once rather than waiting for itself
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1));
+        assertTrue(localLocks.release("test-lock"));
+        assertFalse(localLocks.release("test-lock"));
+        assertEquals(0, localLocks.size());
+    }
+
+    @Test
+    public void testAsyncAcquireIsGrantedOnReleaseAndReleasableByItsOwner() throws Exception {
+        // Arrange
+        assertTrue(localLocks.acquire("test-lock", 100));
+
+        // Act
+        CompletableFuture<LocalLockTable.DetachedOwner> granted = localLocks.acquireAsync("test-lock", 5000);
+        CompletableFuture<LocalLockTable.DetachedOwner> expired = localLocks.acquireAsync("test-lock", 50);
+        assertNull(expired.get(5, TimeUnit.SECONDS));
+        assertFalse(granted.isDone());
+        assertTrue(localLocks.release("test-lock"));
+
+        // Assert
+        LocalLockTable.DetachedOwner owner = granted.get(5, TimeUnit.SECONDS);
+        assertNotNull(owner);
+        boolean[] released = new boolean[2];
+        Thread other = new Thread(() -> {
+            // A stray release without the owner must not free it
+            released[0] = localLocks.release("test-lock");
+            released[1] = localLocks.release("test-lock", owner);
+        });
+        other.start();
+        other.join();
+        assertFalse(released[0]);
+        assertTrue(released[1]);
+        assertFalse(localLocks.release("test-lock", owner));
+        assertEquals(0, localLocks.size());
+    }
+
+    @Test
+    public void testReleaseByNonOwnerIsRejected() throws Exception {
+        // Arrange
+        assertTrue(localLocks.acquire("test-lock", 100));
+
+        // Act
+        boolean[] result = new boolean[1];
+        Thread other = new Thread(() -> result[0] = localLocks.release("test-lock"));
+        other.start();
+        other.join();
+
+        // Assert
+        assertFalse(result[0]);
+        assertTrue(localLocks.release("test-lock"));
+    }
+}
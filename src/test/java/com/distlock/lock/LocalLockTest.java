@@ -0,0 +1,239 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalLockTest {
+
+    private LockScheduler scheduler;
+    private LocalLock localLock;
+
+    @BeforeEach
+    public void setup() {
+        AppConfig appConfig = new AppConfig();
+        appConfig.setStrategy("local");
+        appConfig.setLocalTtl(30000);
+        scheduler = new LockScheduler(appConfig);
+        localLock = new LocalLock(appConfig, scheduler, new LockMetrics(new SimpleMeterRegistry(), appConfig));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        localLock.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testAcquireAndRelease() {
+        assertTrue(localLock.acquire("test-lock", 1000));
+        assertTrue(localLock.isLocked("test-lock"));
+
+        assertTrue(localLock.release("test-lock"));
+        assertFalse(localLock.isLocked("test-lock"));
+        assertFalse(localLock.release("test-lock"));
+        assertEquals(0, localLock.size());
+    }
+
+    @Test
+    public void testConcurrentAcquirerTimesOutWhileHeld() throws Exception {
+        // Arrange
+        assertTrue(localLock.acquire("test-lock", 1000));
+
+        // Act
+        boolean[] result = new boolean[1];
+        Thread contender = new Thread(() -> result[0] = localLock.acquire("test-lock", 200));
+        contender.start();
+        contender.join();
+
+        // Assert
+        assertFalse(result[0]);
+        assertTrue(localLock.isLocked("test-lock"));
+        assertTrue(localLock.release("test-lock"));
+        assertEquals(0, localLock.size());
+    }
+
+    @Test
+    public void testReleaseHandsLockToParkedWaiter() throws Exception {
+        // Arrange
+        assertTrue(localLock.acquire("test-lock", 1000));
+        CountDownLatch granted = new CountDownLatch(1);
+        boolean[] released = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            if (localLock.acquire("test-lock", 5000)) {
+                granted.countDown();
+                released[0] = localLock.release("test-lock");
+            }
+        });
+        waiter.start();
+        Thread.sleep(100);
+        assertEquals(1, granted.getCount());
+
+        // Act
+        assertTrue(localLock.release("test-lock"));
+
+        // Assert
+        assertTrue(granted.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertTrue(released[0]);
+        assertFalse(localLock.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testAsyncAcquireWaitsForBlockingHolder() throws Exception {
+        // Arrange
+        assertTrue(localLock.acquire("test-lock", 1000));
+
+        // Act
+        CompletableFuture<Boolean> acquired = localLock.acquireAsync("test-lock", 5000);
+        Thread.sleep(100);
+        assertFalse(acquired.isDone());
+        assertTrue(localLock.release("test-lock"));
+
+        // Assert
+        assertTrue(acquired.get(5, TimeUnit.SECONDS));
+        assertTrue(localLock.isLocked("test-lock"));
+        assertTrue(localLock.release("test-lock"));
+        assertFalse(localLock.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testAsyncAcquireTimesOut() throws Exception {
+        // Arrange
+        assertTrue(localLock.acquire("test-lock", 1000));
+
+        // Act
+        CompletableFuture<Boolean> acquired = localLock.acquireAsync("test-lock", 200);
+
+        // Assert
+        assertFalse(acquired.get(5, TimeUnit.SECONDS));
+        assertTrue(localLock.release("test-lock"));
+        assertEquals(0, localLock.size());
+    }
+
+    @Test
+    public void testDetachedLockIsReleasedByTokenFromAnotherThread() throws Exception {
+        // Arrange
+        assertTrue(localLock.acquireAsync("test-lock", 1000).get(5, TimeUnit.SECONDS));
+        String token = localLock.detach("test-lock");
+        assertNotNull(token);
+        assertTrue(localLock.isLocked("test-lock"));
+
+        // Act
+        boolean[] released = new boolean[3];
+        Thread other = new Thread(() -> {
+            released[0] = localLock.releaseByToken("other-lock", token);
+            released[1] = localLock.releaseByToken("test-lock", token);
+            released[2] = localLock.releaseByToken("test-lock", token);
+        });
+        other.start();
+        other.join();
+
+        // Assert
+        assertFalse(released[0]);
+        assertTrue(released[1]);
+        assertFalse(released[2]);
+        assertFalse(localLock.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testExpiredLeaseIsHandedToWaiter() throws Exception {
+        // Arrange
+        AppConfig appConfig = new AppConfig();
+        appConfig.setLocalTtl(100);
+        LocalLock shortLock = new LocalLock(appConfig, scheduler, new LockMetrics(new SimpleMeterRegistry(), appConfig));
+        try {
+            assertTrue(shortLock.acquireAsync("test-lock", 1000).get(5, TimeUnit.SECONDS));
+            String token = shortLock.detach("test-lock");
+
+            // Act
+            CompletableFuture<Boolean> acquired = shortLock.acquireAsync("test-lock", 5000);
+
+            // Assert
+            assertTrue(acquired.get(5, TimeUnit.SECONDS));
+            // The first holder's lease is gone, its token does not free the waiter's lock
+            assertFalse(shortLock.releaseByToken("test-lock", token));
+            assertTrue(shortLock.isLocked("test-lock"));
+            shortLock.detach("test-lock");
+            Thread.sleep(300);
+            assertFalse(shortLock.isLocked("test-lock"));
+            assertEquals(0, shortLock.size());
+        } finally {
+            shortLock.shutdown();
+        }
+    }
+
+    @Test
+    public void testLockHeldInThisJvmOutlivesTheLease() throws Exception {
+        // Arrange
+        AppConfig appConfig = new AppConfig();
+        appConfig.setLocalTtl(100);
+        LocalLock shortLock = new LocalLock(appConfig, scheduler, new LockMetrics(new SimpleMeterRegistry(), appConfig));
+        try {
+            assertTrue(shortLock.acquire("thread-lock", 1000));
+            assertTrue(shortLock.acquireAsync("async-lock", 1000).get(5, TimeUnit.SECONDS));
+
+            // Act
+            Thread.sleep(300);
+
+            // Assert
+            assertTrue(shortLock.isLocked("thread-lock"));
+            assertTrue(shortLock.isLocked("async-lock"));
+            assertTrue(shortLock.release("thread-lock"));
+            assertTrue(shortLock.release("async-lock"));
+            assertEquals(0, shortLock.size());
+        } finally {
+            shortLock.shutdown();
+        }
+    }
+
+    @Test
+    public void testAcquireAllRollsBackWhenOneKeyIsHeld() throws Exception {
+        // Arrange
+        Thread holder = new Thread(() -> localLock.acquire("lock-b", 1000));
+        holder.start();
+        holder.join();
+
+        // Act
+        boolean acquired = localLock.acquireAll(List.of("lock-c", "lock-a", "lock-b"), 200);
+
+        // Assert
+        assertFalse(acquired);
+        assertFalse(localLock.isLocked("lock-a"));
+        assertFalse(localLock.isLocked("lock-c"));
+        assertTrue(localLock.isLocked("lock-b"));
+    }
+
+    @Test
+    public void testListLocksPagesInKeyOrder() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            assertTrue(localLock.acquire("lock-" + i, 1000));
+        }
+
+        // Act
+        List<LockEntry> first = new ArrayList<>();
+        String cursor = localLock.listLocks(null, 3, first::add);
+        List<LockEntry> second = new ArrayList<>();
+        String last = localLock.listLocks(cursor, 3, second::add);
+
+        // Assert
+        assertEquals(List.of("lock-0", "lock-1", "lock-2"), first.stream().map(LockEntry::getLockKey).collect(Collectors.toList()));
+        assertEquals(List.of("lock-3", "lock-4"), second.stream().map(LockEntry::getLockKey).collect(Collectors.toList()));
+        assertNull(last);
+        // Held in this JVM, the lock has no lease
+        assertEquals(-1, first.get(0).getTtlMs());
+        assertNotNull(first.get(0).getOwner());
+    }
+}
\ No newline at end of file
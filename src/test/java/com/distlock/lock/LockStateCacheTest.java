@@ -0,0 +1,65 @@
+package com.distlock.lock;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockStateCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedKeyIsEvicted() {
+        // Arrange
+        LockStateCache cache = new LockStateCache(2);
+        cache.put("lock:a", true, 60000, cache.generation("lock:a"));
+        cache.put("lock:b", false, 60000, cache.generation("lock:b"));
+        assertEquals(Boolean.TRUE, cache.get("lock:a"));
+
+        // Act
+        cache.put("lock:c", true, 60000, cache.generation("lock:c"));
+
+        // Assert
+        assertEquals(2, cache.size());
+        assertEquals(Boolean.TRUE, cache.get("lock:a"));
+        assertNull(cache.get("lock:b"));
+        assertEquals(Boolean.TRUE, cache.get("lock:c"));
+    }
+
+    @Test
+    public void testReadRacingWithInvalidationIsNotCached() {
+        // Arrange
+        LockStateCache cache = new LockStateCache(10);
+        long generation = cache.generation("lock:a");
+
+        // Act
+        cache.invalidate("lock:a");
+        cache.put("lock:a", true, 60000, generation);
+
+        // Assert
+        assertNull(cache.get("lock:a"));
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        // Arrange
+        LockStateCache cache = new LockStateCache(10);
+        cache.put("lock:a", true, 50, cache.generation("lock:a"));
+        assertEquals(Boolean.TRUE, cache.get("lock:a"));
+
+        // Act
+        Thread.sleep(100);
+
+        // Assert
+        assertNull(cache.get("lock:a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testDisabledCacheStoresNothing() {
+        LockStateCache cache = new LockStateCache(0);
+
+        cache.put("lock:a", true, 60000, cache.generation("lock:a"));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("lock:a"));
+    }
+}
\ No newline at end of file
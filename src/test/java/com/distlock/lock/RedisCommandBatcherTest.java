@@ -0,0 +1,146 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.RedisConfig;
+import com.github.fppt.jedismock.RedisServer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RedisCommandBatcherTest {
+
+    private static final int CALLERS = 32;
+
+    private static final DefaultRedisScript<Long> DELETE_IF_OWNED = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    private static final DefaultRedisScript<Long> INCREMENT = new DefaultRedisScript<>(
+            "return redis.call('incr', KEYS[1])", Long.class);
+
+    private RedisServer server;
+    private JedisConnectionFactory connectionFactory;
+    private RedisTemplate<String, String> redisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private RedisCommandBatcher batcher;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = RedisServer.newRedisServer();
+        server.start();
+
+        RedisConfig redisConfig = new RedisConfig();
+        redisConfig.getLock().setBatchEnabled(true);
+        // Wide enough that callers released by one barrier land in the same pipeline
+        redisConfig.getLock().setBatchWindowMicros(5000);
+
+        connectionFactory = redisConfig.createConnectionFactory(server.getHost(), server.getBindPort());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = RedisConfig.createTemplate(connectionFactory);
+
+        meterRegistry = new SimpleMeterRegistry();
+        batcher = new RedisCommandBatcher(redisConfig, new LockMetrics(meterRegistry, new AppConfig()));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        batcher.shutdown();
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Test
+    public void testConcurrentCommandsShareRoundTripsAndGetTheirOwnReplies() throws Exception {
+        // Arrange
+        redisTemplate.opsForValue().set("lock:key-0", "someone-else");
+        CyclicBarrier start = new CyclicBarrier(CALLERS);
+
+        // Act
+        List<CompletableFuture<List<Object>>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            final String key = "lock:key-" + i;
+            final String value = "owner-" + i;
+            callers.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                boolean acquired = batcher.setIfAbsent(redisTemplate, key, value, 30000);
+                boolean held = batcher.hasKey(redisTemplate, key);
+                Long released = batcher.eval(redisTemplate, DELETE_IF_OWNED, key, value);
+                return List.of(acquired, held, released);
+            }, task -> new Thread(task).start()));
+        }
+
+        // Assert
+        for (int i = 0; i < CALLERS; i++) {
+            List<Object> replies = callers.get(i).get(10, TimeUnit.SECONDS);
+            // key-0 was already held by someone else, so it is neither granted nor released
+            assertEquals(List.of(i != 0, true, i != 0 ? 1L : 0L), replies);
+        }
+        assertEquals("someone-else", redisTemplate.opsForValue().get("lock:key-0"));
+        assertFalse(redisTemplate.hasKey("lock:key-1"));
+
+        DistributionSummary batches = meterRegistry.get("distlock.redis.batch.size").summary();
+        assertEquals(CALLERS * 3, (long) batches.totalAmount());
+        assertTrue(batches.count() < CALLERS, "expected coalescing, got " + batches.count() + " pipelines");
+    }
+
+    @Test
+    public void testFailedCommandOnlyFailsItsOwnCaller() throws Exception {
+        // Arrange
+        redisTemplate.opsForValue().set("lock:not-a-number", "owner");
+        CyclicBarrier start = new CyclicBarrier(CALLERS);
+
+        // Act
+        List<CompletableFuture<Long>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            final String key = i == 0 ? "lock:not-a-number" : "lock:key-" + i;
+            callers.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return batcher.eval(redisTemplate, INCREMENT, key);
+            }, task -> new Thread(task).start()));
+        }
+
+        // Assert
+        ExecutionException failed = assertThrows(ExecutionException.class, () -> callers.get(0).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(DataAccessException.class, failed.getCause());
+        for (int i = 1; i < CALLERS; i++) {
+            assertEquals(1L, callers.get(i).get(10, TimeUnit.SECONDS));
+        }
+        DistributionSummary batches = meterRegistry.get("distlock.redis.batch.size").summary();
+        assertTrue(batches.count() < CALLERS, "expected coalescing, got " + batches.count() + " pipelines");
+    }
+
+    @Test
+    public void testCommandsFailAfterShutdown() {
+        // Arrange
+        assertTrue(batcher.setIfAbsent(redisTemplate, "lock:test-lock", "owner", 30000));
+
+        // Act
+        batcher.shutdown();
+
+        // Assert
+        assertThrows(IllegalStateException.class, () -> batcher.hasKey(redisTemplate, "lock:test-lock"));
+    }
+}
\ No newline at end of file
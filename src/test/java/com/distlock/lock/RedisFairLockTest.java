@@ -0,0 +1,133 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.RedisConfig;
+import com.github.fppt.jedismock.RedisServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RedisFairLockTest {
+
+    private RedisServer server;
+    private JedisConnectionFactory connectionFactory;
+    private RedisTemplate<String, String> redisTemplate;
+    private RedisLockNotifier notifier;
+    private LockScheduler scheduler;
+    private RedisLock redisLock;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = RedisServer.newRedisServer();
+        server.start();
+
+        RedisConfig redisConfig = new RedisConfig();
+        RedisConfig.Lock lockConfig = new RedisConfig.Lock();
+        lockConfig.setRetryInterval(100);
+        lockConfig.setFair(true);
+        lockConfig.setFairWaiterTtl(1000);
+        redisConfig.setLock(lockConfig);
+
+        connectionFactory = redisConfig.createConnectionFactory(server.getHost(), server.getBindPort());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = RedisConfig.createTemplate(connectionFactory);
+
+        RedisShards singleInstance = new RedisShards(redisConfig, redisTemplate);
+        notifier = new RedisLockNotifier(connectionFactory, singleInstance);
+        notifier.ensureSubscribed();
+        scheduler = new LockScheduler(new AppConfig());
+        RedisQuorum singleNode = new RedisQuorum(redisConfig, List.of());
+        LockMetrics metrics = new LockMetrics(new SimpleMeterRegistry(), new AppConfig());
+        redisLock = new RedisLock(singleInstance, new RedisCommandBatcher(redisConfig, metrics), redisConfig, notifier,
+                new RedisLockWatchdog(singleInstance, redisConfig, singleNode), scheduler, singleNode, metrics);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+        notifier.shutdown();
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Test
+    public void testWaitersAreGrantedInArrivalOrder() throws Exception {
+        // Arrange
+        assertTrue(redisLock.acquire("test-lock", 1000));
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+
+        for (int i = 0; i < 3; i++) {
+            final int id = i;
+            new Thread(() -> {
+                if (redisLock.acquire("test-lock", 10000)) {
+                    order.add(id);
+                    redisLock.release("test-lock");
+                }
+                done.countDown();
+            }).start();
+            // Let each waiter enqueue before the next one
+            Thread.sleep(100);
+        }
+
+        // Act
+        assertTrue(redisLock.release("test-lock"));
+
+        // Assert
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(0, 1, 2), order);
+        assertFalse(redisLock.isLocked("test-lock"));
+        assertEquals(0L, redisTemplate.opsForZSet().zCard("lockqueue:test-lock"));
+    }
+
+    @Test
+    public void testReleaseHandsLockToQueuedWaiter() throws Exception {
+        // Arrange
+        assertTrue(redisLock.acquire("test-lock", 1000));
+        CompletableFuture<Boolean> waiter = redisLock.acquireAsync("test-lock", 10000);
+        Thread.sleep(200);
+        assertFalse(waiter.isDone());
+
+        // Act
+        assertTrue(redisLock.release("test-lock"));
+
+        // Assert
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertTrue(redisLock.isLocked("test-lock"));
+        // A newcomer cannot barge in while the handed-over lock is held
+        CompletableFuture<Boolean> newcomer = redisLock.acquireAsync("test-lock", 200);
+        assertFalse(newcomer.get(5, TimeUnit.SECONDS));
+        assertTrue(redisLock.release("test-lock"));
+        assertFalse(redisLock.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testWaiterThatGaveUpIsSkipped() throws Exception {
+        // Arrange
+        assertTrue(redisLock.acquire("test-lock", 1000));
+        CompletableFuture<Boolean> impatient = redisLock.acquireAsync("test-lock", 200);
+        Thread.sleep(50);
+        CompletableFuture<Boolean> patient = redisLock.acquireAsync("test-lock", 10000);
+        assertFalse(impatient.get(5, TimeUnit.SECONDS));
+
+        // Act
+        assertTrue(redisLock.release("test-lock"));
+
+        // Assert
+        assertTrue(patient.get(5, TimeUnit.SECONDS));
+        assertEquals(0L, redisTemplate.opsForZSet().zCard("lockqueue:test-lock"));
+        assertTrue(redisLock.release("test-lock"));
+    }
+}
\ No newline at end of file
@@ -1,20 +1,28 @@
 package com.distlock.lock;
 
+import com.distlock.config.AppConfig;
 import com.distlock.config.RedisConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.data.redis.core.script.RedisScript;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,8 +34,25 @@ public class RedisLockTest {
     @Mock
     private ValueOperations<String, String> valueOperations;
 
+    @Mock
+    private RedisTemplate<String, String> node1;
+
+    @Mock
+    private RedisTemplate<String, String> node2;
+
+    @Mock
+    private RedisTemplate<String, String> node3;
+
+    @Mock
+    private ValueOperations<String, String> nodeOperations;
+
     private RedisConfig redisConfig;
+    private RedisLockNotifier notifier;
+    private RedisLockWatchdog watchdog;
     private RedisLock redisLock;
+    private SimpleMeterRegistry meterRegistry;
+    private LockMetrics metrics;
+    private RedisShards singleInstance;
 
     @BeforeEach
     public void setup() {
@@ -40,7 +65,14 @@ public class RedisLockTest {
 
 
 
-        redisLock = new RedisLock(redisTemplate, redisConfig);
+        notifier = new RedisLockNotifier();
+        singleInstance = new RedisShards(redisConfig, redisTemplate);
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new LockMetrics(meterRegistry, new AppConfig());
+        RedisQuorum singleNode = new RedisQuorum(redisConfig, Collections.emptyList());
+        watchdog = new RedisLockWatchdog(singleInstance, redisConfig, singleNode);
+        redisLock = new RedisLock(singleInstance, new RedisCommandBatcher(redisConfig, metrics), redisConfig, notifier, watchdog,
+                new LockScheduler(new AppConfig()), singleNode, metrics);
     }
 
     @Test
@@ -81,6 +113,142 @@ public class RedisLockTest {
         assertFalse(result);
     }
 
+    @Test
+    public void testAcquireWakesUpOnReleaseNotification() throws Exception {
+        // Arrange
+        redisConfig.getLock().setRetryInterval(10000);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        String lockKey = "test-lock";
+        when(valueOperations.setIfAbsent(
+                eq("lock:" + lockKey),
+                anyString(),
+                anyLong(),
+                eq(TimeUnit.MILLISECONDS))
+        ).thenReturn(false, true);
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            notifier.notifyReleased("lock:" + lockKey);
+        });
+
+        // Act
+        long start = System.currentTimeMillis();
+        releaser.start();
+        boolean result = redisLock.acquire(lockKey, 20000);
+        releaser.join();
+
+        // Assert
+        assertTrue(result);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testWokenWaiterKeepsTryingPastRetryTimesUntilTimeout() throws Exception {
+        // Arrange
+        RedisLockNotifier subscribed = new RedisLockNotifier() {
+            @Override
+            public boolean isSubscribed() {
+                return true;
+            }
+        };
+        redisLock = new RedisLock(singleInstance, new RedisCommandBatcher(redisConfig, metrics), redisConfig, subscribed, watchdog,
+                new LockScheduler(new AppConfig()), new RedisQuorum(redisConfig, Collections.emptyList()), metrics);
+        redisConfig.getLock().setRetryInterval(10000);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        String lockKey = "test-lock";
+        // Lost the race on every wake-up but the last, twice as many as retry-times allows
+        when(valueOperations.setIfAbsent(
+                eq("lock:" + lockKey),
+                anyString(),
+                anyLong(),
+                eq(TimeUnit.MILLISECONDS))
+        ).thenReturn(false, false, false, false, false, false, false, true);
+
+        Thread releaser = new Thread(() -> {
+            for (int i = 0; i < 7; i++) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                subscribed.notifyReleased("lock:" + lockKey);
+            }
+        });
+
+        // Act
+        releaser.start();
+        boolean result = redisLock.acquire(lockKey, 20000);
+        releaser.join();
+
+        // Assert
+        assertTrue(result);
+    }
+
+    @Test
+    public void testAsyncAcquireIsReleasableFromAnotherThread() throws Exception {
+        // Arrange
+        redisConfig.getLock().setRetryInterval(10000);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        String lockKey = "test-lock";
+        when(valueOperations.setIfAbsent(
+                eq("lock:" + lockKey),
+                anyString(),
+                anyLong(),
+                eq(TimeUnit.MILLISECONDS))
+        ).thenReturn(false, true);
+        when(redisTemplate.execute(
+                any(RedisScript.class),
+                eq(Collections.singletonList("lock:" + lockKey)),
+                anyString())
+        ).thenReturn(1L);
+
+        // Act
+        CompletableFuture<Boolean> acquired = redisLock.acquireAsync(lockKey, 20000);
+        Thread.sleep(100);
+        notifier.notifyReleased("lock:" + lockKey);
+
+        // Assert
+        assertTrue(acquired.get(5, TimeUnit.SECONDS));
+        boolean[] released = new boolean[1];
+        Thread releaser = new Thread(() -> released[0] = redisLock.release(lockKey));
+        releaser.start();
+        releaser.join();
+        assertTrue(released[0]);
+    }
+
+    @Test
+    public void testDetachedLockIsReleasedByToken() throws Exception {
+        // Arrange
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        String lockKey = "test-lock";
+        when(valueOperations.setIfAbsent(
+                eq("lock:" + lockKey),
+                anyString(),
+                anyLong(),
+                eq(TimeUnit.MILLISECONDS))
+        ).thenReturn(true);
+        assertTrue(redisLock.acquireAsync(lockKey, 1000).get(5, TimeUnit.SECONDS));
+
+        // Act
+        String token = redisLock.detach(lockKey);
+        when(redisTemplate.execute(
+                any(RedisScript.class),
+                eq(Collections.singletonList("lock:" + lockKey)),
+                eq(token))
+        ).thenReturn(1L);
+
+        // Assert
+        assertNotNull(token);
+        // The lease of a handed-out lock runs out unless released, this JVM no longer renews it
+        assertEquals(0, watchdog.getHeldCount());
+        assertFalse(redisLock.release(lockKey));
+        assertTrue(redisLock.releaseByToken(lockKey, token));
+    }
+
     @Test
     public void testReleaseLockSuccess() {
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
@@ -112,6 +280,136 @@ public class RedisLockTest {
         assertTrue(result);
     }
 
+    @Test
+    public void testWatchdogRenewsAllLeasesInOnePipeline() {
+        // Arrange
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(
+                anyString(),
+                anyString(),
+                eq(30000L),
+                eq(TimeUnit.MILLISECONDS))
+        ).thenReturn(true);
+        assertTrue(redisLock.acquire("lock-a"));
+        assertTrue(redisLock.acquire("lock-b"));
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Collections.singletonList(List.of(1L, 0L)));
+
+        // Act
+        watchdog.renewLeases();
+
+        // Assert
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        assertEquals(1, watchdog.getHeldCount());
+    }
+
+    @Test
+    public void testQuorumWatchdogKeepsLeasesNodesDidNotAnswerFor() {
+        // Arrange
+        redisConfig.getQuorum().setNodeTimeout(1000);
+        RedisQuorum quorum = new RedisQuorum(redisConfig, List.of(node1, node2, node3));
+        RedisLockWatchdog quorumWatchdog = new RedisLockWatchdog(singleInstance, redisConfig, quorum);
+        quorumWatchdog.track("lock:test-lock", "owner-value");
+        when(node1.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Collections.singletonList(List.of(1L)), Collections.singletonList(List.of(0L)));
+        when(node2.executePipelined(any(RedisCallback.class)))
+                .thenThrow(new RuntimeException("node timed out"))
+                .thenReturn(Collections.singletonList(List.of(0L)));
+        when(node3.executePipelined(any(RedisCallback.class)))
+                .thenReturn(Collections.singletonList(List.of(0L)));
+
+        // Act
+        quorumWatchdog.renewLeases();
+        int heldAfterUnansweredTick = quorumWatchdog.getHeldCount();
+        quorumWatchdog.renewLeases();
+
+        // Assert
+        assertEquals(1, heldAfterUnansweredTick);
+        assertEquals(0, quorumWatchdog.getHeldCount());
+    }
+
+    @Test
+    public void testAcquireAllAndReleaseAllInOneScriptCall() {
+        // Arrange
+        List<String> lockKeys = List.of("lock-b", "lock-a");
+        List<String> redisKeys = List.of("lock:lock-a", "lock:lock-b");
+        when(redisTemplate.execute(
+                any(RedisScript.class),
+                eq(redisKeys),
+                anyString(),
+                anyString())
+        ).thenReturn(0L, 2L);
+
+        // Act
+        boolean acquired = redisLock.acquireAll(lockKeys, 1000);
+        boolean released = redisLock.releaseAll(lockKeys);
+
+        // Assert
+        assertTrue(acquired);
+        assertTrue(released);
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), eq(redisKeys), anyString(), anyString());
+    }
+
+    @Test
+    public void testBatchTokenIsTakenAndReleasedInOneScriptCallEach() throws Exception {
+        // Arrange
+        List<String> lockKeys = List.of("lock-b", "lock-a");
+        List<String> redisKeys = List.of("lock:lock-a", "lock:lock-b");
+        when(redisTemplate.execute(
+                any(RedisScript.class),
+                eq(redisKeys),
+                anyString(),
+                anyString())
+        ).thenReturn(0L, 2L);
+
+        // Act
+        String token = redisLock.acquireAllToken(lockKeys, 1000).get(5, TimeUnit.SECONDS);
+        boolean released = redisLock.releaseAllByToken(lockKeys, token);
+
+        // Assert
+        assertNotNull(token);
+        assertTrue(released);
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), eq(redisKeys), anyString(), anyString());
+        // Handed out, so not renewed
+        assertEquals(0, watchdog.getHeldCount());
+    }
+
+    @Test
+    public void testPartlyFailedReleaseAllKeepsTheKeysStillHeld() {
+        // Arrange
+        List<String> lockKeys = List.of("lock-b", "lock-a");
+        List<String> redisKeys = List.of("lock:lock-a", "lock:lock-b");
+        String[] lockValue = new String[1];
+        when(redisTemplate.execute(
+                any(RedisScript.class),
+                eq(redisKeys),
+                anyString(),
+                anyString())
+        ).thenAnswer(invocation -> {
+            if (lockValue[0] == null) {
+                lockValue[0] = invocation.getArgument(2);
+                return 0L;
+            }
+            // Only lock-a was released, lock-b is still ours
+            return 1L;
+        });
+        assertTrue(redisLock.acquireAll(lockKeys, 1000));
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("lock:lock-a")).thenReturn(null);
+        when(valueOperations.get("lock:lock-b")).thenAnswer(invocation -> lockValue[0]);
+
+        // Act
+        boolean released = redisLock.releaseAll(lockKeys);
+
+        // Assert
+        assertFalse(released);
+        // lock-b keeps being renewed and is still released by this thread
+        assertEquals(1, watchdog.getHeldCount());
+        when(redisTemplate.execute(any(RedisScript.class), eq(List.of("lock:lock-b")), anyString()))
+                .thenReturn(1L);
+        assertTrue(redisLock.release("lock-b"));
+    }
+
     @Test
     public void testIsLocked() {
         // Arrange
@@ -124,4 +422,70 @@ public class RedisLockTest {
         // Assert
         assertTrue(result);
     }
+
+    @Test
+    public void testQuorumAcquireNeedsMajority() {
+        // Arrange
+        redisConfig.getQuorum().setNodeTimeout(1000);
+        RedisQuorum quorum = new RedisQuorum(redisConfig, List.of(node1, node2, node3));
+        RedisLock quorumLock = new RedisLock(singleInstance, new RedisCommandBatcher(redisConfig, metrics), redisConfig, notifier,
+                new RedisLockWatchdog(singleInstance, redisConfig, quorum), new LockScheduler(new AppConfig()), quorum, metrics);
+        for (RedisTemplate<String, String> node : List.of(node1, node2, node3)) {
+            when(node.opsForValue()).thenReturn(nodeOperations);
+        }
+        when(nodeOperations.setIfAbsent(eq("lock:test-lock"), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .thenReturn(true, true, false);
+
+        // Act
+        boolean result = quorumLock.acquire("test-lock", 1000);
+
+        // Assert
+        assertTrue(result);
+    }
+
+    @Test
+    public void testQuorumAcquireBelowMajorityReleasesEverywhere() {
+        // Arrange
+        redisConfig.getQuorum().setNodeTimeout(1000);
+        RedisQuorum quorum = new RedisQuorum(redisConfig, List.of(node1, node2, node3));
+        RedisLock quorumLock = new RedisLock(singleInstance, new RedisCommandBatcher(redisConfig, metrics), redisConfig, notifier,
+                new RedisLockWatchdog(singleInstance, redisConfig, quorum), new LockScheduler(new AppConfig()), quorum, metrics);
+        for (RedisTemplate<String, String> node : List.of(node1, node2, node3)) {
+            when(node.opsForValue()).thenReturn(nodeOperations);
+        }
+        when(nodeOperations.setIfAbsent(eq("lock:test-lock"), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .thenReturn(true, false, false);
+
+        // Act
+        boolean result = quorumLock.acquire("test-lock", 50);
+
+        // Assert
+        assertFalse(result);
+        for (RedisTemplate<String, String> node : List.of(node1, node2, node3)) {
+            verify(node, atLeastOnce()).execute(any(RedisScript.class), eq(Collections.singletonList("lock:test-lock")), anyString());
+        }
+    }
+
+    @Test
+    public void testAcquireAndReleaseAreMetered() {
+        // Arrange
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("lock:test-lock"), anyString(), anyLong(), eq(TimeUnit.MILLISECONDS)))
+                .thenReturn(false, true);
+        when(redisTemplate.execute(any(RedisScript.class), eq(Collections.singletonList("lock:test-lock")), anyString()))
+                .thenReturn(1L);
+
+        // Act
+        assertTrue(redisLock.acquire("test-lock", 1000));
+        assertTrue(redisLock.release("test-lock"));
+        assertFalse(redisLock.release("test-lock"));
+
+        // Assert
+        assertEquals(1, meterRegistry.get("distlock.backend.acquire").tags("backend", "redis", "result", "acquired").timer().count());
+        assertEquals(1.0, meterRegistry.get("distlock.backend.contention").tag("backend", "redis").counter().count());
+        assertEquals(1.0, meterRegistry.get("distlock.backend.retries").tag("backend", "redis").counter().count());
+        assertEquals(3, meterRegistry.get("distlock.backend.roundtrip").tag("backend", "redis").timer().count());
+        assertEquals(2, meterRegistry.get("distlock.backend.release").tag("backend", "redis").timer().count());
+        assertEquals(1.0, meterRegistry.get("distlock.backend.release.failures").tag("backend", "redis").counter().count());
+    }
 }
\ No newline at end of file
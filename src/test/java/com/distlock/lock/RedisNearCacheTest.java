@@ -0,0 +1,138 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.RedisConfig;
+import com.github.fppt.jedismock.RedisServer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RedisNearCacheTest {
+
+    private RedisServer server;
+    private JedisConnectionFactory connectionFactory;
+    private RedisTemplate<String, String> redisTemplate;
+    private final List<RedisLockNotifier> notifiers = new ArrayList<>();
+    private final List<LockScheduler> schedulers = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private RedisLock replicaA;
+    private RedisLock replicaB;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = RedisServer.newRedisServer();
+        server.start();
+
+        RedisConfig redisConfig = new RedisConfig();
+        redisConfig.getLock().setRetryTimes(0);
+        redisConfig.getLock().setNearCacheSize(100);
+        redisConfig.getLock().setNearCacheMaxAge(60000);
+
+        connectionFactory = redisConfig.createConnectionFactory(server.getHost(), server.getBindPort());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = RedisConfig.createTemplate(connectionFactory);
+
+        meterRegistry = new SimpleMeterRegistry();
+        replicaA = replica(redisConfig, meterRegistry);
+        replicaB = replica(redisConfig, new SimpleMeterRegistry());
+    }
+
+    private RedisLock replica(RedisConfig redisConfig, SimpleMeterRegistry registry) {
+        RedisShards singleInstance = new RedisShards(redisConfig, redisTemplate);
+        RedisLockNotifier notifier = new RedisLockNotifier(connectionFactory, singleInstance);
+        notifiers.add(notifier);
+        LockScheduler scheduler = new LockScheduler(new AppConfig());
+        schedulers.add(scheduler);
+        RedisQuorum singleNode = new RedisQuorum(redisConfig, List.of());
+        LockMetrics metrics = new LockMetrics(registry, new AppConfig());
+        RedisLock redisLock = new RedisLock(singleInstance, new RedisCommandBatcher(redisConfig, metrics), redisConfig,
+                notifier, new RedisLockWatchdog(singleInstance, redisConfig, singleNode), scheduler, singleNode, metrics);
+        notifier.ensureSubscribed();
+        return redisLock;
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (LockScheduler scheduler : schedulers) {
+            scheduler.shutdown();
+        }
+        for (RedisLockNotifier notifier : notifiers) {
+            notifier.shutdown();
+        }
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Test
+    public void testRepeatedStatusQueriesAreServedFromMemory() throws Exception {
+        // Arrange
+        assertTrue(replicaB.acquire("test-lock", 1000));
+        // Let the acquire notification reach replica A so it does not drop the first cached state
+        Thread.sleep(200);
+        Counter misses = meterRegistry.get("distlock.nearcache.requests").tag("result", "miss").counter();
+        Counter hits = meterRegistry.get("distlock.nearcache.requests").tag("result", "hit").counter();
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            assertTrue(replicaA.isLocked("test-lock"));
+            assertFalse(replicaA.isLocked("other-lock"));
+        }
+
+        // Assert
+        assertEquals(2.0, misses.count());
+        assertEquals(18.0, hits.count());
+        assertTrue(replicaB.release("test-lock"));
+    }
+
+    @Test
+    public void testAcquireAndReleaseOnAnotherReplicaInvalidate() throws Exception {
+        // Arrange
+        assertFalse(replicaA.isLocked("test-lock"));
+        assertEquals(1, replicaA.getNearCacheSize());
+
+        // Act & Assert
+        assertTrue(replicaB.acquire("test-lock", 1000));
+        assertEventually(() -> replicaA.isLocked("test-lock"));
+
+        assertTrue(replicaB.release("test-lock"));
+        assertEventually(() -> !replicaA.isLocked("test-lock"));
+
+        assertTrue(replicaB.acquireAll(List.of("test-lock", "other-lock"), 1000));
+        assertEventually(() -> replicaA.isLocked("test-lock"));
+        assertTrue(replicaB.releaseAll(List.of("test-lock", "other-lock")));
+        assertEventually(() -> !replicaA.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testOwnChangesAreVisibleImmediately() {
+        // Arrange
+        assertFalse(replicaA.isLocked("test-lock"));
+
+        // Act & Assert
+        assertTrue(replicaA.acquire("test-lock", 1000));
+        assertTrue(replicaA.isLocked("test-lock"));
+        assertTrue(replicaA.release("test-lock"));
+        assertFalse(replicaA.isLocked("test-lock"));
+        assertFalse(redisTemplate.hasKey("lock:test-lock"));
+    }
+
+    // Pub/sub delivery is asynchronous
+    private static void assertEventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 5s");
+            Thread.sleep(20);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,199 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.RedisConfig;
+import com.github.fppt.jedismock.RedisServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class RedisShardsTest {
+
+    private static final int KEYS = 30000;
+
+    @SuppressWarnings("unchecked")
+    private static RedisTemplate<String, String> template() {
+        return mock(RedisTemplate.class);
+    }
+
+    @Test
+    public void testKeysAreSpreadEvenly() {
+        // Arrange
+        Map<String, RedisTemplate<String, String>> nodes = new LinkedHashMap<>();
+        for (int i = 1; i <= 3; i++) {
+            nodes.put("redis-" + i + ":6379", template());
+        }
+        RedisShards shards = new RedisShards(template(), nodes, 160);
+
+        // Act
+        Map<RedisTemplate<String, String>, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(shards.forKey("lock:key-" + i), 1, Integer::sum);
+        }
+
+        // Assert
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertEquals(KEYS / 3.0, count, KEYS * 0.05);
+        }
+    }
+
+    @Test
+    public void testAddingShardMovesOnlyItsShareOfKeys() {
+        // Arrange
+        Map<String, RedisTemplate<String, String>> nodes = new LinkedHashMap<>();
+        for (int i = 1; i <= 3; i++) {
+            nodes.put("redis-" + i + ":6379", template());
+        }
+        RedisShards before = new RedisShards(template(), nodes, 160);
+        RedisTemplate<String, String> added = template();
+        nodes.put("redis-4:6379", added);
+
+        // Act
+        RedisShards after = new RedisShards(template(), nodes, 160);
+
+        // Assert
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            RedisTemplate<String, String> shard = after.forKey("lock:key-" + i);
+            if (shard != before.forKey("lock:key-" + i)) {
+                moved++;
+                // Keys only ever move to the new shard, never between the old ones
+                assertSame(added, shard);
+            }
+        }
+        assertEquals(KEYS / 4.0, moved, KEYS * 0.05);
+    }
+
+    @Test
+    public void testOnlyPlainLockKeysAreSharded() {
+        // Arrange
+        RedisTemplate<String, String> defaultTemplate = template();
+        RedisShards shards = new RedisShards(defaultTemplate, Map.of("redis-1:6379", template()), 160);
+
+        // Act & Assert
+        assertNotSame(defaultTemplate, shards.forKey("lock:test-lock"));
+        assertSame(defaultTemplate, shards.forKey("rwlock:test-lock"));
+        assertSame(defaultTemplate, shards.forKey("semaphore:test-lock"));
+    }
+
+    @Test
+    public void testAcquireAllAcrossShardsIsAllOrNothing() throws Exception {
+        // Arrange
+        List<RedisServer> servers = new ArrayList<>();
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            RedisServer server = RedisServer.newRedisServer();
+            server.start();
+            servers.add(server);
+            nodes.add(server.getHost() + ":" + server.getBindPort());
+        }
+        RedisConfig redisConfig = new RedisConfig();
+        redisConfig.getLock().setRetryTimes(0);
+        redisConfig.getShards().setNodes(nodes);
+        RedisShards shards = new RedisShards(redisConfig, null);
+        RedisQuorum singleNode = new RedisQuorum(redisConfig, List.of());
+        LockMetrics metrics = new LockMetrics(new SimpleMeterRegistry(), new AppConfig());
+        RedisLock redisLock = new RedisLock(shards, new RedisCommandBatcher(redisConfig, metrics), redisConfig,
+                new RedisLockNotifier(), new RedisLockWatchdog(shards, redisConfig, singleNode),
+                new LockScheduler(new AppConfig()), singleNode, metrics);
+
+        try {
+            // Two keys that live on different shards
+            String first = "key-0";
+            String second = null;
+            for (int i = 1; second == null; i++) {
+                if (shards.forKey("lock:key-" + i) != shards.forKey("lock:" + first)) {
+                    second = "key-" + i;
+                }
+            }
+            final String blocked = second;
+            Thread holder = new Thread(() -> redisLock.acquire(blocked, 1000));
+            holder.start();
+            holder.join();
+
+            // Act
+            boolean acquired = redisLock.acquireAll(List.of(first, second), 100);
+
+            // Assert
+            assertFalse(acquired);
+            assertFalse(redisLock.isLocked(first));
+            assertTrue(redisLock.isLocked(second));
+            assertFalse(shards.forKey("lock:" + second).hasKey("lock:" + first));
+        } finally {
+            shards.shutdown();
+            for (RedisServer server : servers) {
+                server.stop();
+            }
+        }
+    }
+
+    @Test
+    public void testLockListingPagesOverAllShards() throws Exception {
+        // Arrange
+        List<RedisServer> servers = new ArrayList<>();
+        List<String> nodes = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            RedisServer server = RedisServer.newRedisServer();
+            server.start();
+            servers.add(server);
+            nodes.add(server.getHost() + ":" + server.getBindPort());
+        }
+        RedisConfig redisConfig = new RedisConfig();
+        redisConfig.getShards().setNodes(nodes);
+        RedisShards shards = new RedisShards(redisConfig, null);
+        RedisQuorum singleNode = new RedisQuorum(redisConfig, List.of());
+        LockMetrics metrics = new LockMetrics(new SimpleMeterRegistry(), new AppConfig());
+        RedisLock redisLock = new RedisLock(shards, new RedisCommandBatcher(redisConfig, metrics), redisConfig,
+                new RedisLockNotifier(), new RedisLockWatchdog(shards, redisConfig, singleNode),
+                new LockScheduler(new AppConfig()), singleNode, metrics);
+
+        try {
+            Set<String> held = new HashSet<>();
+            for (int i = 0; i < 25; i++) {
+                assertTrue(redisLock.acquire("key-" + i, 1000));
+                held.add("key-" + i);
+            }
+            String token = redisLock.acquireAsync("detached", 1000).get(5, TimeUnit.SECONDS) ? redisLock.detach("detached") : null;
+            held.add("detached");
+            // Not plain locks, never listed
+            shards.getInstances().get(0).opsForHash().put("lock:not-a-lock", "field", "value");
+            shards.getInstances().get(1).opsForValue().set("lockqueue:key-0", "value");
+
+            // Act
+            Map<String, LockEntry> listed = new HashMap<>();
+            int pages = 0;
+            String cursor = null;
+            do {
+                cursor = redisLock.listLocks(cursor, 7, entry -> listed.put(entry.getLockKey(), entry));
+                pages++;
+            } while (cursor != null);
+
+            // Assert
+            assertEquals(held, listed.keySet());
+            assertTrue(pages > 1);
+            assertTrue(listed.values().stream().allMatch(entry -> entry.getTtlMs() > 0));
+            assertEquals(16, listed.get("detached").getOwner().length());
+            assertNotEquals(token, listed.get("detached").getOwner());
+            assertThrows(IllegalArgumentException.class, () -> redisLock.listLocks("2:0", 7, entry -> { }));
+            assertThrows(IllegalArgumentException.class, () -> redisLock.listLocks("bogus", 7, entry -> { }));
+        } finally {
+            shards.shutdown();
+            for (RedisServer server : servers) {
+                server.stop();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,193 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.ZookeeperConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two replicas with their own ZooKeeper sessions, each with a mirror of the lock tree
+ */
+public class ZookeeperLockMirrorTest {
+
+    private TestingServer server;
+    private CuratorFramework clientA;
+    private CuratorFramework clientB;
+    private ZookeeperLockMirror mirrorA;
+    private ZookeeperLockMirror mirrorB;
+    private ZookeeperLock replicaA;
+    private ZookeeperLock replicaB;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new TestingServer();
+        ZookeeperConfig zookeeperConfig = new ZookeeperConfig();
+
+        clientA = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        clientA.start();
+        mirrorA = new ZookeeperLockMirror(clientA, zookeeperConfig);
+        replicaA = new ZookeeperLock(clientA, zookeeperConfig, new LockScheduler(new AppConfig()),
+                new LockMetrics(new SimpleMeterRegistry(), new AppConfig()), mirrorA);
+
+        clientB = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        clientB.start();
+        mirrorB = new ZookeeperLockMirror(clientB, zookeeperConfig);
+        replicaB = new ZookeeperLock(clientB, zookeeperConfig, new LockScheduler(new AppConfig()),
+                new LockMetrics(new SimpleMeterRegistry(), new AppConfig()), mirrorB);
+
+        assertEventually(() -> mirrorA.isAvailable() && mirrorB.isAvailable());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        mirrorA.shutdown();
+        mirrorB.shutdown();
+        clientA.close();
+        clientB.close();
+        server.close();
+    }
+
+    @Test
+    public void testLockHeldByAnotherReplicaIsVisible() throws Exception {
+        // Act
+        assertTrue(replicaA.acquire("test-lock", 1000));
+
+        // Assert
+        assertEventually(() -> replicaB.isLocked("test-lock"));
+        assertTrue(replicaA.release("test-lock"));
+        assertEventually(() -> !replicaB.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testHolderIsTheLowestNodeAndWaitersAreCounted() throws Exception {
+        // Arrange
+        assertTrue(replicaA.acquireAsync("test-lock", 1000).get(5, TimeUnit.SECONDS));
+        String token = replicaA.detach("test-lock");
+
+        // Act
+        CompletableFuture<Boolean> waiting = replicaB.acquireAsync("test-lock", 5000);
+        assertEventually(() -> {
+            ZookeeperLockMirror.LockHolder holder = replicaB.getHolder("test-lock");
+            return holder != null && holder.getWaiters() == 1;
+        });
+
+        // Assert
+        ZookeeperLockMirror.LockHolder holder = replicaB.getHolder("test-lock");
+        assertEquals(token, holder.getNodePath());
+        assertFalse(holder.getOwner().isEmpty());
+        assertFalse(waiting.isDone());
+
+        assertTrue(replicaA.releaseByToken("test-lock", token));
+        assertTrue(waiting.get(5, TimeUnit.SECONDS));
+        assertEventually(() -> {
+            ZookeeperLockMirror.LockHolder next = replicaA.getHolder("test-lock");
+            return next != null && next.getWaiters() == 0 && !next.getNodePath().equals(token);
+        });
+        assertTrue(replicaB.release("test-lock"));
+    }
+
+    @Test
+    public void testLockedKeysOfAllReplicasAreListed() throws Exception {
+        // Arrange
+        assertTrue(replicaA.acquire("lock-a", 1000));
+        assertTrue(replicaB.acquire("lock-b", 1000));
+        assertTrue(replicaB.acquire("nested/lock-c", 1000));
+
+        // Act & Assert
+        assertEventually(() -> replicaA.getLockedKeys().equals(List.of("lock-a", "lock-b", "nested/lock-c")));
+        assertTrue(replicaB.release("lock-b"));
+        assertEquals(List.of("lock-a", "nested/lock-c"), replicaB.getLockedKeys());
+        assertEventually(() -> replicaA.getLockedKeys().equals(List.of("lock-a", "nested/lock-c")));
+        assertTrue(replicaA.release("lock-a"));
+        assertTrue(replicaB.release("nested/lock-c"));
+    }
+
+    @Test
+    public void testLockListingIsPagedByKey() throws Exception {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            assertTrue(replicaB.acquire("key-" + i, 1000));
+        }
+        assertEventually(() -> replicaA.getLockedKeys().size() == 5);
+        ZookeeperConfig unmirrored = new ZookeeperConfig();
+        unmirrored.getLock().setMirrorEnabled(false);
+        ZookeeperLock direct = new ZookeeperLock(clientA, unmirrored, new LockScheduler(new AppConfig()),
+                new LockMetrics(new SimpleMeterRegistry(), new AppConfig()), new ZookeeperLockMirror(clientA, unmirrored));
+
+        for (ZookeeperLock lock : List.of(replicaA, direct)) {
+            // Act
+            List<LockEntry> listed = new ArrayList<>();
+            String cursor = lock.listLocks(null, 2, listed::add);
+            assertEquals("key-1", cursor);
+            cursor = lock.listLocks(cursor, 2, listed::add);
+            assertEquals("key-3", cursor);
+            assertNull(lock.listLocks(cursor, 2, listed::add));
+
+            // Assert
+            assertEquals(List.of("key-0", "key-1", "key-2", "key-3", "key-4"),
+                    listed.stream().map(LockEntry::getLockKey).collect(Collectors.toList()));
+            assertTrue(listed.stream().allMatch(entry -> entry.getTtlMs() == -1 && !entry.getOwner().isEmpty()));
+        }
+    }
+
+    @Test
+    public void testListingWithoutMirrorLooksAtBoundedKeysPerPage() throws Exception {
+        // Arrange, idle key nodes ahead of the one held lock
+        for (int i = 0; i < 5; i++) {
+            clientA.create().creatingParentsIfNeeded().forPath("/locks/idle-" + i);
+        }
+        assertTrue(replicaB.acquire("key-0", 1000));
+        ZookeeperConfig unmirrored = new ZookeeperConfig();
+        unmirrored.getLock().setMirrorEnabled(false);
+        ZookeeperLock direct = new ZookeeperLock(clientA, unmirrored, new LockScheduler(new AppConfig()),
+                new LockMetrics(new SimpleMeterRegistry(), new AppConfig()), new ZookeeperLockMirror(clientA, unmirrored));
+
+        // Act
+        List<LockEntry> listed = new ArrayList<>();
+        List<String> cursors = new ArrayList<>();
+        String cursor = null;
+        do {
+            cursor = direct.listLocks(cursor, 1, listed::add);
+            cursors.add(cursor);
+        } while (cursor != null);
+
+        // Assert, two keys looked at per page, short pages still hand out a cursor
+        assertEquals(Arrays.asList("idle-1", "idle-3", "key-0", null), cursors);
+        assertEquals(List.of("key-0"), listed.stream().map(LockEntry::getLockKey).collect(Collectors.toList()));
+        assertTrue(replicaB.release("key-0"));
+    }
+
+    @Test
+    public void testOwnReleaseIsVisibleImmediately() {
+        for (int i = 0; i < 20; i++) {
+            assertTrue(replicaA.acquire("test-lock", 1000));
+            assertTrue(replicaA.release("test-lock"));
+            assertFalse(replicaA.isLocked("test-lock"));
+            assertNull(replicaA.getHolder("test-lock"));
+        }
+    }
+
+    private static void assertEventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 5s");
+            Thread.sleep(20);
+        }
+    }
+}
\ No newline at end of file
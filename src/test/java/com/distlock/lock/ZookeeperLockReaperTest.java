@@ -0,0 +1,142 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.ZookeeperConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZookeeperLockReaperTest {
+
+    private TestingServer server;
+    private CuratorFramework curatorClient;
+    private ZookeeperConfig zookeeperConfig;
+    private ZookeeperLockMirror mirror;
+    private ZookeeperLock zookeeperLock;
+    private ZookeeperLockReaper reaper;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new TestingServer();
+        curatorClient = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        curatorClient.start();
+
+        zookeeperConfig = new ZookeeperConfig();
+        zookeeperConfig.getLock().setReaperIdleTime(0);
+        zookeeperConfig.getLock().setReaperBatchSize(4);
+
+        LockMetrics metrics = new LockMetrics(new SimpleMeterRegistry(), new AppConfig());
+        mirror = new ZookeeperLockMirror(curatorClient, zookeeperConfig);
+        zookeeperLock = new ZookeeperLock(curatorClient, zookeeperConfig, new LockScheduler(new AppConfig()), metrics, mirror);
+        reaper = new ZookeeperLockReaper(curatorClient, zookeeperConfig, mirror, metrics);
+
+        assertEventually(mirror::isAvailable);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        mirror.shutdown();
+        curatorClient.close();
+        server.close();
+    }
+
+    @Test
+    public void testIdleKeyNodesAreDeletedInBatches() throws Exception {
+        // Arrange
+        for (int i = 0; i < 10; i++) {
+            assertTrue(zookeeperLock.acquire("key-" + i, 1000));
+            assertTrue(zookeeperLock.release("key-" + i));
+        }
+        assertEventually(() -> mirror.getIdleKeys(0, 100).size() == 10);
+
+        // Act
+        int first = reaper.reap();
+        int rest = reaper.reap() + reaper.reap();
+
+        // Assert
+        assertEquals(4, first);
+        assertEquals(6, rest);
+        assertEquals(0, reaper.reap());
+        assertTrue(curatorClient.getChildren().forPath(zookeeperConfig.getLock().getBasePath()).isEmpty());
+        assertTrue(zookeeperLock.acquire("key-0", 1000));
+        assertTrue(zookeeperLock.release("key-0"));
+    }
+
+    @Test
+    public void testHeldKeyIsNotReaped() throws Exception {
+        // Arrange
+        assertTrue(zookeeperLock.acquire("held", 1000));
+        assertTrue(zookeeperLock.acquire("free", 1000));
+        assertTrue(zookeeperLock.release("free"));
+        assertEventually(() -> mirror.getIdleKeys(0, 100).contains("free"));
+
+        // Act
+        int reaped = reaper.reap();
+
+        // Assert
+        assertEquals(1, reaped);
+        assertNull(curatorClient.checkExists().forPath(pathOf("free")));
+        assertNotNull(curatorClient.checkExists().forPath(pathOf("held")));
+        assertTrue(zookeeperLock.isLocked("held"));
+        assertTrue(zookeeperLock.release("held"));
+    }
+
+    @Test
+    public void testNestedKeyParentIsReapedAfterItsChildren() throws Exception {
+        // Arrange, the parent of a held nested key fails the batch as not empty
+        assertTrue(zookeeperLock.acquire("nested/lock-c", 1000));
+        assertTrue(zookeeperLock.acquire("other", 1000));
+        assertTrue(zookeeperLock.release("other"));
+        assertEventually(() -> mirror.getIdleKeys(0, 100).contains("nested") && mirror.getIdleKeys(0, 100).contains("other"));
+
+        // Act
+        assertEquals(1, reaper.reap());
+        assertNotNull(curatorClient.checkExists().forPath(pathOf("nested/lock-c")));
+        assertTrue(zookeeperLock.release("nested/lock-c"));
+        assertEventually(() -> mirror.getIdleKeys(0, 100).contains("nested/lock-c"));
+        assertEquals(1, reaper.reap());
+        assertEventually(() -> mirror.getIdleKeys(0, 100).contains("nested"));
+        reaper.reap();
+
+        // Assert
+        assertNull(curatorClient.checkExists().forPath(pathOf("nested")));
+        assertNull(curatorClient.checkExists().forPath(pathOf("other")));
+    }
+
+    @Test
+    public void testNothingIsReapedWhenDisabled() throws Exception {
+        // Arrange
+        zookeeperConfig.getLock().setReaperEnabled(false);
+        assertTrue(zookeeperLock.acquire("test-lock", 1000));
+        assertTrue(zookeeperLock.release("test-lock"));
+        assertEventually(() -> mirror.getIdleKeys(0, 100).contains("test-lock"));
+
+        // Act
+        int reaped = reaper.reap();
+
+        // Assert
+        assertEquals(0, reaped);
+        assertNotNull(curatorClient.checkExists().forPath(pathOf("test-lock")));
+    }
+
+    private String pathOf(String lockKey) {
+        return zookeeperConfig.getLock().getBasePath() + "/" + lockKey;
+    }
+
+    private static void assertEventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met within 5s");
+            Thread.sleep(20);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,227 @@
+package com.distlock.lock;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.ZookeeperConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ZookeeperLockTest {
+
+    private TestingServer server;
+    private CuratorFramework curatorClient;
+    private ZookeeperConfig zookeeperConfig;
+    private ZookeeperLockMirror mirror;
+    private ZookeeperLock zookeeperLock;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new TestingServer();
+        curatorClient = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        curatorClient.start();
+
+        zookeeperConfig = new ZookeeperConfig();
+        ZookeeperConfig.Lock lockConfig = new ZookeeperConfig.Lock();
+        lockConfig.setMutexCacheSize(10);
+        zookeeperConfig.setLock(lockConfig);
+
+        mirror = new ZookeeperLockMirror(curatorClient, zookeeperConfig);
+        zookeeperLock = new ZookeeperLock(curatorClient, zookeeperConfig, new LockScheduler(new AppConfig()),
+                new LockMetrics(new SimpleMeterRegistry(), new AppConfig()), mirror);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        mirror.shutdown();
+        curatorClient.close();
+        server.close();
+    }
+
+    @Test
+    public void testAcquireAndRelease() {
+        assertTrue(zookeeperLock.acquire("test-lock", 1000));
+        assertTrue(zookeeperLock.isLocked("test-lock"));
+
+        assertTrue(zookeeperLock.release("test-lock"));
+        assertFalse(zookeeperLock.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testSameThreadAcquireIsNotReentrant() {
+        // Arrange
+        assertTrue(zookeeperLock.acquire("test-lock", 1000));
+
+        // Act
+        boolean reacquired = zookeeperLock.acquire("test-lock", 1000);
+
+        // Assert
+        assertFalse(reacquired);
+        assertTrue(zookeeperLock.release("test-lock"));
+        assertFalse(zookeeperLock.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testConcurrentAcquirerTimesOutWhileHeld() throws Exception {
+        // Arrange
+        assertTrue(zookeeperLock.acquire("test-lock", 1000));
+
+        // Act
+        boolean[] result = new boolean[1];
+        Thread contender = new Thread(() -> result[0] = zookeeperLock.acquire("test-lock", 200));
+        contender.start();
+        contender.join();
+
+        // Assert
+        assertFalse(result[0]);
+        assertTrue(zookeeperLock.isLocked("test-lock"));
+        assertTrue(zookeeperLock.release("test-lock"));
+    }
+
+    @Test
+    public void testAcquireAllRollsBackWhenOneKeyIsHeld() throws Exception {
+        // Arrange
+        Thread holder = new Thread(() -> zookeeperLock.acquire("lock-b", 1000));
+        holder.start();
+        holder.join();
+
+        // Act
+        boolean acquired = zookeeperLock.acquireAll(List.of("lock-c", "lock-a", "lock-b"), 200);
+
+        // Assert
+        assertFalse(acquired);
+        assertFalse(zookeeperLock.isLocked("lock-a"));
+        assertFalse(zookeeperLock.isLocked("lock-c"));
+    }
+
+    @Test
+    public void testAcquireAllAndReleaseAll() {
+        List<String> lockKeys = List.of("lock-c", "lock-a", "lock-b");
+
+        assertTrue(zookeeperLock.acquireAll(lockKeys, 1000));
+        assertTrue(zookeeperLock.isLocked("lock-a"));
+
+        assertTrue(zookeeperLock.releaseAll(lockKeys));
+        assertFalse(zookeeperLock.isLocked("lock-a"));
+    }
+
+    @Test
+    public void testAsyncAcquireWaitsForBlockingHolder() throws Exception {
+        // Arrange
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            zookeeperLock.acquire("test-lock", 1000);
+            held.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            zookeeperLock.release("test-lock");
+        });
+        holder.start();
+        held.await();
+
+        // Act
+        CompletableFuture<Boolean> acquired = zookeeperLock.acquireAsync("test-lock", 5000);
+        Thread.sleep(200);
+        assertFalse(acquired.isDone());
+        done.countDown();
+
+        // Assert
+        assertTrue(acquired.get(5, TimeUnit.SECONDS));
+        assertTrue(zookeeperLock.isLocked("test-lock"));
+        assertTrue(zookeeperLock.release("test-lock"));
+        assertFalse(zookeeperLock.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testAsyncAcquireTimesOut() throws Exception {
+        // Arrange
+        assertTrue(zookeeperLock.acquire("test-lock", 1000));
+
+        // Act
+        CompletableFuture<Boolean> acquired = zookeeperLock.acquireAsync("test-lock", 200);
+
+        // Assert
+        assertFalse(acquired.get(5, TimeUnit.SECONDS));
+        assertTrue(zookeeperLock.release("test-lock"));
+        assertTrue(zookeeperLock.acquireAsync("test-lock", 1000).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDetachedLockIsReleasedByTokenFromAnotherClient() throws Exception {
+        // Arrange
+        assertTrue(zookeeperLock.acquireAsync("test-lock", 1000).get(5, TimeUnit.SECONDS));
+        String token = zookeeperLock.detach("test-lock");
+        assertNotNull(token);
+        // Detaching hands the lock to the token, the node is still held
+        assertTrue(zookeeperLock.isLocked("test-lock"));
+
+        ZookeeperConfig otherConfig = new ZookeeperConfig();
+        otherConfig.getLock().setMirrorEnabled(false);
+        try (CuratorFramework otherClient = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100))) {
+            otherClient.start();
+            ZookeeperLock otherLock = new ZookeeperLock(otherClient, otherConfig, new LockScheduler(new AppConfig()),
+                    new LockMetrics(new SimpleMeterRegistry(), new AppConfig()), new ZookeeperLockMirror(otherClient, otherConfig));
+
+            // Act
+            assertFalse(otherLock.releaseByToken("other-lock", token));
+            boolean released = otherLock.releaseByToken("test-lock", token);
+
+            // Assert
+            assertTrue(released);
+            assertFalse(otherLock.releaseByToken("test-lock", token));
+            assertTrue(otherLock.acquire("test-lock", 1000));
+            assertTrue(otherLock.release("test-lock"));
+        }
+    }
+
+    @Test
+    public void testAsyncLockCheckReadsLockNodesInTheBackground() throws Exception {
+        // Arrange
+        assertTrue(zookeeperLock.acquire("test-lock", 1000));
+        ZookeeperLockMirror unloadedMirror = mock(ZookeeperLockMirror.class);
+        when(unloadedMirror.isEnabled()).thenReturn(true);
+        when(unloadedMirror.isAvailable()).thenReturn(false);
+        try (CuratorFramework otherClient = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100))) {
+            otherClient.start();
+            ZookeeperLock otherLock = new ZookeeperLock(otherClient, zookeeperConfig, new LockScheduler(new AppConfig()),
+                    new LockMetrics(new SimpleMeterRegistry(), new AppConfig()), unloadedMirror);
+
+            // Act
+            CompletableFuture<Boolean> held = otherLock.isLockedAsync("test-lock");
+            CompletableFuture<Boolean> missing = otherLock.isLockedAsync("other-lock");
+
+            // Assert
+            assertTrue(held.get(5, TimeUnit.SECONDS));
+            assertFalse(missing.get(5, TimeUnit.SECONDS));
+        } finally {
+            assertTrue(zookeeperLock.release("test-lock"));
+        }
+    }
+
+    @Test
+    public void testIdleMutexesAreEvicted() {
+        for (int i = 0; i < 50; i++) {
+            assertTrue(zookeeperLock.acquire("test-lock-" + i, 1000));
+            assertTrue(zookeeperLock.release("test-lock-" + i));
+        }
+
+        assertTrue(zookeeperLock.getCachedMutexCount() <= 10);
+    }
+}
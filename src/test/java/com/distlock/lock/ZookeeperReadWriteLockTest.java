@@ -0,0 +1,99 @@
+package com.distlock.lock;
+
+import com.distlock.config.ZookeeperConfig;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZookeeperReadWriteLockTest {
+
+    private TestingServer server;
+    private CuratorFramework curatorClient;
+    private ZookeeperReadWriteLock readWriteLock;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new TestingServer();
+        curatorClient = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        curatorClient.start();
+
+        readWriteLock = new ZookeeperReadWriteLock(curatorClient, new ZookeeperConfig());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        curatorClient.close();
+        server.close();
+    }
+
+    @Test
+    public void testReadersShareTheLock() throws Exception {
+        // Arrange
+        String token = readWriteLock.acquireRead("test-lock", 1000);
+        assertNotNull(token);
+
+        // Act
+        boolean[] result = new boolean[2];
+        Thread reader = new Thread(() -> {
+            String other = readWriteLock.acquireRead("test-lock", 1000);
+            result[0] = other != null;
+            result[1] = other != null && readWriteLock.releaseRead("test-lock", other);
+        });
+        reader.start();
+        reader.join();
+
+        // Assert
+        assertTrue(result[0]);
+        assertTrue(result[1]);
+        assertTrue(readWriteLock.releaseRead("test-lock", token));
+    }
+
+    @Test
+    public void testWriterWaitsForReaders() throws Exception {
+        // Arrange
+        String token = readWriteLock.acquireRead("test-lock", 1000);
+        assertNotNull(token);
+
+        // Act
+        String[] result = new String[1];
+        Thread writer = new Thread(() -> result[0] = readWriteLock.acquireWrite("test-lock", 200));
+        writer.start();
+        writer.join();
+
+        // Assert
+        assertNull(result[0]);
+        assertTrue(readWriteLock.releaseRead("test-lock", token));
+        String writeToken = readWriteLock.acquireWrite("test-lock", 1000);
+        assertNotNull(writeToken);
+        assertTrue(readWriteLock.releaseWrite("test-lock", writeToken));
+    }
+
+    @Test
+    public void testWriteLockIsNotReentrantAndReleasableByToken() throws Exception {
+        // Arrange
+        String token = readWriteLock.acquireWrite("test-lock", 1000);
+        assertNotNull(token);
+
+        // Act
+        String reentered = readWriteLock.acquireWrite("test-lock", 200);
+        boolean[] result = new boolean[1];
+        Thread other = new Thread(() -> result[0] = readWriteLock.releaseWrite("test-lock", token));
+        other.start();
+        other.join();
+
+        // Assert
+        assertNull(reentered);
+        assertTrue(result[0]);
+        assertFalse(readWriteLock.releaseWrite("other-lock", token));
+        String readToken = readWriteLock.acquireRead("test-lock", 1000);
+        assertNotNull(readToken);
+        assertFalse(readWriteLock.releaseWrite("test-lock", readToken));
+        assertTrue(readWriteLock.releaseRead("test-lock", readToken));
+    }
+}
\ No newline at end of file
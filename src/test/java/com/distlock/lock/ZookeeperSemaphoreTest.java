@@ -0,0 +1,85 @@
+package com.distlock.lock;
+
+import com.distlock.config.ZookeeperConfig;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZookeeperSemaphoreTest {
+
+    private TestingServer server;
+    private CuratorFramework curatorClient;
+    private ZookeeperSemaphore semaphore;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new TestingServer();
+        curatorClient = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        curatorClient.start();
+
+        semaphore = new ZookeeperSemaphore(curatorClient, new ZookeeperConfig());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        curatorClient.close();
+        server.close();
+    }
+
+    @Test
+    public void testPermitsUpToTheLimitAreGranted() {
+        // Arrange
+        assertNotNull(semaphore.acquire("test-semaphore", 2, 3, 1000));
+
+        // Act
+        String third = semaphore.acquire("test-semaphore", 1, 3, 1000);
+        String fourth = semaphore.acquire("test-semaphore", 1, 3, 200);
+
+        // Assert
+        assertNotNull(third);
+        assertNull(fourth);
+    }
+
+    @Test
+    public void testReleasedPermitsAreReusableFromAnyThread() throws Exception {
+        // Arrange
+        String token = semaphore.acquire("test-semaphore", 2, 2, 1000);
+        assertNotNull(token);
+
+        // Act
+        boolean[] released = new boolean[1];
+        Thread other = new Thread(() -> released[0] = semaphore.release("test-semaphore", token));
+        other.start();
+        other.join();
+
+        // Assert
+        assertTrue(released[0]);
+        assertNotNull(semaphore.acquire("test-semaphore", 2, 2, 1000));
+    }
+
+    @Test
+    public void testReleaseOnlyAppliesToThePermitsOfTheToken() {
+        // Arrange
+        String first = semaphore.acquire("test-semaphore", 1, 2, 1000);
+        String second = semaphore.acquire("test-semaphore", 1, 2, 1000);
+        assertNotNull(first);
+        assertNotNull(second);
+
+        // Act
+        boolean released = semaphore.release("test-semaphore", first);
+
+        // Assert
+        assertTrue(released);
+        assertFalse(semaphore.release("test-semaphore", first));
+        assertFalse(semaphore.release("other-semaphore", second));
+        assertFalse(semaphore.release("test-semaphore", "../locks"));
+        assertNull(semaphore.acquire("test-semaphore", 2, 2, 200));
+        assertTrue(semaphore.release("test-semaphore", second));
+    }
+}
\ No newline at end of file
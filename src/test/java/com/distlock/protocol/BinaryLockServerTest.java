@@ -0,0 +1,147 @@
+package com.distlock.protocol;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.ZookeeperConfig;
+import com.distlock.lock.LocalLockTable;
+import com.distlock.lock.LockMetrics;
+import com.distlock.lock.LockScheduler;
+import com.distlock.lock.ZookeeperLock;
+import com.distlock.lock.ZookeeperLockMirror;
+import com.distlock.service.LockService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryLockServerTest {
+
+    private TestingServer zookeeperServer;
+    private CuratorFramework curatorClient;
+    private ZookeeperLockMirror mirror;
+    private LockScheduler scheduler;
+    private BinaryLockServer server;
+    private BinaryLockClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        zookeeperServer = new TestingServer();
+        curatorClient = CuratorFrameworkFactory.newClient(zookeeperServer.getConnectString(), new RetryOneTime(100));
+        curatorClient.start();
+
+        AppConfig appConfig = new AppConfig();
+        appConfig.setStrategy("zookeeper");
+        appConfig.setBinaryEnabled(true);
+        appConfig.setBinaryPort(0);
+        scheduler = new LockScheduler(appConfig);
+        LockMetrics metrics = new LockMetrics(new SimpleMeterRegistry(), appConfig);
+        ZookeeperConfig zookeeperConfig = new ZookeeperConfig();
+        mirror = new ZookeeperLockMirror(curatorClient, zookeeperConfig);
+        ZookeeperLock zookeeperLock = new ZookeeperLock(curatorClient, zookeeperConfig, scheduler, metrics, mirror);
+        LockService lockService = new LockService(null, zookeeperLock, null, null, null, null, null, new LocalLockTable(scheduler),
+                scheduler, metrics, appConfig);
+
+        server = new BinaryLockServer(appConfig, lockService, scheduler);
+        client = BinaryLockClient.connect("localhost", server.getPort());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        client.close();
+        server.shutdown();
+        scheduler.shutdown();
+        mirror.shutdown();
+        curatorClient.close();
+        zookeeperServer.close();
+    }
+
+    @Test
+    public void testAcquireStatusAndRelease() throws Exception {
+        // Act
+        String token = client.acquire("test-lock", 1000).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertNotNull(token);
+        assertTrue(client.isLocked("test-lock").get(5, TimeUnit.SECONDS));
+        assertNull(client.acquire("test-lock", 100).get(5, TimeUnit.SECONDS));
+        assertFalse(client.release("test-lock", "not a token").get(5, TimeUnit.SECONDS));
+        assertTrue(client.release("test-lock", token).get(5, TimeUnit.SECONDS));
+        assertFalse(client.isLocked("test-lock").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitingAcquireIsPushedItsGrant() throws Exception {
+        // Arrange
+        String token = client.acquire("test-lock", 1000).get(5, TimeUnit.SECONDS);
+        try (BinaryLockClient other = BinaryLockClient.connect("localhost", server.getPort())) {
+            CompletableFuture<String> waiting = other.acquire("test-lock", 10000);
+            // Later requests on the same connection are answered while the acquire waits
+            assertTrue(other.isLocked("test-lock").get(5, TimeUnit.SECONDS));
+            assertFalse(waiting.isDone());
+
+            // Act
+            assertTrue(client.release("test-lock", token).get(5, TimeUnit.SECONDS));
+
+            // Assert
+            String granted = waiting.get(5, TimeUnit.SECONDS);
+            assertNotNull(granted);
+            assertTrue(other.release("test-lock", granted).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testManyPipelinedRequestsOnOneConnection() throws Exception {
+        // Act
+        List<CompletableFuture<String>> acquires = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            acquires.add(client.acquire("test-lock-" + i, 10000));
+        }
+        CompletableFuture.allOf(acquires.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        List<CompletableFuture<Boolean>> releases = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            releases.add(client.release("test-lock-" + i, acquires.get(i).get()));
+        }
+
+        // Assert
+        for (int i = 0; i < 200; i++) {
+            assertNotNull(acquires.get(i).get());
+            assertTrue(releases.get(i).get(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testPendingRequestsFailWhenConnectionCloses() throws Exception {
+        // Arrange
+        String token = client.acquire("test-lock", 1000).get(5, TimeUnit.SECONDS);
+        BinaryLockClient other = BinaryLockClient.connect("localhost", server.getPort());
+        CompletableFuture<String> waiting = other.acquire("test-lock", 10000);
+
+        // Act
+        other.close();
+
+        // Assert
+        assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        // A grant written before the server saw the close would look delivered, so wait for it
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getConnectionCount() > 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "close not seen by the server within 5s");
+            Thread.sleep(10);
+        }
+        assertTrue(client.release("test-lock", token).get(5, TimeUnit.SECONDS));
+        // The grant nobody received is given back
+        String again = client.acquire("test-lock", 5000).get(10, TimeUnit.SECONDS);
+        assertNotNull(again);
+        assertTrue(client.release("test-lock", again).get(5, TimeUnit.SECONDS));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,318 @@
+package com.distlock.service;
+
+import com.distlock.config.AppConfig;
+import com.distlock.config.ZookeeperConfig;
+import com.distlock.lock.LocalLockTable;
+import com.distlock.lock.LockMetrics;
+import com.distlock.lock.LockScheduler;
+import com.distlock.lock.LockUnavailableException;
+import com.distlock.lock.RedisLock;
+import com.distlock.lock.ZookeeperLock;
+import com.distlock.lock.ZookeeperLockMirror;
+import com.distlock.lock.ZookeeperReadWriteLock;
+import com.distlock.lock.ZookeeperSemaphore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.RetryOneTime;
+import org.apache.curator.test.TestingServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class LockServiceTest {
+
+    @Mock
+    private RedisLock redisLock;
+
+    private TestingServer server;
+    private CuratorFramework curatorClient;
+    private ZookeeperLock zookeeperLock;
+    private LockService lockService;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server = new TestingServer();
+        curatorClient = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(100));
+        curatorClient.start();
+
+        AppConfig appConfig = new AppConfig();
+        appConfig.setStrategy("both");
+        appConfig.setParallelBoth(true);
+        LockScheduler scheduler = new LockScheduler(appConfig);
+        meterRegistry = new SimpleMeterRegistry();
+        LockMetrics metrics = new LockMetrics(meterRegistry, appConfig);
+        ZookeeperConfig zookeeperConfig = new ZookeeperConfig();
+        zookeeperLock = new ZookeeperLock(curatorClient, zookeeperConfig, scheduler, metrics,
+                new ZookeeperLockMirror(curatorClient, zookeeperConfig));
+        lockService = new LockService(redisLock, zookeeperLock, null, null, null, null, null, new LocalLockTable(scheduler), scheduler,
+                metrics, appConfig);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        curatorClient.close();
+        server.close();
+    }
+
+    @Test
+    public void testParallelAcquireHoldsBothBackends() {
+        // Arrange
+        when(redisLock.acquireAsync(eq("test-lock"), eq(0L))).thenReturn(CompletableFuture.completedFuture(true));
+        when(redisLock.release("test-lock")).thenReturn(true);
+
+        // Act
+        boolean acquired = lockService.acquireLock("test-lock", 5000);
+
+        // Assert
+        assertTrue(acquired);
+        assertTrue(zookeeperLock.isLocked("test-lock"));
+        assertTrue(lockService.releaseLock("test-lock"));
+        assertFalse(zookeeperLock.isLocked("test-lock"));
+    }
+
+    @Test
+    public void testParallelAcquireWaitsForRedisOnlyAfterZookeeper() {
+        // Arrange
+        when(redisLock.acquireAsync(eq("test-lock"), anyLong())).thenReturn(CompletableFuture.completedFuture(false));
+
+        // Act
+        boolean acquired = lockService.acquireLock("test-lock", 500);
+
+        // Assert
+        assertFalse(acquired);
+        // One up-front try, one wait after ZooKeeper granted, then ZooKeeper is rolled back
+        verify(redisLock, timeout(5000).times(2)).acquireAsync(eq("test-lock"), anyLong());
+        assertTrue(waitUntilUnlocked("test-lock"));
+    }
+
+    @Test
+    public void testTokenReleasesBothBackendsAndLeavesNoLocalHold() throws Exception {
+        // Arrange
+        when(redisLock.acquireAsync(eq("test-lock"), eq(0L))).thenReturn(CompletableFuture.completedFuture(true));
+        when(redisLock.detach("test-lock")).thenReturn("redis-owner");
+        when(redisLock.releaseByToken("test-lock", "redis-owner")).thenReturn(true);
+
+        // Act
+        String token = lockService.acquireLockToken("test-lock", 5000).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertNotNull(token);
+        // Held by the token rather than a thread of this JVM, still visible cluster-wide
+        assertTrue(zookeeperLock.isLocked("test-lock"));
+        assertFalse(lockService.releaseLockToken("test-lock", "not a token"));
+        assertFalse(lockService.releaseLockToken("test-lock", withoutGrantTime(token)));
+        assertTrue(lockService.releaseLockToken("test-lock", token));
+        assertFalse(zookeeperLock.isLocked("test-lock"));
+        verify(redisLock).releaseByToken("test-lock", "redis-owner");
+        // Timed from the grant time in the token
+        assertEquals(1, meterRegistry.get("distlock.lock.hold").timer().count());
+        assertNotNull(lockService.acquireLockToken("test-lock", 5000).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStrayReleaseLeavesTheLocalSlotOfAnAcquireInFlight() throws Exception {
+        // Arrange
+        when(redisLock.acquireAsync(eq("test-lock"), eq(0L))).thenReturn(new CompletableFuture<>());
+        lockService.acquireLockToken("test-lock", 5000);
+        verify(redisLock, timeout(5000)).acquireAsync(eq("test-lock"), eq(0L));
+
+        // Act
+        Thread other = new Thread(() -> lockService.releaseLock("test-lock"));
+        other.start();
+        other.join();
+        CompletableFuture<String> second = lockService.acquireLockToken("test-lock", 5000);
+
+        // Assert
+        // Still queued locally behind the first acquire instead of racing it on the backends
+        verify(redisLock, after(200).times(1)).acquireAsync(eq("test-lock"), eq(0L));
+        assertFalse(second.isDone());
+    }
+
+    @Test
+    public void testBatchTokenTakesRedisInOneCallAndReleasesItInOne() throws Exception {
+        // Arrange
+        List<String> keys = List.of("lock-a", "lock-b");
+        when(redisLock.acquireAllToken(eq(keys), anyLong())).thenReturn(CompletableFuture.completedFuture("redis-batch"));
+        when(redisLock.releaseAllByToken(keys, "redis-batch")).thenReturn(true);
+
+        // Act
+        String token = lockService.acquireAllToken(List.of("lock-b", "lock-a"), 5000).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertNotNull(token);
+        assertTrue(zookeeperLock.isLocked("lock-a"));
+        assertTrue(zookeeperLock.isLocked("lock-b"));
+        assertTrue(lockService.releaseAllToken(List.of("lock-a", "lock-b"), token));
+        verify(redisLock).releaseAllByToken(keys, "redis-batch");
+        assertFalse(zookeeperLock.isLocked("lock-a"));
+        assertFalse(zookeeperLock.isLocked("lock-b"));
+    }
+
+    @Test
+    public void testBatchTokenRollsBackHeldKeysWhenOneIsTaken() throws Exception {
+        // Arrange
+        List<String> keys = List.of("lock-a", "lock-b");
+        when(redisLock.acquireAllToken(eq(keys), anyLong())).thenReturn(CompletableFuture.completedFuture("redis-batch"));
+        when(redisLock.releaseAllByToken(keys, "redis-batch")).thenReturn(true);
+        Thread holder = new Thread(() -> zookeeperLock.acquire("lock-b", 1000));
+        holder.start();
+        holder.join();
+
+        // Act
+        String token = lockService.acquireAllToken(List.of("lock-b", "lock-a"), 500).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertNull(token);
+        verify(redisLock, timeout(5000)).releaseAllByToken(keys, "redis-batch");
+        assertTrue(waitUntilUnlocked("lock-a"));
+        assertTrue(zookeeperLock.isLocked("lock-b"));
+    }
+
+    @Test
+    public void testAcquireFailsFastWhileZookeeperIsDisconnected() throws Exception {
+        // Arrange
+        assertTrue(curatorClient.blockUntilConnected(5, TimeUnit.SECONDS));
+        server.stop();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!zookeeperLock.isCircuitOpen()) {
+            assertTrue(System.currentTimeMillis() < deadline, "breaker not opened within 5s");
+            Thread.sleep(20);
+        }
+
+        // Act
+        long start = System.nanoTime();
+        assertThrows(LockUnavailableException.class, () -> lockService.acquireLock("test-lock", 5000));
+        ExecutionException failed = assertThrows(ExecutionException.class,
+                () -> lockService.acquireLockToken("test-lock", 5000).get(5, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Assert
+        assertInstanceOf(LockUnavailableException.class, failed.getCause());
+        assertTrue(elapsedMs < 1000, "refused after " + elapsedMs + " ms");
+        server.restart();
+        deadline = System.currentTimeMillis() + 10000;
+        while (zookeeperLock.isCircuitOpen()) {
+            assertTrue(System.currentTimeMillis() < deadline, "breaker not closed within 10s");
+            Thread.sleep(20);
+        }
+        when(redisLock.acquireAsync(eq("test-lock"), eq(0L))).thenReturn(CompletableFuture.completedFuture(true));
+        assertTrue(lockService.acquireLock("test-lock", 5000));
+    }
+
+    @Test
+    public void testWriteLockIsWaitedForOffTheCallerThread() throws Exception {
+        // Arrange
+        AppConfig appConfig = new AppConfig();
+        appConfig.setStrategy("zookeeper");
+        LockScheduler scheduler = new LockScheduler(appConfig);
+        LockService zookeeperService = new LockService(redisLock, zookeeperLock, null, null,
+                new ZookeeperReadWriteLock(curatorClient, new ZookeeperConfig()), null, null, new LocalLockTable(scheduler),
+                scheduler, new LockMetrics(new SimpleMeterRegistry(), appConfig), appConfig);
+        String held = zookeeperService.acquireWriteLock("test-lock", 5000).get(5, TimeUnit.SECONDS);
+        assertNotNull(held);
+
+        // Act
+        long start = System.nanoTime();
+        CompletableFuture<String> waiting = zookeeperService.acquireWriteLock("test-lock", 5000);
+        long returnedAfterMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        boolean doneWhileHeld = waiting.isDone();
+        assertTrue(zookeeperService.releaseWriteLock("test-lock", held));
+
+        // Assert
+        assertTrue(returnedAfterMs < 1000, "caller blocked for " + returnedAfterMs + " ms");
+        assertFalse(doneWhileHeld);
+        String granted = waiting.get(5, TimeUnit.SECONDS);
+        assertNotNull(granted);
+        assertTrue(zookeeperService.releaseWriteLock("test-lock", granted));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testSemaphorePermitsAreWaitedForOffTheCallerThread() throws Exception {
+        // Arrange
+        AppConfig appConfig = new AppConfig();
+        appConfig.setStrategy("zookeeper");
+        appConfig.setSemaphorePermits(1);
+        LockScheduler scheduler = new LockScheduler(appConfig);
+        LockService zookeeperService = new LockService(redisLock, zookeeperLock, null, null, null, null,
+                new ZookeeperSemaphore(curatorClient, new ZookeeperConfig()), new LocalLockTable(scheduler),
+                scheduler, new LockMetrics(new SimpleMeterRegistry(), appConfig), appConfig);
+        String held = zookeeperService.acquireSemaphore("test-semaphore", 1, 5000).get(5, TimeUnit.SECONDS);
+        assertNotNull(held);
+
+        // Act
+        long start = System.nanoTime();
+        CompletableFuture<String> waiting = zookeeperService.acquireSemaphore("test-semaphore", 1, 5000);
+        long returnedAfterMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        boolean doneWhileHeld = waiting.isDone();
+        assertTrue(zookeeperService.releaseSemaphore("test-semaphore", held));
+
+        // Assert
+        assertTrue(returnedAfterMs < 1000, "caller blocked for " + returnedAfterMs + " ms");
+        assertFalse(doneWhileHeld);
+        String granted = waiting.get(5, TimeUnit.SECONDS);
+        assertNotNull(granted);
+        assertTrue(zookeeperService.releaseSemaphore("test-semaphore", granted));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testLocalStrategyRefusesReadWriteLocksAndSemaphores() {
+        // Arrange
+        AppConfig appConfig = new AppConfig();
+        appConfig.setStrategy("local");
+        LockScheduler scheduler = new LockScheduler(appConfig);
+        LockService localService = new LockService(null, null, null, null, null, null, null, new LocalLockTable(scheduler),
+                scheduler, new LockMetrics(new SimpleMeterRegistry(), appConfig), appConfig);
+
+        // Act
+        ExecutionException write = assertThrows(ExecutionException.class,
+                () -> localService.acquireWriteLock("test-lock", 1000).get(5, TimeUnit.SECONDS));
+        ExecutionException semaphore = assertThrows(ExecutionException.class,
+                () -> localService.acquireSemaphore("test-semaphore", 1, 1000).get(5, TimeUnit.SECONDS));
+
+        // Assert
+        assertInstanceOf(UnsupportedOperationException.class, write.getCause());
+        assertInstanceOf(UnsupportedOperationException.class, semaphore.getCause());
+        scheduler.shutdown();
+    }
+
+    // The same handles in the shorter layout of tokens from before the grant time was added
+    private static String withoutGrantTime(String token) {
+        String handles = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        String legacy = handles.substring(0, handles.lastIndexOf('\n'));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(legacy.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean waitUntilUnlocked(String lockKey) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (zookeeperLock.isLocked(lockKey)) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+}